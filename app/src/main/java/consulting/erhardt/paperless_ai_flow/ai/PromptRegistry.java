@@ -0,0 +1,222 @@
+package consulting.erhardt.paperless_ai_flow.ai;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable snapshot of all prompt templates and JSON schemas, so AI calls do not read classpath resources.
+ * <p>
+ * Templates are keyed by their resource path, e.g. {@code prompts/title.txt}. Files in an optional override
+ * directory replace the bundled ones with the same path. {@link #reloadIfChanged()} swaps in a new snapshot once
+ * a file in the override directory was added, changed or removed; callers caching derived values compare
+ * {@link #version()}.
+ * <p>
+ * Overrides are validated before they are used: prompts must not be blank and schemas must be JSON objects. A reload
+ * waits until the override files look the same on two consecutive checks, so a file still being written is not
+ * picked up half-way, and keeps the previous snapshot if any override is invalid.
+ */
+@Slf4j
+public final class PromptRegistry {
+
+  private static final List<String> PATTERNS = List.of("prompts/*.txt", "schemas/*.json");
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final Path overrideDirectory;
+  private final Map<String, String> bundled;
+  private final AtomicLong version = new AtomicLong();
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * Override files seen changed on the last check, reloaded once they look the same on the next one
+   */
+  private Map<String, String> pendingOverrides;
+
+  /**
+   * Override files that failed validation, not loaded again until they change
+   */
+  private Map<String, String> rejectedOverrides;
+
+  /**
+   * Registry of the bundled templates only
+   */
+  public PromptRegistry() {
+    this(null);
+  }
+
+  public PromptRegistry(Path overrideDirectory) {
+    this.overrideDirectory = overrideDirectory;
+    this.bundled = loadBundled();
+    this.snapshot = load(scanOverrides());
+    log.info("Loaded {} prompt templates and schemas ({} overridden)", snapshot.templates().size(),
+      snapshot.overrides().size());
+  }
+
+  /**
+   * @throws IllegalArgumentException if there is no template with this path
+   */
+  public String get(@NonNull String path) {
+    var template = snapshot.templates().get(path);
+    if (template == null) {
+      throw new IllegalArgumentException("Unknown prompt template " + path);
+    }
+
+    return template;
+  }
+
+  /**
+   * Incremented on every reload that changed a template
+   */
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * Reloads the override directory if any of its files were added, changed or removed, and have not changed since
+   * the previous check
+   *
+   * @return whether the templates were reloaded
+   */
+  public synchronized boolean reloadIfChanged() {
+    if (overrideDirectory == null) {
+      return false;
+    }
+
+    var overrides = scanOverrides();
+    if (overrides.equals(snapshot.overrides()) || overrides.equals(rejectedOverrides)) {
+      pendingOverrides = null;
+      return false;
+    }
+
+    if (!overrides.equals(pendingOverrides)) {
+      log.debug("Prompt templates in {} changed, reloading once they are settled", overrideDirectory);
+      pendingOverrides = overrides;
+      return false;
+    }
+
+    Snapshot reloaded;
+    try {
+      reloaded = load(overrides);
+    } catch (RuntimeException e) {
+      log.error("Keeping the previous prompt templates: {}", e.getMessage(), e);
+      pendingOverrides = null;
+      rejectedOverrides = overrides;
+      return false;
+    }
+
+    if (!scanOverrides().equals(overrides)) {
+      log.debug("Prompt templates in {} changed while reading, reloading once they are settled", overrideDirectory);
+      pendingOverrides = null;
+      return false;
+    }
+
+    pendingOverrides = null;
+    rejectedOverrides = null;
+    if (reloaded.templates().equals(snapshot.templates())) {
+      snapshot = reloaded;
+      return false;
+    }
+
+    snapshot = reloaded;
+    version.incrementAndGet();
+    log.info("Reloaded prompt templates from {} ({} overridden)", overrideDirectory, reloaded.overrides().size());
+    return true;
+  }
+
+  private Snapshot load(Map<String, String> overrides) {
+    var templates = new HashMap<>(bundled);
+
+    for (var path : overrides.keySet()) {
+      try {
+        var template = Files.readString(overrideDirectory.resolve(path), StandardCharsets.UTF_8);
+        validate(path, template);
+        templates.put(path, template);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read prompt template " + path + " from " + overrideDirectory, e);
+      }
+    }
+
+    return new Snapshot(Map.copyOf(templates), overrides);
+  }
+
+  /**
+   * @throws IllegalArgumentException if the template is blank or the schema is no JSON object
+   */
+  private static void validate(String path, String template) {
+    if (template.isBlank()) {
+      throw new IllegalArgumentException("Prompt template " + path + " is empty");
+    }
+
+    if (path.endsWith(".json")) {
+      try {
+        if (!OBJECT_MAPPER.readTree(template).isObject()) {
+          throw new IllegalArgumentException("JSON schema " + path + " is no JSON object");
+        }
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException("JSON schema " + path + " is no valid JSON: " + e.getOriginalMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Last modification time and size of every override file, keyed by its template path
+   */
+  private Map<String, String> scanOverrides() {
+    if (overrideDirectory == null) {
+      return Map.of();
+    }
+
+    var overrides = new HashMap<String, String>();
+    for (var pattern : PATTERNS) {
+      var directory = overrideDirectory.resolve(pattern.substring(0, pattern.indexOf('/')));
+      if (!Files.isDirectory(directory)) {
+        continue;
+      }
+
+      try (var files = Files.newDirectoryStream(directory, pattern.substring(pattern.indexOf('/') + 1))) {
+        for (var file : files) {
+          overrides.put(overrideDirectory.relativize(file).toString().replace('\\', '/'),
+            Files.getLastModifiedTime(file) + ":" + Files.size(file));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to list prompt templates in " + directory, e);
+      }
+    }
+
+    return Map.copyOf(overrides);
+  }
+
+  private static Map<String, String> loadBundled() {
+    var resolver = new PathMatchingResourcePatternResolver();
+    var templates = new HashMap<String, String>();
+
+    try {
+      for (var pattern : PATTERNS) {
+        var folder = pattern.substring(0, pattern.indexOf('/') + 1);
+        for (var resource : resolver.getResources("classpath*:" + pattern)) {
+          templates.put(folder + resource.getFilename(), resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load bundled prompt templates", e);
+    }
+
+    return Map.copyOf(templates);
+  }
+
+  private record Snapshot(Map<String, String> templates, Map<String, String> overrides) {
+  }
+}
@@ -0,0 +1,148 @@
+package consulting.erhardt.paperless_ai_flow.ai;
+
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateRetriever.CandidateIndex;
+import consulting.erhardt.paperless_ai_flow.utils.HashUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Prompt block listing a taxonomy (tags, correspondents, custom fields), rendered once per refresh of the cached
+ * taxonomy instead of once per document.
+ * <p>
+ * The paperless-ngx client caches the full list and returns the same instance until the cache entry expires, so an
+ * identity check detects refreshes; an equal list fetched again keeps the rendered block and becomes the instance
+ * compared against. Every rendered block carries a version hash of its text. With a {@link CandidateFilter}, large
+ * taxonomies are indexed on refresh and only the top K entries for a document are listed.
+ */
+@Slf4j
+public final class TaxonomySnapshot<T> {
+
+  private static final int VERSION_LENGTH = 12;
+
+  private final String name;
+  private final Supplier<Mono<List<T>>> source;
+  private final Function<List<T>, String> renderer;
+  private final Function<T, String> indexedName;
+  private final CandidateFilter candidateFilter;
+
+  private volatile State<T> state;
+
+  public TaxonomySnapshot(
+    @NonNull String name,
+    @NonNull Supplier<Mono<List<T>>> source,
+    @NonNull Function<List<T>, String> renderer
+  ) {
+    this(name, source, renderer, String::valueOf, CandidateFilter.disabled());
+  }
+
+  public TaxonomySnapshot(
+    @NonNull String name,
+    @NonNull Supplier<Mono<List<T>>> source,
+    @NonNull Function<List<T>, String> renderer,
+    @NonNull Function<T, String> indexedName,
+    @NonNull CandidateFilter candidateFilter
+  ) {
+    this.name = name;
+    this.source = source;
+    this.renderer = renderer;
+    this.indexedName = indexedName;
+    this.candidateFilter = candidateFilter;
+  }
+
+  /**
+   * Block listing all entries
+   */
+  public Rendered get() {
+    return refresh().rendered();
+  }
+
+  /**
+   * Block listing the entries relevant to the content, all entries if the taxonomy is not filtered
+   */
+  public Rendered get(@NonNull String content) {
+    var current = refresh();
+    if (current.index() == null) {
+      return current.rendered();
+    }
+
+    try {
+      var candidates = current.index().topK(content, candidateFilter.topK()).stream()
+        .map(current.entries()::get)
+        .toList();
+      log.debug("Listing {} of {} {} as candidates", candidates.size(), current.entries().size(), name);
+
+      return rendered(renderer.apply(candidates));
+    } catch (RuntimeException e) {
+      log.warn("Failed to select {} candidates, listing all: {}", name, e.getMessage(), e);
+      return current.rendered();
+    }
+  }
+
+  private State<T> refresh() {
+    var entries = Objects.requireNonNullElse(source.get()
+      .subscribeOn(Schedulers.boundedElastic())
+      .block(), List.<T>of());
+
+    var current = state;
+    if (current != null && current.entries() == entries) {
+      return current;
+    }
+
+    return render(entries);
+  }
+
+  private synchronized State<T> render(List<T> entries) {
+    var current = state;
+    if (current != null && current.entries() == entries) {
+      return current;
+    }
+
+    if (current != null && current.entries().equals(entries)) {
+      // keep the rendered block, adopt the new instance so the next calls take the identity check again
+      state = new State<>(entries, current.rendered(), current.index());
+      return state;
+    }
+
+    var rendered = rendered(renderer.apply(entries));
+    if (current == null || !current.rendered().version().equals(rendered.version())) {
+      log.info("Rendered {} taxonomy with {} entries, version {}", name, entries.size(), rendered.version());
+    }
+
+    state = new State<>(entries, rendered, index(entries));
+    return state;
+  }
+
+  private static Rendered rendered(String text) {
+    return new Rendered(text, HashUtils.sha256(text).substring(0, VERSION_LENGTH));
+  }
+
+  private CandidateIndex index(List<T> entries) {
+    if (!candidateFilter.appliesTo(entries.size())) {
+      return null;
+    }
+
+    try {
+      return candidateFilter.retriever().index(entries.stream().map(indexedName).toList());
+    } catch (RuntimeException e) {
+      log.warn("Failed to index {} taxonomy, listing all entries: {}", name, e.getMessage(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Ready-made prompt block and the version hash of exactly this text
+   */
+  public record Rendered(String text, String version) {
+  }
+
+  private record State<T>(List<T> entries, Rendered rendered, CandidateIndex index) {
+  }
+}
@@ -0,0 +1,19 @@
+package consulting.erhardt.paperless_ai_flow.ai.dtos;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Result of a combined extraction, extractions that were not enabled are null
+ */
+@Jacksonized
+@Builder
+@Value
+public class CombinedExtraction {
+  TitleExtraction title;
+  CreatedDateExtraction createdDate;
+  TagsExtraction tags;
+  CorrespondentExtraction correspondent;
+  CustomFieldsExtraction customFields;
+}
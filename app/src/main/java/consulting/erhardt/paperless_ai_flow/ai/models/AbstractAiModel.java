@@ -1,36 +1,96 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PromptLayout;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.openai.api.ResponseFormat;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @RequiredArgsConstructor
 public abstract class AbstractAiModel<T> {
+
+  /**
+   * Sections of the response schema shared by the single extractions in the content-first layout, named after the
+   * properties of {@link consulting.erhardt.paperless_ai_flow.ai.dtos.CombinedExtraction}
+   */
+  private static final List<Map.Entry<String, String>> SHARED_SCHEMA_SECTIONS = List.of(
+    Map.entry("title", "schemas/title.json"),
+    Map.entry("createdDate", "schemas/created-date.json"),
+    Map.entry("tags", "schemas/tags.json"),
+    Map.entry("correspondent", "schemas/correspondent.json"),
+    Map.entry("customFields", "schemas/custom-fields.json"));
+
   protected final OpenAiChatModel openAiChatModel;
   protected final ObjectMapper objectMapper;
+  protected final PromptRegistry promptRegistry;
+
+  /**
+   * Chat options per JSON schema, building them parses the schema
+   */
+  private final Map<String, OpenAiChatOptions> chatOptions = new ConcurrentHashMap<>();
+  private volatile long chatOptionsVersion;
+
+  /**
+   * Shared response schema of the content-first layout with the template version it was built from
+   */
+  private volatile SharedJsonSchema sharedJsonSchema;
 
   public T process(@NonNull String content, String systemPrompt) throws IOException {
-    // prepare prompts
-    var systemMessage = new SystemMessage((systemPrompt != null) ? systemPrompt : getDefaultSystemPrompt());
-    var userPrompt = getUserPrompt(content);
-    var userMessage = new UserMessage(userPrompt);
+    return process(content, systemPrompt, PromptLayout.INSTRUCTIONS_FIRST);
+  }
+
+  /**
+   * In the content-first layout the response format is shared by all extractions as well, it is sent before the
+   * messages and a schema per extraction would end the prefix shared by the requests for a document
+   */
+  public T process(@NonNull String content, String systemPrompt, @NonNull PromptLayout layout) throws IOException {
+    var instructions = (systemPrompt != null) ? systemPrompt : getDefaultSystemPrompt();
+
+    if (layout == PromptLayout.CONTENT_FIRST && getSectionName() != null) {
+      var task = instructions + "\n\nWrite the answer into the property \"" + getSectionName()
+        + "\" of the response and set all other properties to null.\n";
+      var response = objectMapper.readTree(complete(getContentFirstMessages(task, getReferenceData(content), content),
+        getSharedJsonSchema()));
+
+      var section = response.get(getSectionName());
+      return (section == null || section.isNull()) ? null : objectMapper.treeToValue(section, getResponseClass());
+    }
+
+    var messages = switch (layout) {
+      case INSTRUCTIONS_FIRST -> List.<Message>of(new SystemMessage(instructions), new UserMessage(getUserPrompt(content)));
+      case CONTENT_FIRST -> getContentFirstMessages(instructions, getReferenceData(content), content);
+    };
 
+    return call(messages, getJsonSchema());
+  }
+
+  protected T call(@NonNull List<Message> messages, @NonNull String jsonSchema) throws IOException {
+    return objectMapper.readValue(complete(messages, jsonSchema), getResponseClass());
+  }
+
+  private String complete(List<Message> messages, String jsonSchema) {
     // process prompt
-    var prompt = new Prompt(List.of(systemMessage, userMessage), getChatOptions());
+    var prompt = new Prompt(messages, getChatOptions(jsonSchema));
     var response = openAiChatModel.call(prompt);
+    logUsage(response);
 
-    return objectMapper.readValue(response.getResult().getOutput().getText(), getResponseClass());
+    return response.getResult().getOutput().getText();
   }
 
   protected abstract String getDefaultSystemPrompt() throws IOException;
@@ -43,6 +103,20 @@ public abstract class AbstractAiModel<T> {
 
   protected abstract Class<T> getResponseClass();
 
+  /**
+   * Property of this extraction in the shared response schema, {@code null} for models without one
+   */
+  protected String getSectionName() {
+    return null;
+  }
+
+  /**
+   * Reference data the model chooses from, e.g. the available tags, may be narrowed down to the given content
+   */
+  protected String getReferenceData(@NonNull String content) {
+    return "";
+  }
+
   protected void addDocumentContent(@NonNull StringBuilder prompt, @NonNull String content) {
     // add content
     prompt.append("### Document content:\n");
@@ -51,10 +125,98 @@ public abstract class AbstractAiModel<T> {
     prompt.append("```\n");
   }
 
-  private OpenAiChatOptions getChatOptions() throws IOException {
-    return OpenAiChatOptions.builder()
-      .model(getDefaultModel())
-      .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, getJsonSchema()))
-      .build();
+  /**
+   * Preamble and document block are identical for every model, so all requests for a document share their prefix.
+   * The instructions go into a user message, providers may move system messages to the front.
+   */
+  protected List<Message> getContentFirstMessages(
+    @NonNull String instructions,
+    @NonNull String referenceData,
+    @NonNull String content
+  ) {
+    var document = new StringBuilder();
+    addDocumentContent(document, content);
+
+    var task = new StringBuilder(referenceData)
+      .append("### Task:\n")
+      .append(instructions);
+
+    return List.of(
+      new SystemMessage(promptRegistry.get("prompts/content-first.txt")),
+      new UserMessage(document.toString()),
+      new UserMessage(task.toString())
+    );
+  }
+
+  /**
+   * One nullable property per extraction, the same for every extraction, document and pipeline.
+   * Built once per template version, like the chat options it is the key of.
+   */
+  String getSharedJsonSchema() throws IOException {
+    var registryVersion = promptRegistry.version();
+    var cached = sharedJsonSchema;
+    if (cached != null && cached.version() == registryVersion) {
+      return cached.json();
+    }
+
+    var json = buildSharedJsonSchema();
+    sharedJsonSchema = new SharedJsonSchema(registryVersion, json);
+    return json;
+  }
+
+  private String buildSharedJsonSchema() throws IOException {
+    var schema = objectMapper.createObjectNode();
+    schema.put("type", "object");
+
+    var properties = schema.putObject("properties");
+    var required = schema.putArray("required");
+    for (var section : SHARED_SCHEMA_SECTIONS) {
+      properties.putObject(section.getKey()).putArray("anyOf")
+        .add(objectMapper.readTree(promptRegistry.get(section.getValue())))
+        .addObject().put("type", "null");
+      required.add(section.getKey());
+    }
+    schema.put("additionalProperties", false);
+
+    return objectMapper.writeValueAsString(schema);
+  }
+
+  /**
+   * Options are built once per schema and copied per call, a reload of the templates drops the built options
+   */
+  private OpenAiChatOptions getChatOptions(String jsonSchema) {
+    var registryVersion = promptRegistry.version();
+    if (chatOptionsVersion != registryVersion) {
+      chatOptions.clear();
+      chatOptionsVersion = registryVersion;
+    }
+
+    return chatOptions.computeIfAbsent(jsonSchema, schema -> OpenAiChatOptions.builder()
+        .model(getDefaultModel())
+        .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, schema))
+        .build())
+      .copy();
+  }
+
+  /**
+   * Cached prompt tokens are only reported by providers with prompt caching, e.g. OpenAI for prompts of 1024 tokens
+   * and more
+   */
+  private void logUsage(ChatResponse response) {
+    if (response.getMetadata() == null || response.getMetadata().getUsage() == null) {
+      return;
+    }
+
+    var usage = response.getMetadata().getUsage();
+    var cachedTokens = (usage.getNativeUsage() instanceof OpenAiApi.Usage nativeUsage && nativeUsage.promptTokensDetails() != null)
+      ? nativeUsage.promptTokensDetails().cachedTokens()
+      : null;
+
+    log.debug("{} used {} prompt tokens ({} cached) and {} completion tokens",
+      getClass().getSimpleName(), usage.getPromptTokens(), (cachedTokens != null) ? cachedTokens : 0,
+      usage.getCompletionTokens());
+  }
+
+  private record SharedJsonSchema(long version, String json) {
   }
 }
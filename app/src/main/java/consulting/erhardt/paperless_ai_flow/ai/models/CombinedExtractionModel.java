@@ -0,0 +1,178 @@
+package consulting.erhardt.paperless_ai_flow.ai.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.ai.dtos.CombinedExtraction;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import lombok.NonNull;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs all enabled extractions of a pipeline in one call, so the document content is sent once instead of once per
+ * extraction. Prompts and JSON schemas of the single extraction models are merged into one prompt and one composite
+ * schema with a property per extraction.
+ */
+@Service
+public class CombinedExtractionModel extends AbstractAiModel<CombinedExtraction> {
+
+  private static final PipelineConfiguration.ExtractionConfiguration ALL_EXTRACTIONS =
+    PipelineConfiguration.ExtractionConfiguration.builder().build();
+
+  private final TitleExtractionModel titleModel;
+  private final CreatedDateExtractionModel createdDateModel;
+  private final TagExtractionModel tagModel;
+  private final CorrespondentExtractionModel correspondentModel;
+  private final CustomFieldExtractionModel customFieldModel;
+
+  public CombinedExtractionModel(
+    OpenAiChatModel openAiChatModel,
+    ObjectMapper objectMapper,
+    PromptRegistry promptRegistry,
+    TitleExtractionModel titleModel,
+    CreatedDateExtractionModel createdDateModel,
+    TagExtractionModel tagModel,
+    CorrespondentExtractionModel correspondentModel,
+    CustomFieldExtractionModel customFieldModel
+  ) {
+    super(openAiChatModel, objectMapper, promptRegistry);
+
+    this.titleModel = titleModel;
+    this.createdDateModel = createdDateModel;
+    this.tagModel = tagModel;
+    this.correspondentModel = correspondentModel;
+    this.customFieldModel = customFieldModel;
+  }
+
+  /**
+   * Extracts everything enabled in the extraction configuration, custom prompts replace the default prompt of their
+   * extraction
+   */
+  public CombinedExtraction process(
+    @NonNull String content,
+    @NonNull PipelineConfiguration.ExtractionConfiguration extraction
+  ) throws IOException {
+    var sections = getSections(extraction);
+    if (sections.isEmpty()) {
+      return CombinedExtraction.builder().build();
+    }
+
+    var instructions = getSystemPrompt(sections);
+    var messages = switch (extraction.getPromptLayout()) {
+      case INSTRUCTIONS_FIRST -> List.<Message>of(new SystemMessage(instructions), new UserMessage(getUserPrompt(sections, content)));
+      case CONTENT_FIRST -> getContentFirstMessages(instructions, getReferenceData(sections, content), content);
+    };
+
+    return call(messages, getJsonSchema(sections));
+  }
+
+  @Override
+  protected String getDefaultSystemPrompt() throws IOException {
+    return getSystemPrompt(getSections(ALL_EXTRACTIONS));
+  }
+
+  @Override
+  protected String getJsonSchema() throws IOException {
+    return getJsonSchema(getSections(ALL_EXTRACTIONS));
+  }
+
+  @Override
+  protected String getDefaultModel() {
+    return "openai/o4-mini";
+  }
+
+  @Override
+  protected Class<CombinedExtraction> getResponseClass() {
+    return CombinedExtraction.class;
+  }
+
+  @Override
+  protected String getUserPrompt(String content) {
+    return getUserPrompt(getSections(ALL_EXTRACTIONS), content);
+  }
+
+  String getSystemPrompt(List<Section> sections) throws IOException {
+    var prompt = new StringBuilder(promptRegistry.get("prompts/combined.txt"));
+
+    for (var section : sections) {
+      prompt
+        .append("\n## Task \"")
+        .append(section.name())
+        .append("\"\n\n")
+        .append((section.prompt() != null) ? section.prompt() : section.model().getDefaultSystemPrompt())
+        .append("\n");
+    }
+
+    return prompt.toString();
+  }
+
+  String getJsonSchema(List<Section> sections) throws IOException {
+    var schema = objectMapper.createObjectNode();
+    schema.put("type", "object");
+
+    var properties = schema.putObject("properties");
+    var required = schema.putArray("required");
+    for (var section : sections) {
+      properties.set(section.name(), objectMapper.readTree(section.model().getJsonSchema()));
+      required.add(section.name());
+    }
+    schema.put("additionalProperties", false);
+
+    return objectMapper.writeValueAsString(schema);
+  }
+
+  String getUserPrompt(List<Section> sections, String content) {
+    var prompt = new StringBuilder(getReferenceData(sections, content));
+
+    // add content
+    addDocumentContent(prompt, content);
+
+    return prompt.toString();
+  }
+
+  String getReferenceData(List<Section> sections, String content) {
+    var referenceData = new StringBuilder();
+
+    // add reference data of all extractions
+    for (var section : sections) {
+      referenceData.append(section.model().getReferenceData(content));
+    }
+
+    return referenceData.toString();
+  }
+
+  /**
+   * Enabled extractions in a stable order, named after the properties of {@link CombinedExtraction}
+   */
+  List<Section> getSections(PipelineConfiguration.ExtractionConfiguration extraction) {
+    var sections = new ArrayList<Section>();
+
+    if (Boolean.TRUE.equals(extraction.getTitle())) {
+      sections.add(new Section("title", titleModel, extraction.getTitlePrompt()));
+    }
+    if (Boolean.TRUE.equals(extraction.getCreatedDate())) {
+      sections.add(new Section("createdDate", createdDateModel, extraction.getCreatedDatePrompt()));
+    }
+    if (Boolean.TRUE.equals(extraction.getTags())) {
+      sections.add(new Section("tags", tagModel, extraction.getTagsPrompt()));
+    }
+    if (Boolean.TRUE.equals(extraction.getCorrespondent())) {
+      sections.add(new Section("correspondent", correspondentModel, extraction.getCorrespondentPrompt()));
+    }
+    if (Boolean.TRUE.equals(extraction.getCustomFields())) {
+      sections.add(new Section("customFields", customFieldModel, extraction.getCustomFieldsPrompt()));
+    }
+
+    return sections;
+  }
+
+  record Section(String name, AbstractAiModel<?> model, String prompt) {
+  }
+}
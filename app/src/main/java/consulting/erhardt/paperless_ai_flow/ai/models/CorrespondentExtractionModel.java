@@ -1,38 +1,44 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.ai.TaxonomySnapshot;
 import consulting.erhardt.paperless_ai_flow.ai.dtos.CorrespondentExtraction;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Correspondent;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CorrespondentService;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
+import lombok.NonNull;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.stereotype.Service;
-import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
+import java.util.List;
 
 @Service
 public class CorrespondentExtractionModel extends AbstractAiModel<CorrespondentExtraction> {
 
-  private final CorrespondentService service;
+  private final TaxonomySnapshot<Correspondent> taxonomy;
 
   public CorrespondentExtractionModel(
     OpenAiChatModel openAiChatModel,
     ObjectMapper objectMapper,
-    CorrespondentService correspondentService
+    PromptRegistry promptRegistry,
+    CorrespondentService correspondentService,
+    CandidateFilter candidateFilter
   ) {
-    super(openAiChatModel, objectMapper);
+    super(openAiChatModel, objectMapper, promptRegistry);
 
-    this.service = correspondentService;
+    this.taxonomy = new TaxonomySnapshot<>("correspondents", correspondentService::getAll,
+      CorrespondentExtractionModel::render, Correspondent::getName, candidateFilter);
   }
 
   @Override
-  protected String getDefaultSystemPrompt() throws IOException {
-    return FileUtils.readFileFromResources("prompts/correspondent.txt");
+  protected String getDefaultSystemPrompt() {
+    return promptRegistry.get("prompts/correspondent.txt");
   }
 
   @Override
-  protected String getJsonSchema() throws IOException {
-    return FileUtils.readFileFromResources("schemas/correspondent.json");
+  protected String getJsonSchema() {
+    return promptRegistry.get("schemas/correspondent.json");
   }
 
   @Override
@@ -45,32 +51,43 @@ public class CorrespondentExtractionModel extends AbstractAiModel<CorrespondentE
     return CorrespondentExtraction.class;
   }
 
+  @Override
+  protected String getSectionName() {
+    return "correspondent";
+  }
+
   @Override
   protected String getUserPrompt(String content) {
-    return service.getAll()
-      .subscribeOn(Schedulers.boundedElastic())
-      .map(available -> {
-        var prompt = new StringBuilder();
-
-        // add correspondents
-        prompt.append("### Available correspondents:\n");
-        for (var correspondent : available) {
-          prompt
-            .append("- ID: ")
-            .append(correspondent.getId())
-            .append(", Name: ")
-            .append("\"")
-            .append(correspondent.getName())
-            .append("\"")
-            .append("\n");
-        }
-        prompt.append("\n");
-
-        // add content
-        addDocumentContent(prompt, content);
-
-        return prompt.toString();
-      })
-      .block();
+    var prompt = new StringBuilder(getReferenceData(content));
+
+    // add content
+    addDocumentContent(prompt, content);
+
+    return prompt.toString();
+  }
+
+  @Override
+  protected String getReferenceData(@NonNull String content) {
+    return taxonomy.get(content).text();
+  }
+
+  private static String render(List<Correspondent> available) {
+    var prompt = new StringBuilder();
+
+    // add correspondents
+    prompt.append("### Available correspondents:\n");
+    for (var correspondent : available) {
+      prompt
+        .append("- ID: ")
+        .append(correspondent.getId())
+        .append(", Name: ")
+        .append("\"")
+        .append(correspondent.getName())
+        .append("\"")
+        .append("\n");
+    }
+    prompt.append("\n");
+
+    return prompt.toString();
   }
 }
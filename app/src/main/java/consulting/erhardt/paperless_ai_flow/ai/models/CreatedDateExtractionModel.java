@@ -1,31 +1,30 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.dtos.CreatedDateExtraction;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-
 @Service
 public class CreatedDateExtractionModel extends AbstractAiModel<CreatedDateExtraction> {
 
   public CreatedDateExtractionModel(
     OpenAiChatModel openAiChatModel,
-    ObjectMapper objectMapper
+    ObjectMapper objectMapper,
+    PromptRegistry promptRegistry
   ) {
-    super(openAiChatModel, objectMapper);
+    super(openAiChatModel, objectMapper, promptRegistry);
   }
 
   @Override
-  protected String getDefaultSystemPrompt() throws IOException {
-    return FileUtils.readFileFromResources("prompts/created-date.txt");
+  protected String getDefaultSystemPrompt() {
+    return promptRegistry.get("prompts/created-date.txt");
   }
 
   @Override
-  protected String getJsonSchema() throws IOException {
-    return FileUtils.readFileFromResources("schemas/created-date.json");
+  protected String getJsonSchema() {
+    return promptRegistry.get("schemas/created-date.json");
   }
 
   @Override
@@ -38,6 +37,11 @@ public class CreatedDateExtractionModel extends AbstractAiModel<CreatedDateExtra
     return CreatedDateExtraction.class;
   }
 
+  @Override
+  protected String getSectionName() {
+    return "createdDate";
+  }
+
   @Override
   protected String getUserPrompt(String content) {
     var prompt = new StringBuilder();
@@ -1,37 +1,40 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.ai.TaxonomySnapshot;
 import consulting.erhardt.paperless_ai_flow.ai.dtos.CustomFieldsExtraction;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.CustomField;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CustomFieldsService;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
+import lombok.NonNull;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.stereotype.Service;
-import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
+import java.util.List;
 
 @Service
 public class CustomFieldExtractionModel extends AbstractAiModel<CustomFieldsExtraction> {
-  private final CustomFieldsService service;
+  private final TaxonomySnapshot<CustomField> taxonomy;
 
   public CustomFieldExtractionModel(
     OpenAiChatModel openAiChatModel,
     ObjectMapper objectMapper,
+    PromptRegistry promptRegistry,
     CustomFieldsService service
   ) {
-    super(openAiChatModel, objectMapper);
+    super(openAiChatModel, objectMapper, promptRegistry);
 
-    this.service = service;
+    this.taxonomy = new TaxonomySnapshot<>("custom fields", service::getAll, CustomFieldExtractionModel::render);
   }
 
   @Override
-  protected String getDefaultSystemPrompt() throws IOException {
-    return FileUtils.readFileFromResources("prompts/custom-fields.txt");
+  protected String getDefaultSystemPrompt() {
+    return promptRegistry.get("prompts/custom-fields.txt");
   }
 
   @Override
-  protected String getJsonSchema() throws IOException {
-    return FileUtils.readFileFromResources("schemas/custom-fields.json");
+  protected String getJsonSchema() {
+    return promptRegistry.get("schemas/custom-fields.json");
   }
 
   @Override
@@ -44,33 +47,44 @@ public class CustomFieldExtractionModel extends AbstractAiModel<CustomFieldsExtr
     return CustomFieldsExtraction.class;
   }
 
+  @Override
+  protected String getSectionName() {
+    return "customFields";
+  }
+
   @Override
   protected String getUserPrompt(String content) {
-    return service.getAll()
-      .subscribeOn(Schedulers.boundedElastic())
-      .map(available -> {
-        var prompt = new StringBuilder();
-
-        // add custom fields
-        prompt.append("### Available custom fields:\n");
-        for (var customField : available) {
-          prompt
-            .append("- ID: ")
-            .append(customField.getId())
-            .append(", Name: \"")
-            .append(customField.getName())
-            .append("\"")
-            .append(", Type: ")
-            .append(customField.getDataType())
-            .append("\n");
-        }
-        prompt.append("\n");
-
-        // add content
-        addDocumentContent(prompt, content);
-
-        return prompt.toString();
-      })
-      .block();
+    var prompt = new StringBuilder(getReferenceData(content));
+
+    // add content
+    addDocumentContent(prompt, content);
+
+    return prompt.toString();
+  }
+
+  @Override
+  protected String getReferenceData(@NonNull String content) {
+    return taxonomy.get().text();
+  }
+
+  private static String render(List<CustomField> available) {
+    var prompt = new StringBuilder();
+
+    // add custom fields
+    prompt.append("### Available custom fields:\n");
+    for (var customField : available) {
+      prompt
+        .append("- ID: ")
+        .append(customField.getId())
+        .append(", Name: \"")
+        .append(customField.getName())
+        .append("\"")
+        .append(", Type: ")
+        .append(customField.getDataType())
+        .append("\n");
+    }
+    prompt.append("\n");
+
+    return prompt.toString();
   }
 }
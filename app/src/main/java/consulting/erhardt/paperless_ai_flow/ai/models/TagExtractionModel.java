@@ -1,37 +1,43 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.ai.TaxonomySnapshot;
 import consulting.erhardt.paperless_ai_flow.ai.dtos.TagsExtraction;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
+import lombok.NonNull;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.stereotype.Service;
-import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
+import java.util.List;
 
 @Service
 public class TagExtractionModel extends AbstractAiModel<TagsExtraction> {
-  private final TagService service;
+  private final TaxonomySnapshot<Tag> taxonomy;
 
   public TagExtractionModel(
     OpenAiChatModel openAiChatModel,
     ObjectMapper objectMapper,
-    TagService service
+    PromptRegistry promptRegistry,
+    TagService service,
+    CandidateFilter candidateFilter
   ) {
-    super(openAiChatModel, objectMapper);
+    super(openAiChatModel, objectMapper, promptRegistry);
 
-    this.service = service;
+    this.taxonomy = new TaxonomySnapshot<>("tags", service::getAll, TagExtractionModel::render,
+      Tag::getName, candidateFilter);
   }
 
   @Override
-  protected String getDefaultSystemPrompt() throws IOException {
-    return FileUtils.readFileFromResources("prompts/tags.txt");
+  protected String getDefaultSystemPrompt() {
+    return promptRegistry.get("prompts/tags.txt");
   }
 
   @Override
-  protected String getJsonSchema() throws IOException {
-    return FileUtils.readFileFromResources("schemas/tags.json");
+  protected String getJsonSchema() {
+    return promptRegistry.get("schemas/tags.json");
   }
 
   @Override
@@ -44,31 +50,42 @@ public class TagExtractionModel extends AbstractAiModel<TagsExtraction> {
     return TagsExtraction.class;
   }
 
+  @Override
+  protected String getSectionName() {
+    return "tags";
+  }
+
   @Override
   protected String getUserPrompt(String content) {
-    return service.getAll()
-      .subscribeOn(Schedulers.boundedElastic())
-      .map(available -> {
-        var prompt = new StringBuilder();
-
-        // add tags
-        prompt.append("### Available tags:\n");
-        for (var tag : available) {
-          prompt
-            .append("- ID: ")
-            .append(tag.getId())
-            .append(", Name: \"")
-            .append(tag.getName())
-            .append("\"")
-            .append("\n");
-        }
-        prompt.append("\n");
-
-        // add content
-        addDocumentContent(prompt, content);
-
-        return prompt.toString();
-      })
-      .block();
+    var prompt = new StringBuilder(getReferenceData(content));
+
+    // add content
+    addDocumentContent(prompt, content);
+
+    return prompt.toString();
+  }
+
+  @Override
+  protected String getReferenceData(@NonNull String content) {
+    return taxonomy.get(content).text();
+  }
+
+  private static String render(List<Tag> available) {
+    var prompt = new StringBuilder();
+
+    // add tags
+    prompt.append("### Available tags:\n");
+    for (var tag : available) {
+      prompt
+        .append("- ID: ")
+        .append(tag.getId())
+        .append(", Name: \"")
+        .append(tag.getName())
+        .append("\"")
+        .append("\n");
+    }
+    prompt.append("\n");
+
+    return prompt.toString();
   }
 }
@@ -1,31 +1,30 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.dtos.TitleExtraction;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-
 @Service
 public class TitleExtractionModel extends AbstractAiModel<TitleExtraction> {
 
   public TitleExtractionModel(
     OpenAiChatModel openAiChatModel,
-    ObjectMapper objectMapper
+    ObjectMapper objectMapper,
+    PromptRegistry promptRegistry
   ) {
-    super(openAiChatModel, objectMapper);
+    super(openAiChatModel, objectMapper, promptRegistry);
   }
 
   @Override
-  protected String getDefaultSystemPrompt() throws IOException {
-    return FileUtils.readFileFromResources("prompts/title.txt");
+  protected String getDefaultSystemPrompt() {
+    return promptRegistry.get("prompts/title.txt");
   }
 
   @Override
-  protected String getJsonSchema() throws IOException {
-    return FileUtils.readFileFromResources("schemas/title.json");
+  protected String getJsonSchema() {
+    return promptRegistry.get("schemas/title.json");
   }
 
   @Override
@@ -38,6 +37,11 @@ public class TitleExtractionModel extends AbstractAiModel<TitleExtraction> {
     return TitleExtraction.class;
   }
 
+  @Override
+  protected String getSectionName() {
+    return "title";
+  }
+
   @Override
   protected String getUserPrompt(String content) {
     var prompt = new StringBuilder();
@@ -1,7 +1,8 @@
 package consulting.erhardt.paperless_ai_flow.ai.ocr;
 
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
-import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -11,11 +12,12 @@ import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Media;
 import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeTypeUtils;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -23,7 +25,9 @@ import javax.imageio.ImageWriteParam;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -31,13 +35,22 @@ import java.util.Objects;
 public class OcrExtractionModel implements OcrClient {
 
   private final OpenAiChatModel openAiChatModel;
+  private final PromptRegistry promptRegistry;
+
+  @Qualifier("llmCallLimiter")
+  private final ConcurrencyLimiter llmCallLimiter;
+
+  @Qualifier("blockingScheduler")
+  private final Scheduler blockingScheduler;
+
+  private final Map<String, ChatOptions> chatOptions = new ConcurrentHashMap<>();
 
   public Mono<String> extractText(PipelineConfiguration.PipelineDefinition pipelineDefinition, Media media) {
-    return Mono.fromCallable(() -> {
+    return llmCallLimiter.limit(Mono.fromCallable(() -> {
       var model = pipelineDefinition.getOcr().getModel();
       var prompt = Objects.requireNonNullElse(
         pipelineDefinition.getOcr().getPrompt(),
-        FileUtils.readFileFromResources("prompts/ocr.txt")
+        promptRegistry.get("prompts/ocr.txt")
       );
 
       log.debug("Processing OCR with model {}", model);
@@ -45,7 +58,7 @@ public class OcrExtractionModel implements OcrClient {
 
       return process(media, prompt, options);
     })
-    .subscribeOn(Schedulers.boundedElastic());
+    .subscribeOn(blockingScheduler));
   }
 
   @SneakyThrows
@@ -61,9 +74,13 @@ public class OcrExtractionModel implements OcrClient {
     return response.getResult().getOutput().getText();
   }
 
+  /**
+   * Options are built once per model and copied per page
+   */
   private ChatOptions getChatOptions(@NonNull String model) {
-    return ChatOptions.builder()
-      .model(model)
-      .build();
+    return chatOptions.computeIfAbsent(model, name -> ChatOptions.builder()
+        .model(name)
+        .build())
+      .copy();
   }
 }
@@ -0,0 +1,104 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Lexical ranking with Okapi BM25, the entry names are the documents and the distinct words of the document
+ * content the query. Needs no model, but only ranks entries sharing a word with the content; the remaining slots
+ * of the top K are filled with unranked entries.
+ */
+public final class Bm25CandidateRetriever implements CandidateRetriever {
+
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+
+  @Override
+  public CandidateIndex index(@NonNull List<String> names) {
+    var termFrequencies = new ArrayList<Map<String, Integer>>(names.size());
+    var documentFrequencies = new HashMap<String, Integer>();
+    var totalLength = 0L;
+
+    for (var name : names) {
+      var frequencies = new HashMap<String, Integer>();
+      var tokens = tokenize(name);
+      tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+      frequencies.keySet().forEach(token -> documentFrequencies.merge(token, 1, Integer::sum));
+
+      termFrequencies.add(frequencies);
+      totalLength += tokens.size();
+    }
+
+    var averageLength = names.isEmpty() ? 0 : (double) totalLength / names.size();
+    var idf = new HashMap<String, Double>();
+    documentFrequencies.forEach((token, frequency) ->
+      idf.put(token, Math.log(1 + (names.size() - frequency + 0.5) / (frequency + 0.5))));
+
+    return (content, k) -> {
+      var query = new HashSet<>(tokenize(content));
+
+      var hits = IntStream.range(0, termFrequencies.size())
+        .mapToObj(position -> new Scored(position, score(termFrequencies.get(position), query, idf, averageLength)))
+        .filter(scored -> scored.score() > 0)
+        .sorted(Comparator.comparingDouble(Scored::score).reversed())
+        .limit(k)
+        .map(Scored::position)
+        .toList();
+
+      return pad(hits, termFrequencies.size(), k);
+    };
+  }
+
+  /**
+   * Fills up to {@code k} positions with the unranked entries in taxonomy order, so content sharing few or no words
+   * with the names still gets a full candidate list
+   */
+  private static List<Integer> pad(List<Integer> hits, int size, int k) {
+    if (hits.size() >= Math.min(k, size)) {
+      return hits;
+    }
+
+    var padded = new ArrayList<>(hits);
+    var ranked = new HashSet<>(hits);
+    for (var position = 0; position < size && padded.size() < k; position++) {
+      if (!ranked.contains(position)) {
+        padded.add(position);
+      }
+    }
+    return padded;
+  }
+
+  private static double score(Map<String, Integer> frequencies, Set<String> query, Map<String, Double> idf, double averageLength) {
+    var length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+    var score = 0.0;
+
+    for (var entry : frequencies.entrySet()) {
+      if (query.contains(entry.getKey())) {
+        var tf = entry.getValue();
+        score += idf.get(entry.getKey()) * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+      }
+    }
+
+    return score;
+  }
+
+  static List<String> tokenize(String text) {
+    return NON_WORD.splitAsStream(text.toLowerCase(Locale.ROOT))
+      .filter(token -> token.length() > 1)
+      .toList();
+  }
+
+  private record Scored(int position, double score) {
+  }
+}
@@ -0,0 +1,51 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+/**
+ * Narrows large taxonomies to the top K entries per document before they are listed in a prompt, so the prompt size
+ * stays constant however many tags or correspondents exist
+ */
+public final class CandidateFilter {
+
+  private static final CandidateFilter DISABLED = new CandidateFilter(0, new Bm25CandidateRetriever());
+
+  private final int topK;
+  private final CandidateRetriever retriever;
+
+  public CandidateFilter(int topK, @NonNull CandidateRetriever retriever) {
+    if (topK < 0) {
+      throw new IllegalArgumentException("Top K must not be negative, got " + topK);
+    }
+
+    this.topK = topK;
+    this.retriever = retriever;
+  }
+
+  public static CandidateFilter disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Whether a taxonomy of this size is filtered, smaller ones are listed completely
+   */
+  public boolean appliesTo(int taxonomySize) {
+    return topK > 0 && taxonomySize > topK;
+  }
+
+  /**
+   * Prepares the candidate selection for the content of a document, e.g. embeds it once for all taxonomies
+   */
+  public Mono<Void> prepare(@NonNull String content) {
+    return (topK > 0) ? retriever.prepare(content) : Mono.empty();
+  }
+
+  public int topK() {
+    return topK;
+  }
+
+  public CandidateRetriever retriever() {
+    return retriever;
+  }
+}
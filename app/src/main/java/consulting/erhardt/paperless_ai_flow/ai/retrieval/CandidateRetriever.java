@@ -0,0 +1,31 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Ranks the entries of a taxonomy by their relevance to a document
+ */
+public interface CandidateRetriever {
+
+  /**
+   * Builds an index over the entry names, called once per taxonomy refresh
+   */
+  CandidateIndex index(@NonNull List<String> names);
+
+  /**
+   * Runs the per-document work shared by all indexes before the extractions of the document start
+   */
+  default Mono<Void> prepare(@NonNull String content) {
+    return Mono.empty();
+  }
+
+  interface CandidateIndex {
+    /**
+     * Positions of at most {@code k} relevant entries, most relevant first
+     */
+    List<Integer> topK(@NonNull String content, int k);
+  }
+}
@@ -0,0 +1,141 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import consulting.erhardt.paperless_ai_flow.utils.HashUtils;
+import lombok.NonNull;
+import org.springframework.ai.embedding.EmbeddingModel;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Semantic ranking by cosine similarity between the embeddings of the entry names and of the document content,
+ * also finds entries not mentioned literally (e.g. a tag "Tax" for a tax assessment). The names are embedded once
+ * per taxonomy refresh and kept in memory.
+ * <p>
+ * Every document costs one embedding call, shared by all taxonomies: {@link #prepare(String)} embeds the content
+ * through the LLM call limiter before the extractions start, and the indexes look the vector up by content hash.
+ * Indexes only embed the content themselves if it was not prepared, e.g. after the vector was evicted.
+ */
+public final class EmbeddingCandidateRetriever implements CandidateRetriever {
+
+  /**
+   * Leading part of the content that is embedded, roughly the input limit of common embedding models
+   */
+  private static final int MAX_CONTENT_CHARS = 8000;
+
+  /**
+   * Content vectors kept for the extractions of documents in flight
+   */
+  private static final int MAX_CACHED_QUERIES = 64;
+
+  private final EmbeddingModel embeddingModel;
+  private final int batchSize;
+  private final ConcurrencyLimiter llmCallLimiter;
+  private final Map<String, Mono<float[]>> queries = Collections.synchronizedMap(
+    new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Mono<float[]>> eldest) {
+        return size() > MAX_CACHED_QUERIES;
+      }
+    });
+
+  public EmbeddingCandidateRetriever(
+    @NonNull EmbeddingModel embeddingModel,
+    int batchSize,
+    @NonNull ConcurrencyLimiter llmCallLimiter
+  ) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Embedding batch size must be positive, got " + batchSize);
+    }
+
+    this.embeddingModel = embeddingModel;
+    this.batchSize = batchSize;
+    this.llmCallLimiter = llmCallLimiter;
+  }
+
+  /**
+   * Embeds the names in batches of at most {@code batchSize}, the input limit of embedding APIs
+   */
+  @Override
+  public CandidateIndex index(@NonNull List<String> names) {
+    var vectors = new ArrayList<float[]>(names.size());
+    for (var from = 0; from < names.size(); from += batchSize) {
+      embeddingModel.embed(names.subList(from, Math.min(from + batchSize, names.size())))
+        .forEach(vector -> vectors.add(normalize(vector)));
+    }
+
+    return (content, k) -> {
+      // already within the limiter permit of the extraction call
+      var query = queries.computeIfAbsent(key(content), ignored -> cached(embed(content))).block();
+
+      var similarities = vectors.stream().mapToDouble(vector -> dot(vector, query)).toArray();
+
+      return IntStream.range(0, vectors.size())
+        .boxed()
+        .sorted(Comparator.comparingDouble((Integer position) -> similarities[position]).reversed())
+        .limit(k)
+        .toList();
+    };
+  }
+
+  @Override
+  public Mono<Void> prepare(@NonNull String content) {
+    return Mono.defer(() -> {
+      var key = key(content);
+      return queries.computeIfAbsent(key, ignored -> cached(llmCallLimiter.limit(embed(content))))
+        // a failed vector is dropped, the indexes then embed the content without another permit
+        .doOnError(error -> queries.remove(key))
+        .then();
+    });
+  }
+
+  private Mono<float[]> embed(String content) {
+    return Mono.fromCallable(() -> normalize(embeddingModel.embed(truncate(content))))
+      .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Shared by all subscribers; failures are not kept, so the next subscriber calls the model again
+   */
+  private static Mono<float[]> cached(Mono<float[]> vector) {
+    return vector.cache(value -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+  }
+
+  private static String key(String content) {
+    return HashUtils.sha256(truncate(content));
+  }
+
+  private static String truncate(String content) {
+    return content.substring(0, Math.min(content.length(), MAX_CONTENT_CHARS));
+  }
+
+  private static float[] normalize(float[] vector) {
+    var norm = Math.sqrt(dot(vector, vector));
+    if (norm == 0) {
+      return vector;
+    }
+
+    var normalized = new float[vector.length];
+    for (var i = 0; i < vector.length; i++) {
+      normalized[i] = (float) (vector[i] / norm);
+    }
+    return normalized;
+  }
+
+  private static double dot(float[] a, float[] b) {
+    var sum = 0.0;
+    for (var i = 0; i < Math.min(a.length, b.length); i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,43 @@
+package consulting.erhardt.paperless_ai_flow.configs;
+
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.Bm25CandidateRetriever;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.EmbeddingCandidateRetriever;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class CandidateConfig {
+  @Bean
+  public CandidateFilter candidateFilter(
+    PipelineConfiguration pipelineConfig,
+    ObjectProvider<EmbeddingModel> embeddingModel,
+    @Qualifier("llmCallLimiter") ConcurrencyLimiter llmCallLimiter
+  ) {
+    var candidateConfig = pipelineConfig.getCandidates();
+    if (candidateConfig.getTopK() == 0) {
+      return CandidateFilter.disabled();
+    }
+
+    var retriever = switch (candidateConfig.getRetrieval()) {
+      case BM25 -> new Bm25CandidateRetriever();
+      case EMBEDDING -> {
+        var model = embeddingModel.getIfAvailable();
+        if (model == null) {
+          throw new IllegalStateException("Candidate retrieval 'embedding' requires an embedding model");
+        }
+        yield new EmbeddingCandidateRetriever(model, candidateConfig.getEmbeddingBatchSize(), llmCallLimiter);
+      }
+    };
+
+    log.info("Listing the top {} tags and correspondents per document, ranked by {}",
+      candidateConfig.getTopK(), candidateConfig.getRetrieval());
+    return new CandidateFilter(candidateConfig.getTopK(), retriever);
+  }
+}
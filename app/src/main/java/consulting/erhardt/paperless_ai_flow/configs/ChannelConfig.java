@@ -1,18 +1,25 @@
 package consulting.erhardt.paperless_ai_flow.configs;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.PriorityChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.messaging.MessageChannel;
 
 @Configuration
 @Profile("!test")
 public class ChannelConfig {
+  /**
+   * Intake queue ordered by pipeline priority, FIFO within the same priority
+   */
   @Bean
   public QueueChannel pollingChannel() {
-    var channel = new QueueChannel(25);
+    var channel = new PriorityChannel(25);
     channel.setComponentName("pollingChannel");
     return channel;
   }
@@ -25,22 +32,22 @@ public class ChannelConfig {
   }
 
   @Bean
-  public MessageChannel metadataExtractChannel() {
-    var channel = new DirectChannel();
+  public MessageChannel metadataExtractChannel(@Qualifier("extractionStageExecutor") AsyncTaskExecutor executor) {
+    var channel = new ExecutorChannel(executor);
     channel.setComponentName("metadataExtractChannel");
     return channel;
   }
 
   @Bean
-  public MessageChannel metadataResultChannel() {
-    var channel = new DirectChannel();
+  public MessageChannel metadataResultChannel(@Qualifier("patchingStageExecutor") AsyncTaskExecutor executor) {
+    var channel = new ExecutorChannel(executor);
     channel.setComponentName("metadataResultChannel");
     return channel;
   }
 
   @Bean
-  public MessageChannel finishedDocumentChannel() {
-    var channel = new DirectChannel();
+  public MessageChannel finishedDocumentChannel(@Qualifier("savingStageExecutor") AsyncTaskExecutor executor) {
+    var channel = new ExecutorChannel(executor);
     channel.setComponentName("finishedDocumentChannel");
     return channel;
   }
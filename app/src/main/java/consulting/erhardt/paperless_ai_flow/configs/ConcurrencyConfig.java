@@ -0,0 +1,214 @@
+package consulting.erhardt.paperless_ai_flow.configs;
+
+import consulting.erhardt.paperless_ai_flow.services.InFlightDocumentLimiter;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.integration.scheduling.PollSkipAdvice;
+import org.springframework.integration.scheduling.PollerMetadata;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+@Configuration
+public class ConcurrencyConfig {
+
+  /**
+   * Virtual-thread scheduler created by this configuration, disposed with the context
+   */
+  private Scheduler virtualThreadScheduler;
+
+  @Bean
+  public ConcurrencyLimiter ocrPageLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("ocr-pages", pipelineConfig.getConcurrency().getOcrPages());
+  }
+
+  @Bean
+  public ConcurrencyLimiter llmCallLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("llm-calls", pipelineConfig.getConcurrency().getLlmCalls());
+  }
+
+  /**
+   * Rendering runs synchronously while a page is loaded, so it is bounded by a plain semaphore
+   */
+  @Bean
+  public Semaphore pageRenderPermits(PipelineConfiguration pipelineConfig) {
+    return new Semaphore(pipelineConfig.getConcurrency().getPageRenders(), true);
+  }
+
+  /**
+   * Scheduler for blocking calls such as LLM requests and PDF rendering:
+   * bounded elastic by default, one virtual thread per task in virtual-thread mode.
+   * The shared bounded elastic scheduler is owned by Reactor and must not be disposed with the context,
+   * so only the virtual-thread scheduler is disposed, see {@link #disposeVirtualThreadScheduler()}.
+   */
+  @Bean(destroyMethod = "")
+  public Scheduler blockingScheduler(PipelineConfiguration pipelineConfig) {
+    if (pipelineConfig.getConcurrency().isVirtualThreads()) {
+      var factory = Thread.ofVirtual().name("blocking-vt-", 0).factory();
+      virtualThreadScheduler = Schedulers.fromExecutorService(Executors.newThreadPerTaskExecutor(factory), "virtual-threads");
+      return virtualThreadScheduler;
+    }
+
+    return Schedulers.boundedElastic();
+  }
+
+  /**
+   * Runs after the beans using the blocking scheduler were destroyed, the configuration is their factory bean
+   */
+  @PreDestroy
+  public void disposeVirtualThreadScheduler() {
+    if (virtualThreadScheduler != null) {
+      virtualThreadScheduler.dispose();
+    }
+  }
+
+  /**
+   * One polling thread per enabled pipeline, so a slow listing never delays the other pipelines.
+   * Only polls run here, maintenance tasks have their own schedulers.
+   */
+  @Bean
+  public ThreadPoolTaskScheduler pollingTaskScheduler(PipelineConfiguration pipelineConfig) {
+    var enabledPipelines = pipelineConfig.getPipelines().stream()
+      .filter(pipeline -> pipeline.getPolling().isEnabled())
+      .count();
+
+    var scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize((int) Math.max(1, enabledPipelines));
+    scheduler.setThreadNamePrefix("poll-");
+    scheduler.setWaitForTasksToCompleteOnShutdown(false);
+    return scheduler;
+  }
+
+  /**
+   * Reaps expired document leases, on its own thread so slow polls never delay it
+   */
+  @Bean
+  public ThreadPoolTaskScheduler lockReaperTaskScheduler() {
+    return maintenanceScheduler("lock-reaper-");
+  }
+
+  @Bean
+  public ThreadPoolTaskScheduler promptReloadTaskScheduler() {
+    return maintenanceScheduler("prompt-reload-");
+  }
+
+  private static ThreadPoolTaskScheduler maintenanceScheduler(String threadNamePrefix) {
+    var scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(1);
+    scheduler.setThreadNamePrefix(threadNamePrefix);
+    scheduler.setWaitForTasksToCompleteOnShutdown(false);
+    return scheduler;
+  }
+
+  /**
+   * The in-flight limit caps all stages together, so it must not be below the largest stage limit.
+   * Slots are only reserved for the highest priority if the pipelines have different priorities.
+   */
+  @Bean
+  public InFlightDocumentLimiter inFlightDocumentLimiter(PipelineConfiguration pipelineConfig) {
+    var concurrency = pipelineConfig.getConcurrency();
+    if (concurrency.getDocuments() < concurrency.getStages().max()) {
+      throw new IllegalStateException("paperless.concurrency.documents (" + concurrency.getDocuments()
+        + ") must be at least the largest stage limit (" + concurrency.getStages().max() + ")");
+    }
+
+    var priorities = pipelineConfig.getPipelines().stream()
+      .mapToInt(PipelineConfiguration.PipelineDefinition::getPriority)
+      .summaryStatistics();
+    if (priorities.getCount() == 0 || priorities.getMin() == priorities.getMax()) {
+      return new InFlightDocumentLimiter(concurrency.getDocuments());
+    }
+
+    var reserved = Math.min(concurrency.getReservedDocuments(), concurrency.getDocuments() - 1);
+    return new InFlightDocumentLimiter(concurrency.getDocuments(), reserved, priorities.getMax());
+  }
+
+  /**
+   * Takes one document per poll from the polling channel, skipping polls while the in-flight limit is reached
+   */
+  @Bean
+  public PollerMetadata documentIntakePoller(
+    InFlightDocumentLimiter inFlightDocumentLimiter,
+    @Qualifier("ocrStageExecutor") AsyncTaskExecutor ocrStageExecutor
+  ) {
+    var poller = new PollerMetadata();
+    poller.setTrigger(new PeriodicTrigger(Duration.ofMillis(100)));
+    poller.setMaxMessagesPerPoll(1);
+    poller.setAdviceChain(List.of(new PollSkipAdvice(inFlightDocumentLimiter)));
+    poller.setTaskExecutor(ocrStageExecutor);
+    return poller;
+  }
+
+  /*
+   * Stage limiters bound how many documents are inside a stage at the same time,
+   * stage executors run the (mostly short) synchronous part of a stage on its own threads.
+   */
+
+  @Bean
+  public ConcurrencyLimiter ocrStageLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("ocr-stage", pipelineConfig.getConcurrency().getStages().getOcr());
+  }
+
+  @Bean
+  public ConcurrencyLimiter extractionStageLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("extraction-stage", pipelineConfig.getConcurrency().getStages().getExtraction());
+  }
+
+  @Bean
+  public ConcurrencyLimiter patchingStageLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("patching-stage", pipelineConfig.getConcurrency().getStages().getPatching());
+  }
+
+  @Bean
+  public ConcurrencyLimiter savingStageLimiter(PipelineConfiguration pipelineConfig) {
+    return new ConcurrencyLimiter("saving-stage", pipelineConfig.getConcurrency().getStages().getSaving());
+  }
+
+  @Bean
+  public AsyncTaskExecutor ocrStageExecutor(PipelineConfiguration pipelineConfig) {
+    return stageExecutor("ocr-stage-", pipelineConfig.getConcurrency().getStages().getOcr(), pipelineConfig);
+  }
+
+  @Bean
+  public AsyncTaskExecutor extractionStageExecutor(PipelineConfiguration pipelineConfig) {
+    return stageExecutor("extraction-stage-", pipelineConfig.getConcurrency().getStages().getExtraction(), pipelineConfig);
+  }
+
+  @Bean
+  public AsyncTaskExecutor patchingStageExecutor(PipelineConfiguration pipelineConfig) {
+    return stageExecutor("patching-stage-", pipelineConfig.getConcurrency().getStages().getPatching(), pipelineConfig);
+  }
+
+  @Bean
+  public AsyncTaskExecutor savingStageExecutor(PipelineConfiguration pipelineConfig) {
+    return stageExecutor("saving-stage-", pipelineConfig.getConcurrency().getStages().getSaving(), pipelineConfig);
+  }
+
+  private static AsyncTaskExecutor stageExecutor(String threadNamePrefix, int workers, PipelineConfiguration pipelineConfig) {
+    if (pipelineConfig.getConcurrency().isVirtualThreads()) {
+      // no thread limit, the stage limiters bound how much work is in flight
+      var executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+      executor.setVirtualThreads(true);
+      return executor;
+    }
+
+    var executor = new ThreadPoolTaskExecutor();
+    executor.setThreadNamePrefix(threadNamePrefix);
+    executor.setCorePoolSize(workers);
+    executor.setMaxPoolSize(workers);
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    return executor;
+  }
+}
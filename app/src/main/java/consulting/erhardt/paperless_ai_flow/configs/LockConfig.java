@@ -1,13 +1,40 @@
 package consulting.erhardt.paperless_ai_flow.configs;
 
 import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import consulting.erhardt.paperless_ai_flow.storage.FileLeaseBackend;
+import consulting.erhardt.paperless_ai_flow.storage.InMemoryLeaseBackend;
+import consulting.erhardt.paperless_ai_flow.storage.LeaseBackend;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+import java.time.Clock;
+
 @Configuration
+@Slf4j
 public class LockConfig {
   @Bean
-  public IdLockRegistryService<Integer> documentLockRegistry() {
-    return new IdLockRegistryService<>();
+  public IdLockRegistryService<Integer> documentLockRegistry(PipelineConfiguration pipelineConfig) {
+    var lockConfig = pipelineConfig.getLocks();
+    return new IdLockRegistryService<>(leaseBackend(pipelineConfig), lockConfig.getTtl(), Clock.systemUTC());
+  }
+
+  private static LeaseBackend<Integer> leaseBackend(PipelineConfiguration pipelineConfig) {
+    var lockConfig = pipelineConfig.getLocks();
+
+    return switch (lockConfig.getBackend()) {
+      case MEMORY -> new InMemoryLeaseBackend<>();
+      case FILE -> {
+        if (lockConfig.getDirectory() == null || lockConfig.getDirectory().isBlank()) {
+          // the storage directory holds per-replica state and must not be shared
+          throw new IllegalStateException("paperless.locks.directory is required for the file lock backend");
+        }
+
+        var directory = Path.of(lockConfig.getDirectory());
+        log.info("Document leases shared in {}", directory);
+        yield new FileLeaseBackend<>(directory, Integer::valueOf);
+      }
+    };
   }
 }
@@ -4,6 +4,7 @@ import lombok.Builder;
 import lombok.NonNull;
 import lombok.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
 import java.util.List;
@@ -20,6 +21,62 @@ public class PipelineConfiguration {
   @Builder.Default
   List<PipelineDefinition> pipelines = List.of();
 
+  @NonNull
+  @Builder.Default
+  ConcurrencyConfiguration concurrency = ConcurrencyConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  StorageConfiguration storage = StorageConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  WebhookConfiguration webhook = WebhookConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  RetryConfiguration retry = RetryConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  LockConfiguration locks = LockConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  ShardingConfiguration sharding = ShardingConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  PromptConfiguration prompts = PromptConfiguration.builder().build();
+
+  @NonNull
+  @Builder.Default
+  CandidateConfiguration candidates = CandidateConfiguration.builder().build();
+
+  public PipelineConfiguration(
+    @NonNull ApiConfiguration api,
+    List<PipelineDefinition> pipelines,
+    ConcurrencyConfiguration concurrency,
+    StorageConfiguration storage,
+    WebhookConfiguration webhook,
+    RetryConfiguration retry,
+    LockConfiguration locks,
+    ShardingConfiguration sharding,
+    PromptConfiguration prompts,
+    CandidateConfiguration candidates
+  ) {
+    this.api = api;
+    this.pipelines = (pipelines != null) ? pipelines : List.of();
+    this.concurrency = (concurrency != null) ? concurrency : ConcurrencyConfiguration.builder().build();
+    this.storage = (storage != null) ? storage : StorageConfiguration.builder().build();
+    this.webhook = (webhook != null) ? webhook : WebhookConfiguration.builder().build();
+    this.retry = (retry != null) ? retry : RetryConfiguration.builder().build();
+    this.locks = (locks != null) ? locks : LockConfiguration.builder().build();
+    this.sharding = (sharding != null) ? sharding : ShardingConfiguration.builder().build();
+    this.prompts = (prompts != null) ? prompts : PromptConfiguration.builder().build();
+    this.candidates = (candidates != null) ? candidates : CandidateConfiguration.builder().build();
+  }
+
   @Value
   @Builder
   public static class ApiConfiguration {
@@ -30,6 +87,384 @@ public class PipelineConfiguration {
     String token;
   }
 
+  @Value
+  @Builder
+  public static class ConcurrencyConfiguration {
+    /**
+     * Maximum number of documents taken from the polling queue and processed at the same time,
+     * at least the largest stage limit, otherwise that stage can never be filled
+     */
+    @Builder.Default
+    int documents = 16;
+
+    /**
+     * In-flight slots only taken by documents of the highest pipeline priority, so a busy low-priority pipeline
+     * cannot hold every slot; unused while all pipelines share one priority
+     */
+    @Builder.Default
+    int reservedDocuments = 4;
+
+    /**
+     * Maximum number of OCR page requests in flight across all documents and pipelines
+     */
+    @Builder.Default
+    int ocrPages = 8;
+
+    /**
+     * Maximum number of LLM calls (OCR and extraction) in flight across all documents and pipelines
+     */
+    @Builder.Default
+    int llmCalls = 16;
+
+    /**
+     * Maximum number of PDF pages rendered to images at the same time
+     */
+    @Builder.Default
+    int pageRenders = 4;
+
+    /**
+     * Run stage workers and blocking calls (LLM requests, PDF rendering) on virtual threads
+     */
+    @Builder.Default
+    boolean virtualThreads = false;
+
+    @NonNull
+    @Builder.Default
+    StageConcurrencyConfiguration stages = StageConcurrencyConfiguration.builder().build();
+
+    public ConcurrencyConfiguration(
+      Integer documents,
+      Integer reservedDocuments,
+      Integer ocrPages,
+      Integer llmCalls,
+      Integer pageRenders,
+      Boolean virtualThreads,
+      StageConcurrencyConfiguration stages
+    ) {
+      this.documents = (documents != null) ? documents : 16;
+      this.reservedDocuments = (reservedDocuments != null) ? reservedDocuments : 4;
+      this.ocrPages = (ocrPages != null) ? ocrPages : 8;
+      this.llmCalls = (llmCalls != null) ? llmCalls : 16;
+      this.pageRenders = (pageRenders != null) ? pageRenders : 4;
+      this.virtualThreads = (virtualThreads != null) ? virtualThreads : false;
+      this.stages = (stages != null) ? stages : StageConcurrencyConfiguration.builder().build();
+    }
+  }
+
+  /**
+   * Number of workers per pipeline stage, each stage runs on its own pool
+   */
+  @Value
+  @Builder
+  public static class StageConcurrencyConfiguration {
+    @Builder.Default
+    int ocr = 4;
+
+    @Builder.Default
+    int extraction = 16;
+
+    @Builder.Default
+    int patching = 8;
+
+    @Builder.Default
+    int saving = 8;
+
+    public StageConcurrencyConfiguration(Integer ocr, Integer extraction, Integer patching, Integer saving) {
+      this.ocr = (ocr != null) ? ocr : 4;
+      this.extraction = (extraction != null) ? extraction : 16;
+      this.patching = (patching != null) ? patching : 8;
+      this.saving = (saving != null) ? saving : 8;
+    }
+
+    public int max() {
+      return Math.max(Math.max(ocr, extraction), Math.max(patching, saving));
+    }
+  }
+
+  @Value
+  @Builder
+  public static class WebhookConfiguration {
+    /**
+     * Accept document notifications from paperless-ngx workflows (requires a reactive web server)
+     */
+    @Builder.Default
+    boolean enabled = false;
+
+    /**
+     * Shared secret expected in the X-Webhook-Secret header, required when the webhook is enabled; startup fails
+     * without it and mismatching requests are rejected with 401
+     */
+    String secret;
+
+    public WebhookConfiguration(Boolean enabled, String secret) {
+      this.enabled = (enabled != null) ? enabled : false;
+      this.secret = secret;
+    }
+  }
+
+  /**
+   * Default prompts and JSON schemas, loaded once at startup
+   */
+  @Value
+  @Builder
+  public static class PromptConfiguration {
+    /**
+     * Directory with {@code prompts/*.txt} and {@code schemas/*.json} files overriding the bundled ones
+     */
+    String directory;
+
+    /**
+     * Interval in which the directory is checked for changed files, zero disables reloading
+     */
+    @NonNull
+    @Builder.Default
+    Duration reloadInterval = Duration.ofSeconds(30);
+
+    public PromptConfiguration(String directory, Duration reloadInterval) {
+      this.directory = directory;
+      this.reloadInterval = (reloadInterval != null) ? reloadInterval : Duration.ofSeconds(30);
+    }
+  }
+
+  /**
+   * Narrows the tags and correspondents listed in extraction prompts to the most relevant ones per document
+   */
+  @Value
+  @Builder
+  public static class CandidateConfiguration {
+    /**
+     * Maximum number of tags and correspondents listed per document, zero lists all of them
+     */
+    @Builder.Default
+    int topK = 0;
+
+    @NonNull
+    @Builder.Default
+    CandidateRetrieval retrieval = CandidateRetrieval.BM25;
+
+    /**
+     * Names embedded per call when a taxonomy is indexed for embedding retrieval, the input limit of the API
+     */
+    @Builder.Default
+    int embeddingBatchSize = 2048;
+
+    public CandidateConfiguration(Integer topK, CandidateRetrieval retrieval, Integer embeddingBatchSize) {
+      this.topK = (topK != null) ? topK : 0;
+      this.retrieval = (retrieval != null) ? retrieval : CandidateRetrieval.BM25;
+      this.embeddingBatchSize = (embeddingBatchSize != null) ? embeddingBatchSize : 2048;
+    }
+  }
+
+  /**
+   * Leases on documents in flight, each stage renews the lease of its document
+   */
+  @Value
+  @Builder
+  public static class LockConfiguration {
+    /**
+     * Time after which a lease that was neither renewed nor released expires, zero disables expiry
+     */
+    @NonNull
+    @Builder.Default
+    Duration ttl = Duration.ofMinutes(30);
+
+    @NonNull
+    @Builder.Default
+    Duration reapInterval = Duration.ofMinutes(1);
+
+    /**
+     * Where leases are kept: memory for a single instance, file for replicas sharing a directory
+     */
+    @NonNull
+    @Builder.Default
+    LockBackend backend = LockBackend.MEMORY;
+
+    /**
+     * Lease directory of the file backend, required for it and shared by all replicas; only this directory may be
+     * shared, the storage directory holds per-replica state
+     */
+    String directory;
+
+    public LockConfiguration(Duration ttl, Duration reapInterval, LockBackend backend, String directory) {
+      this.ttl = (ttl != null) ? ttl : Duration.ofMinutes(30);
+      this.reapInterval = (reapInterval != null) ? reapInterval : Duration.ofMinutes(1);
+      this.backend = (backend != null) ? backend : LockBackend.MEMORY;
+      this.directory = directory;
+    }
+  }
+
+  /**
+   * Splits polled documents between replicas on a static consistent-hash ring, disabled without replicas
+   */
+  @Value
+  @Builder
+  public static class ShardingConfiguration {
+    /**
+     * Name of this replica, must be one of the replicas
+     */
+    String replica;
+
+    /**
+     * All replicas of the ring, every replica must be configured with the same list
+     */
+    @NonNull
+    @Builder.Default
+    List<String> replicas = List.of();
+
+    @Builder.Default
+    int virtualNodes = 64;
+
+    public ShardingConfiguration(String replica, List<String> replicas, Integer virtualNodes) {
+      this.replica = replica;
+      this.replicas = (replicas != null) ? replicas : List.of();
+      this.virtualNodes = (virtualNodes != null) ? virtualNodes : 64;
+    }
+
+    public boolean isEnabled() {
+      return !replicas.isEmpty();
+    }
+  }
+
+  /**
+   * Retries of transient stage failures and dead-lettering of documents that keep failing
+   */
+  @Value
+  @Builder
+  public static class RetryConfiguration {
+    /**
+     * Attempts per stage and run, including the first one; only transient errors are retried
+     */
+    @Builder.Default
+    int maxAttempts = 3;
+
+    @NonNull
+    @Builder.Default
+    Duration initialBackoff = Duration.ofSeconds(2);
+
+    @NonNull
+    @Builder.Default
+    Duration maxBackoff = Duration.ofMinutes(1);
+
+    /**
+     * Failed runs after which a document is dead-lettered and no longer queued until it is modified, 0 (default)
+     * disables
+     */
+    @Builder.Default
+    int deadLetterAfter = 0;
+
+    public RetryConfiguration(Integer maxAttempts, Duration initialBackoff, Duration maxBackoff, Integer deadLetterAfter) {
+      this.maxAttempts = (maxAttempts != null) ? maxAttempts : 3;
+      this.initialBackoff = (initialBackoff != null) ? initialBackoff : Duration.ofSeconds(2);
+      this.maxBackoff = (maxBackoff != null) ? maxBackoff : Duration.ofMinutes(1);
+      this.deadLetterAfter = (deadLetterAfter != null) ? deadLetterAfter : 0;
+    }
+  }
+
+  @Value
+  @Builder
+  public static class StorageConfiguration {
+    /**
+     * Base directory for local state such as the OCR cache
+     */
+    @NonNull
+    @Builder.Default
+    String directory = "data";
+
+    @NonNull
+    @Builder.Default
+    OcrCacheConfiguration ocrCache = OcrCacheConfiguration.builder().build();
+
+    @NonNull
+    @Builder.Default
+    JournalConfiguration journal = JournalConfiguration.builder().build();
+
+    @NonNull
+    @Builder.Default
+    CheckpointConfiguration checkpoints = CheckpointConfiguration.builder().build();
+
+    public StorageConfiguration(
+      String directory,
+      OcrCacheConfiguration ocrCache,
+      JournalConfiguration journal,
+      CheckpointConfiguration checkpoints
+    ) {
+      this.directory = (directory != null) ? directory : "data";
+      this.ocrCache = (ocrCache != null) ? ocrCache : OcrCacheConfiguration.builder().build();
+      this.journal = (journal != null) ? journal : JournalConfiguration.builder().build();
+      this.checkpoints = (checkpoints != null) ? checkpoints : CheckpointConfiguration.builder().build();
+    }
+  }
+
+  /**
+   * Checkpoints of extraction results, so a document failing in a later stage is not extracted again
+   */
+  @Value
+  @Builder
+  public static class CheckpointConfiguration {
+    @Builder.Default
+    boolean enabled = false;
+
+    /**
+     * Disk space after which the oldest checkpoint segments are evicted
+     */
+    @NonNull
+    @Builder.Default
+    DataSize maxSize = DataSize.ofMegabytes(64);
+
+    @NonNull
+    @Builder.Default
+    DataSize segmentSize = DataSize.ofMegabytes(8);
+
+    public CheckpointConfiguration(Boolean enabled, DataSize maxSize, DataSize segmentSize) {
+      this.enabled = (enabled != null) ? enabled : false;
+      this.maxSize = (maxSize != null) ? maxSize : DataSize.ofMegabytes(64);
+      this.segmentSize = (segmentSize != null) ? segmentSize : DataSize.ofMegabytes(8);
+    }
+  }
+
+  /**
+   * Journal of completed pipeline stages, used to resume in-flight documents after a restart
+   */
+  @Value
+  @Builder
+  public static class JournalConfiguration {
+    @Builder.Default
+    boolean enabled = false;
+
+    @NonNull
+    @Builder.Default
+    DataSize segmentSize = DataSize.ofMegabytes(16);
+
+    public JournalConfiguration(Boolean enabled, DataSize segmentSize) {
+      this.enabled = (enabled != null) ? enabled : false;
+      this.segmentSize = (segmentSize != null) ? segmentSize : DataSize.ofMegabytes(16);
+    }
+  }
+
+  @Value
+  @Builder
+  public static class OcrCacheConfiguration {
+    @Builder.Default
+    boolean enabled = false;
+
+    /**
+     * Disk space after which the oldest cache segments are evicted
+     */
+    @NonNull
+    @Builder.Default
+    DataSize maxSize = DataSize.ofMegabytes(256);
+
+    @NonNull
+    @Builder.Default
+    DataSize segmentSize = DataSize.ofMegabytes(16);
+
+    public OcrCacheConfiguration(Boolean enabled, DataSize maxSize, DataSize segmentSize) {
+      this.enabled = (enabled != null) ? enabled : false;
+      this.maxSize = (maxSize != null) ? maxSize : DataSize.ofMegabytes(256);
+      this.segmentSize = (segmentSize != null) ? segmentSize : DataSize.ofMegabytes(16);
+    }
+  }
+
   @Value
   @Builder
   public static class PipelineDefinition {
@@ -60,6 +495,12 @@ public class PipelineConfiguration {
     @Builder.Default
     boolean removeInboxTags = false;
 
+    /**
+     * Documents of pipelines with a higher priority leave the intake queue first
+     */
+    @Builder.Default
+    int priority = 0;
+
     public PipelineDefinition(
       @NonNull String name,
       @NonNull SelectorConfiguration selector,
@@ -67,7 +508,8 @@ public class PipelineConfiguration {
       OcrConfiguration ocr,
       ExtractionConfiguration extraction,
       List<PatchConfiguration> patches,
-      Boolean removeInboxTags
+      Boolean removeInboxTags,
+      Integer priority
     ) {
       this.name = name;
       this.selector = selector;
@@ -79,6 +521,7 @@ public class PipelineConfiguration {
       this.extraction = (extraction != null) ? extraction : ExtractionConfiguration.builder().build();
       this.patches = (patches != null) ? patches : List.of();
       this.removeInboxTags = (removeInboxTags != null) ? removeInboxTags : false;
+      this.priority = (priority != null) ? priority : 0;
     }
   }
 
@@ -99,6 +542,39 @@ public class PipelineConfiguration {
 
     @Builder.Default
     boolean enabled = true;
+
+    /**
+     * Random share of the interval added to every delay, so pipelines with equal intervals do not poll in lockstep
+     */
+    @Builder.Default
+    double jitter = 0.1;
+
+    /**
+     * Only list documents modified since the last poll instead of all documents carrying the selector tags
+     */
+    @Builder.Default
+    boolean incremental = true;
+
+    /**
+     * How often an incremental pipeline still lists all matching documents, e.g. to retry failed ones
+     */
+    @NonNull
+    @Builder.Default
+    Duration fullSweepInterval = Duration.ofHours(1);
+
+    public PollingConfiguration(
+      Duration interval,
+      Boolean enabled,
+      Double jitter,
+      Boolean incremental,
+      Duration fullSweepInterval
+    ) {
+      this.interval = (interval != null) ? interval : Duration.ofSeconds(60);
+      this.enabled = (enabled != null) ? enabled : true;
+      this.jitter = (jitter != null) ? jitter : 0.1;
+      this.incremental = (incremental != null) ? incremental : true;
+      this.fullSweepInterval = (fullSweepInterval != null) ? fullSweepInterval : Duration.ofHours(1);
+    }
   }
 
   @Value
@@ -109,6 +585,58 @@ public class PipelineConfiguration {
     String model = "openai/gpt-4o";
 
     String prompt;
+
+    /**
+     * Maximum number of pages of a single document sent to the OCR model concurrently
+     */
+    @Builder.Default
+    int pageConcurrency = 4;
+
+    /**
+     * Where page text comes from: the OCR model, the embedded PDF text layer, or the text layer with OCR fallback
+     */
+    @NonNull
+    @Builder.Default
+    OcrStrategy strategy = OcrStrategy.VISION;
+
+    @NonNull
+    @Builder.Default
+    TextLayerConfiguration textLayer = TextLayerConfiguration.builder().build();
+
+    public OcrConfiguration(
+      String model,
+      String prompt,
+      Integer pageConcurrency,
+      OcrStrategy strategy,
+      TextLayerConfiguration textLayer
+    ) {
+      this.model = (model != null) ? model : "openai/gpt-4o";
+      this.prompt = prompt;
+      this.pageConcurrency = (pageConcurrency != null) ? pageConcurrency : 4;
+      this.strategy = (strategy != null) ? strategy : OcrStrategy.VISION;
+      this.textLayer = (textLayer != null) ? textLayer : TextLayerConfiguration.builder().build();
+    }
+  }
+
+  @Value
+  @Builder
+  public static class TextLayerConfiguration {
+    /**
+     * Minimum number of non-whitespace characters for a page's text layer to be accepted in auto mode
+     */
+    @Builder.Default
+    int minCharacters = 50;
+
+    /**
+     * Minimum share of readable glyphs (letters, digits, punctuation) among the non-whitespace characters
+     */
+    @Builder.Default
+    double minGlyphRatio = 0.9;
+
+    public TextLayerConfiguration(Integer minCharacters, Double minGlyphRatio) {
+      this.minCharacters = (minCharacters != null) ? minCharacters : 50;
+      this.minGlyphRatio = (minGlyphRatio != null) ? minGlyphRatio : 0.9;
+    }
   }
 
   @Value
@@ -133,6 +661,47 @@ public class PipelineConfiguration {
     @Builder.Default
     Boolean customFields = true;
     String customFieldsPrompt;
+
+    /**
+     * Runs all enabled extractions in one AI call instead of one call each, so the content is only sent once
+     */
+    @Builder.Default
+    Boolean combined = false;
+
+    /**
+     * Order of instructions and document content in AI requests
+     */
+    @NonNull
+    @Builder.Default
+    PromptLayout promptLayout = PromptLayout.INSTRUCTIONS_FIRST;
+
+    public ExtractionConfiguration(
+      Boolean title,
+      String titlePrompt,
+      Boolean createdDate,
+      String createdDatePrompt,
+      Boolean correspondent,
+      String correspondentPrompt,
+      Boolean tags,
+      String tagsPrompt,
+      Boolean customFields,
+      String customFieldsPrompt,
+      Boolean combined,
+      PromptLayout promptLayout
+    ) {
+      this.title = (title != null) ? title : true;
+      this.titlePrompt = titlePrompt;
+      this.createdDate = (createdDate != null) ? createdDate : true;
+      this.createdDatePrompt = createdDatePrompt;
+      this.correspondent = (correspondent != null) ? correspondent : true;
+      this.correspondentPrompt = correspondentPrompt;
+      this.tags = (tags != null) ? tags : true;
+      this.tagsPrompt = tagsPrompt;
+      this.customFields = (customFields != null) ? customFields : true;
+      this.customFieldsPrompt = customFieldsPrompt;
+      this.combined = (combined != null) ? combined : false;
+      this.promptLayout = (promptLayout != null) ? promptLayout : PromptLayout.INSTRUCTIONS_FIRST;
+    }
   }
 
   @Value
@@ -150,6 +719,37 @@ public class PipelineConfiguration {
     String value;
   }
 
+  /**
+   * {@code BM25} ranks by shared words and needs no model, {@code EMBEDDING} ranks by semantic similarity using the
+   * configured embedding model
+   */
+  public enum CandidateRetrieval {
+    BM25,
+    EMBEDDING
+  }
+
+  public enum LockBackend {
+    MEMORY,
+    FILE
+  }
+
+  /**
+   * {@code INSTRUCTIONS_FIRST} sends the extraction prompt as system message before the document.
+   * {@code CONTENT_FIRST} starts every request of a document with the same preamble and document block, followed by
+   * the extraction specific reference data and instructions, so providers can serve the shared prefix from their
+   * prompt cache.
+   */
+  public enum PromptLayout {
+    INSTRUCTIONS_FIRST,
+    CONTENT_FIRST
+  }
+
+  public enum OcrStrategy {
+    AUTO,
+    TEXT_LAYER,
+    VISION
+  }
+
   public enum PatchAction {
     ADD,
     DROP,
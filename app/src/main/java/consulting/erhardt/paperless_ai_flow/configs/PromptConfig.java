@@ -0,0 +1,16 @@
+package consulting.erhardt.paperless_ai_flow.configs;
+
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class PromptConfig {
+  @Bean
+  public PromptRegistry promptRegistry(PipelineConfiguration pipelineConfig) {
+    var directory = pipelineConfig.getPrompts().getDirectory();
+    return new PromptRegistry((directory != null) ? Path.of(directory) : null);
+  }
+}
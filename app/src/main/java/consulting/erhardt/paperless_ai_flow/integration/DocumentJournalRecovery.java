@@ -0,0 +1,185 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.services.DocumentJournal;
+import consulting.erhardt.paperless_ai_flow.services.DocumentQueueService;
+import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import consulting.erhardt.paperless_ai_flow.services.InFlightDocumentLimiter;
+import consulting.erhardt.paperless_ai_flow.services.LeaseHeartbeatService;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Resumes the documents that were in flight when the application last stopped.
+ * <p>
+ * Runs before the polling timers start. Documents that were only queued are queued again, all others are handed
+ * to the stage following their last journaled stage, so finished OCR and extraction work is not repeated.
+ * They are locked right away but only handed over while the in-flight limit has room, in journal order.
+ */
+@Component
+@Slf4j
+public class DocumentJournalRecovery implements SmartLifecycle {
+
+  private static final Duration ADMISSION_INTERVAL = Duration.ofMillis(100);
+
+  private final PipelineConfiguration pipelineConfig;
+  private final DocumentJournal documentJournal;
+  private final DocumentQueueService documentQueueService;
+  private final IdLockRegistryService<Integer> documentLockRegistry;
+  private final InFlightDocumentLimiter inFlightDocumentLimiter;
+  private final LeaseHeartbeatService leaseHeartbeatService;
+  private final MessageChannel metadataExtractChannel;
+  private final MessageChannel metadataResultChannel;
+  private final MessageChannel finishedDocumentChannel;
+
+  /**
+   * Resumed documents holding their lease while waiting for an in-flight slot
+   */
+  private final Queue<Resumption> waiting = new ConcurrentLinkedQueue<>();
+  private Disposable admissions;
+
+  private volatile boolean running;
+
+  public DocumentJournalRecovery(
+    PipelineConfiguration pipelineConfig,
+    DocumentJournal documentJournal,
+    DocumentQueueService documentQueueService,
+    @Qualifier("documentLockRegistry") IdLockRegistryService<Integer> documentLockRegistry,
+    InFlightDocumentLimiter inFlightDocumentLimiter,
+    LeaseHeartbeatService leaseHeartbeatService,
+    @Qualifier("metadataExtractChannel") MessageChannel metadataExtractChannel,
+    @Qualifier("metadataResultChannel") MessageChannel metadataResultChannel,
+    @Qualifier("finishedDocumentChannel") MessageChannel finishedDocumentChannel
+  ) {
+    this.pipelineConfig = pipelineConfig;
+    this.documentJournal = documentJournal;
+    this.documentQueueService = documentQueueService;
+    this.documentLockRegistry = documentLockRegistry;
+    this.inFlightDocumentLimiter = inFlightDocumentLimiter;
+    this.leaseHeartbeatService = leaseHeartbeatService;
+    this.metadataExtractChannel = metadataExtractChannel;
+    this.metadataResultChannel = metadataResultChannel;
+    this.finishedDocumentChannel = finishedDocumentChannel;
+  }
+
+  @Override
+  public synchronized void start() {
+    var pending = documentJournal.pending();
+    if (!pending.isEmpty()) {
+      log.info("Resuming {} documents from the journal", pending.size());
+      pending.forEach(this::resume);
+      admitWaiting();
+    }
+
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (admissions != null) {
+      admissions.dispose();
+    }
+
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Starts before the {@link PipelinePollingScheduler}, so resumed documents are locked before the first poll
+   */
+  @Override
+  public int getPhase() {
+    return DEFAULT_PHASE - 1;
+  }
+
+  void resume(@NonNull DocumentJournal.Entry entry) {
+    var document = entry.document();
+    var pipeline = pipelineConfig.getPipelines().stream()
+      .filter(candidate -> candidate.getName().equals(entry.pipelineName()))
+      .findFirst()
+      .orElse(null);
+
+    if (pipeline == null) {
+      log.warn("Dropping journaled document {} of unknown pipeline '{}'", document.getId(), entry.pipelineName());
+      documentJournal.complete(document.getId());
+      return;
+    }
+
+    if (entry.stage() == DocumentJournal.Stage.POLLED) {
+      var result = documentQueueService.enqueueReference(document, pipeline);
+      if (result != DocumentQueueService.EnqueueResult.ENQUEUED) {
+        // still carries its selector tags, so the next poll picks it up again
+        log.info("Could not re-queue journaled document {} ({}), leaving it to polling", document.getId(), result);
+        documentJournal.complete(document.getId());
+      }
+      return;
+    }
+
+    var lockToken = documentLockRegistry.tryAcquire(document.getId()).orElse(null);
+    if (lockToken == null) {
+      log.debug("Journaled document {} is already being processed", document.getId());
+      return;
+    }
+
+    leaseHeartbeatService.start(document.getId(), lockToken);
+    log.info("Resuming document {} of pipeline '{}' after stage {}", document.getId(), pipeline.getName(), entry.stage());
+
+    var message = MessageBuilder
+      .withPayload(document)
+      .setHeader("pipeline", pipeline)
+      .setHeader("pipelineName", pipeline.getName())
+      .setHeader(DocumentQueueService.LOCK_TOKEN_HEADER, lockToken)
+      .build();
+
+    waiting.add(new Resumption(message, nextStageChannel(entry.stage())));
+  }
+
+  /**
+   * Hands the waiting documents to their next stage as in-flight slots free up, checked as often as the intake polls
+   */
+  private void admitWaiting() {
+    if (waiting.isEmpty()) {
+      return;
+    }
+
+    admissions = Flux.interval(Duration.ZERO, ADMISSION_INTERVAL, Schedulers.boundedElastic())
+      .takeWhile(tick -> !waiting.isEmpty())
+      .subscribe(tick -> {
+        Resumption next;
+        while ((next = waiting.peek()) != null && inFlightDocumentLimiter.tryAdmit(next.message().getPayload().getId())) {
+          waiting.remove();
+          next.channel().send(next.message());
+        }
+      });
+  }
+
+  private MessageChannel nextStageChannel(DocumentJournal.Stage stage) {
+    return switch (stage) {
+      case OCR_DONE -> metadataExtractChannel;
+      case EXTRACTED -> metadataResultChannel;
+      case PATCHED -> finishedDocumentChannel;
+      case POLLED -> throw new IllegalArgumentException("Polled documents are re-queued, not resumed");
+    };
+  }
+
+  private record Resumption(Message<Document> message, MessageChannel channel) {
+  }
+}
@@ -0,0 +1,86 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import consulting.erhardt.paperless_ai_flow.services.InFlightDocumentLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Periodically removes expired document leases and frees the in-flight slots of the affected documents,
+ * so a lock leaked by a stage does not block the document or the intake capacity until a restart.
+ */
+@Component
+@Slf4j
+public class DocumentLockReaper implements SmartLifecycle {
+
+  private final PipelineConfiguration pipelineConfig;
+  private final IdLockRegistryService<Integer> documentLockRegistry;
+  private final InFlightDocumentLimiter inFlightDocumentLimiter;
+  private final TaskScheduler lockReaperTaskScheduler;
+
+  private ScheduledFuture<?> scheduledReap;
+  private volatile boolean running;
+
+  public DocumentLockReaper(
+    PipelineConfiguration pipelineConfig,
+    @Qualifier("documentLockRegistry") IdLockRegistryService<Integer> documentLockRegistry,
+    InFlightDocumentLimiter inFlightDocumentLimiter,
+    @Qualifier("lockReaperTaskScheduler") TaskScheduler lockReaperTaskScheduler
+  ) {
+    this.pipelineConfig = pipelineConfig;
+    this.documentLockRegistry = documentLockRegistry;
+    this.inFlightDocumentLimiter = inFlightDocumentLimiter;
+    this.lockReaperTaskScheduler = lockReaperTaskScheduler;
+  }
+
+  @Override
+  public synchronized void start() {
+    var lockConfig = pipelineConfig.getLocks();
+    if (lockConfig.getTtl().isZero()) {
+      log.info("Document lease expiry disabled");
+    } else {
+      var interval = lockConfig.getReapInterval();
+      scheduledReap = lockReaperTaskScheduler.scheduleWithFixedDelay(this::reap,
+        lockReaperTaskScheduler.getClock().instant().plus(interval), interval);
+    }
+
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduledReap != null) {
+      scheduledReap.cancel(false);
+      scheduledReap = null;
+    }
+
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  void reap() {
+    try {
+      var reaped = documentLockRegistry.reapExpired();
+      reaped.forEach(inFlightDocumentLimiter::release);
+
+      var stats = documentLockRegistry.stats();
+      if (!reaped.isEmpty()) {
+        log.warn("Reaped expired leases of documents {}, {}", reaped, stats);
+      } else {
+        log.debug("Document leases: {}", stats);
+      }
+    } catch (Exception e) {
+      log.error("Error reaping document leases: {}", e.getMessage(), e);
+    }
+  }
+}
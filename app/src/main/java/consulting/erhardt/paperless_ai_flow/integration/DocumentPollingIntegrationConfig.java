@@ -6,33 +6,37 @@ import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.DocumentService;
 import consulting.erhardt.paperless_ai_flow.services.*;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import consulting.erhardt.paperless_ai_flow.utils.RetryPolicies;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.annotation.IntegrationComponentScan;
+import org.springframework.integration.annotation.Poller;
 import org.springframework.integration.annotation.ServiceActivator;
-import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.config.EnableIntegration;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageChannel;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Configuration
 @EnableIntegration
 @IntegrationComponentScan
-@EnableScheduling
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentPollingIntegrationConfig {
 
+  private static final int MAX_PAGE_SIZE = 100;
+
   private final PipelineConfiguration pipelineConfig;
   private final DocumentPollingService pollingService;
   private final PdfOcrService pdfOcrService;
@@ -43,205 +47,352 @@ public class DocumentPollingIntegrationConfig {
   @Qualifier("documentLockRegistry")
   private final IdLockRegistryService<Integer> documentLockRegistry;
 
-  @Qualifier("pollingChannel")
-  private final QueueChannel pollingChannel;
+  private final DocumentQueueService documentQueueService;
+  private final InFlightDocumentLimiter inFlightDocumentLimiter;
+  private final PollingWatermarkService pollingWatermarkService;
+  private final DocumentJournal documentJournal;
+  private final ExtractionCheckpointStore extractionCheckpointStore;
+  private final DeadLetterStore deadLetterStore;
+  private final DocumentShardService documentShardService;
+  private final LeaseHeartbeatService leaseHeartbeatService;
+
+  @Qualifier("ocrStageLimiter")
+  private final ConcurrencyLimiter ocrStageLimiter;
+
+  @Qualifier("extractionStageLimiter")
+  private final ConcurrencyLimiter extractionStageLimiter;
+
+  @Qualifier("patchingStageLimiter")
+  private final ConcurrencyLimiter patchingStageLimiter;
+
+  @Qualifier("savingStageLimiter")
+  private final ConcurrencyLimiter savingStageLimiter;
 
   /**
-   * Poll new documents all 30 seconds
+   * Polls every enabled pipeline once, one after another.
+   * Regular polling runs per pipeline on its own timer, see {@link PipelinePollingScheduler}.
    */
-  @Scheduled(fixedRate = 30000)
   public void pollDocuments() {
-    var enabledPipelines = pipelineConfig.getPipelines().stream()
+    pipelineConfig.getPipelines().stream()
       .filter(pipeline -> pipeline.getPolling().isEnabled())
-      .toList();
-
-    for (var pipeline : enabledPipelines) {
-      try {
-        var remainingCapacity = pollingChannel.getRemainingCapacity();
-
-        if (remainingCapacity <= 0) {
-          log.debug("Polling channel full (remainingCapacity=0), skip for pipeline '{}'", pipeline.getName());
-          continue;
-        }
-
-        var docsFlux = pollingService.getDocumentsByTagNames(pipeline.getSelector().getRequiredTags());
+      .forEach(this::pollPipeline);
+  }
 
-        var successfullyEnqueuedDocs = docsFlux
-          // only allow documents, that are not locked
-          .filter(doc -> {
-            var locked = documentLockRegistry.tryLock(doc.getId());
-            if (!locked) {
-              log.debug("Skip locked document {}", doc.getId());
-            }
-            return locked;
-          })
-          // try to queue document, if not accepted, unlock document again
-          .handle((doc, sink) -> {
-            var message = MessageBuilder
-              .withPayload(doc)
-              .setHeader("pipeline", pipeline)
-              .setHeader("pipelineName", pipeline.getName())
-              .build();
+  /**
+   * Polls one pipeline. Incremental pipelines only list documents modified since their watermark and fall back
+   * to a full listing every full-sweep-interval, e.g. to pick up failed documents.
+   */
+  public void pollPipeline(@NonNull PipelineConfiguration.PipelineDefinition pipeline) {
+    try {
+      var remainingCapacity = documentQueueService.remainingCapacity();
 
-            var accepted = pollingChannel.send(message, 0); // non-blocking
-            if (accepted) {
-              log.debug("Enqueued document {} (title: '{}') for pipeline '{}'", doc.getId(), doc.getTitle(), pipeline.getName());
+      if (remainingCapacity <= 0) {
+        log.debug("Polling channel full (remainingCapacity=0), skip for pipeline '{}'", pipeline.getName());
+        return;
+      }
 
+      var fullSweep = !pipeline.getPolling().isIncremental() || pollingWatermarkService.isFullSweepDue(pipeline);
+      var requiredTags = pipeline.getSelector().getRequiredTags();
+      // pages sized to the free queue slots, further pages are only fetched if documents were skipped
+      var pageSize = Math.min(remainingCapacity, MAX_PAGE_SIZE);
+      var docsFlux = fullSweep
+        ? pollingService.getDocumentReferencesByTagNames(requiredTags, pageSize)
+        : pollingService.getDocumentReferencesByTagNamesModifiedAfter(requiredTags,
+            pollingWatermarkService.getWatermark(pipeline.getName()).orElse(null), pageSize);
+
+      var tracker = new PollingWatermarkService.Tracker();
+      var queueFull = new AtomicBoolean();
+
+      var successfullyEnqueuedDocs = docsFlux
+        // leases may live on a shared file system, so locking must not block the HTTP client threads;
+        // one document at a time, so no page is fetched before the previous one was consumed
+        .publishOn(Schedulers.boundedElastic(), 1)
+        // only queue documents that are not locked, stop filling this cycle once the queue is full
+        .<Document>handle((doc, sink) -> {
+          if (!documentShardService.owns(doc.getId())) {
+            // polled by the replica owning it, so it must not move this replica's watermark
+            return;
+          }
+
+          switch (documentQueueService.enqueueReference(doc, pipeline)) {
+            case ENQUEUED -> {
+              tracker.record(doc);
               sink.next(doc);
-            } else {
-              log.debug("Queue full while enqueuing document {}, unlock and stop filling this cycle", doc.getId());
-
-              documentLockRegistry.unlock(doc.getId());
             }
-          })
-          .take(remainingCapacity)
-          .collectList()
-          .block();
-
-        // log enqueued documents
-        var enqueued = successfullyEnqueuedDocs != null ? successfullyEnqueuedDocs.size() : 0;
-        if (enqueued > 0) {
-          log.info("Enqueued {} documents for pipeline '{}'", enqueued, pipeline.getName());
-        }
-      } catch (Exception e) {
-        log.error("Error polling documents for pipeline '{}': {}", pipeline.getName(), e.getMessage(), e);
+            case QUEUE_FULL -> {
+              queueFull.set(true);
+              sink.complete();
+            }
+            case LOCKED, DEAD_LETTERED -> {
+              // already in progress, or failing until the document is modified
+              tracker.record(doc);
+            }
+          }
+        })
+        .take(remainingCapacity)
+        .collectList()
+        .block();
+
+      var enqueued = successfullyEnqueuedDocs != null ? successfullyEnqueuedDocs.size() : 0;
+      var complete = !queueFull.get() && enqueued < remainingCapacity;
+      if (fullSweep) {
+        pollingWatermarkService.markFullSweep(pipeline.getName());
       }
+      // a full sweep lists by addition, so only a complete one knows the newest modification it has seen
+      if (!fullSweep || complete) {
+        tracker.safeWatermark(complete)
+          .ifPresent(watermark -> pollingWatermarkService.advance(pipeline.getName(), watermark));
+      }
+
+      // log enqueued documents
+      if (enqueued > 0) {
+        log.info("Enqueued {} documents for pipeline '{}' ({} poll)", enqueued, pipeline.getName(),
+          fullSweep ? "full" : "incremental");
+      }
+    } catch (Exception e) {
+      log.error("Error polling documents for pipeline '{}': {}", pipeline.getName(), e.getMessage(), e);
     }
   }
 
   /**
-   * OCR Service Activator - processes documents from pollingChannel
+   * OCR Service Activator - processes documents from pollingChannel.
+   * All stages return a Mono and reply asynchronously, so no thread is held while a document waits for OCR,
+   * AI or API calls; the number of documents in flight is bounded by the in-flight limiter instead,
+   * and the number of documents inside each stage by the stage limiters.
+   * Transient errors are retried per stage with backoff, without holding a stage permit while waiting;
+   * documents failing every run are dead-lettered.
    */
-  @ServiceActivator(inputChannel = "pollingChannel", outputChannel = "metadataExtractChannel")
-  public Message<Document> processDocumentOcr(Message<Document> message) {
+  @ServiceActivator(
+    inputChannel = "pollingChannel",
+    outputChannel = "metadataExtractChannel",
+    poller = @Poller("documentIntakePoller"),
+    async = "true"
+  )
+  public Mono<Message<Document>> processDocumentOcr(Message<Document> message) {
     var document = message.getPayload();
     var pipelineName = getPipelineName(message);
 
-    log.info("Pipeline '{}': Processing OCR {}", pipelineName, prettyPrintDocument(document));
+    inFlightDocumentLimiter.admit(document.getId(), getPipelineDefinition(message).getPriority());
+
+    return withLease(message, hydrate(message)
+      .retryWhen(stageRetry("hydration"))
+      .flatMap(hydratedDocument -> {
+        log.info("Pipeline '{}': Processing OCR {}", pipelineName, prettyPrintDocument(hydratedDocument));
+
+        var pipeline = getPipelineDefinition(message);
+        return extractionCheckpointStore.get(extractionCheckpointStore.checkpointKey(pipeline, hydratedDocument))
+          .map(ExtractionCheckpointStore.Checkpoint::content)
+          .doOnNext(checkpoint -> log.info("Reusing checkpointed OCR text for document {} from pipeline '{}'",
+            document.getId(), pipelineName))
+          .switchIfEmpty(Mono.defer(() -> ocrStageLimiter.limit(Mono.defer(() -> pdfOcrService.processDocument(hydratedDocument, pipeline)))
+            .retryWhen(stageRetry("ocr"))))
+          .map(ocrResult -> {
+            log.info("OCR completed for document {} from pipeline '{}', result length: {}",
+              document.getId(), pipelineName, ocrResult.length());
+
+            // update document
+            var updatedDocument = hydratedDocument.toBuilder()
+              .content(ocrResult)
+              .build();
+            documentJournal.record(DocumentJournal.Stage.OCR_DONE, pipelineName, updatedDocument);
 
-    try {
-      var pipeline = getPipelineDefinition(message);
-      var ocrResult = pdfOcrService.processDocument(document, pipeline).block();
-
-      if (ocrResult != null) {
-        log.info("OCR completed for document {} from pipeline '{}', result length: {}",
-          document.getId(), pipelineName, ocrResult.length());
-
-        // update document
-        var updatedDocument = document.toBuilder()
-          .content(ocrResult)
-          .build();
-
-        // Create result message with original headers plus OCR result
-        return MessageBuilder
-          .withPayload(updatedDocument)
-          .copyHeaders(message.getHeaders())
-          .build();
-      } else {
-        log.error("Error when doing OCR of document '{}' from pipeline '{}'", document.getId(), pipelineName);
-      }
-    } catch (Exception e) {
-      log.error("Error processing OCR for document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
+            // Create result message with original headers plus OCR result
+            return MessageBuilder
+              .withPayload(updatedDocument)
+              .copyHeaders(message.getHeaders())
+              .build();
+          });
+      })
+      .switchIfEmpty(Mono.error(() -> new IllegalStateException("OCR returned no result")))
+      .onErrorResume(e -> {
+        log.error("Error processing OCR for document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
+
+        recordFailure(message, DeadLetterStore.Stage.OCR, e);
+        return unlockDocument(message).then(Mono.empty());
+      }));
+  }
+
+  /**
+   * Resolves a queued document reference into the full document, only done once the document is locked and queued
+   */
+  private Mono<Document> hydrate(Message<Document> message) {
+    var document = message.getPayload();
+    var reference = message.getHeaders().get(DocumentQueueService.REFERENCE_HEADER, Boolean.class);
+
+    if (!Boolean.TRUE.equals(reference)) {
+      return Mono.just(document);
     }
 
-    unlockDocument(message);
-    return null;
+    return documentService.getById(document.getId())
+      .switchIfEmpty(Mono.error(() -> new IllegalStateException("Document " + document.getId() + " not found")));
   }
 
   /**
-   * Metadata Extraction Service Activator - processes OCR results from ocrResultChannel
+   * Metadata Extraction Service Activator - processes OCR results from ocrResultChannel.
+   * Results are checkpointed with the OCR text, so a retry after a failed patch or save repeats neither OCR nor the
+   * AI extractions.
    */
-  @ServiceActivator(inputChannel = "metadataExtractChannel", outputChannel = "metadataResultChannel")
-  public Message<Document> processMetadataExtraction(Message<Document> message) {
+  @ServiceActivator(inputChannel = "metadataExtractChannel", outputChannel = "metadataResultChannel", async = "true")
+  public Mono<Message<Document>> processMetadataExtraction(Message<Document> message) {
     var document = message.getPayload();
     var pipelineName = getPipelineName(message);
 
     log.info("Pipeline '{}': Metadata extracting {}", pipelineName, prettyPrintDocument(document));
 
-    try {
-      var pipeline = getPipelineDefinition(message);
-      var processedDocument = metadataExtractionService.extractMetadata(pipeline, document).block();
-
-      if (processedDocument != null) {
-        // Create result message with metadata
-        return MessageBuilder
-          .withPayload(processedDocument)
-          .copyHeaders(message.getHeaders())
-          .build();
-      } else {
-        log.error("Error when processing metadata of document '{}' from pipeline '{}'", document.getId(), pipelineName);
-      }
-    } catch (Exception e) {
-      log.error("Error processing metadata extraction for document {} from pipeline '{}': {}",
-        document.getId(), pipelineName, e.getMessage(), e);
-    }
-
-    unlockDocument(message);
-    return null;
+    return withLease(message, Mono.defer(() -> {
+        var pipeline = getPipelineDefinition(message);
+        var checkpointKey = extractionCheckpointStore.checkpointKey(pipeline, document);
+
+        return extractionCheckpointStore.get(checkpointKey)
+          .map(ExtractionCheckpointStore.Checkpoint::extracted)
+          .doOnNext(checkpoint -> log.info("Reusing extraction checkpoint for document {} from pipeline '{}'",
+            document.getId(), pipelineName))
+          .switchIfEmpty(Mono.defer(() -> extractionStageLimiter.limit(Mono.defer(() -> metadataExtractionService.extractMetadata(pipeline, document)))
+            .retryWhen(stageRetry("extraction"))
+            .flatMap(processedDocument -> extractionCheckpointStore
+              .put(checkpointKey, new ExtractionCheckpointStore.Checkpoint(document.getContent(), processedDocument))
+              .thenReturn(processedDocument))));
+      })
+      .doOnNext(processedDocument -> documentJournal.record(DocumentJournal.Stage.EXTRACTED, pipelineName, processedDocument))
+      // Create result message with metadata
+      .map(processedDocument -> MessageBuilder
+        .withPayload(processedDocument)
+        .copyHeaders(message.getHeaders())
+        .build())
+      .switchIfEmpty(Mono.error(() -> new IllegalStateException("Metadata extraction returned no result")))
+      .onErrorResume(e -> {
+        log.error("Error processing metadata extraction for document {} from pipeline '{}': {}",
+          document.getId(), pipelineName, e.getMessage(), e);
+
+        recordFailure(message, DeadLetterStore.Stage.EXTRACTION, e);
+        return unlockDocument(message).then(Mono.empty());
+      }));
   }
 
-  @ServiceActivator(inputChannel = "metadataResultChannel", outputChannel = "finishedDocumentChannel")
-  public Message<Document> processPatching(Message<Document> message) {
+  @ServiceActivator(inputChannel = "metadataResultChannel", outputChannel = "finishedDocumentChannel", async = "true")
+  public Mono<Message<Document>> processPatching(Message<Document> message) {
     var document = message.getPayload();
     var pipelineName = getPipelineName(message);
 
     log.info("Pipeline '{}': Field patching {}", pipelineName, prettyPrintDocument(document));
 
-    try {
-      var pipeline = getPipelineDefinition(message);
-      var patches = pipeline.getPatches();
-
-      if (patches.isEmpty()) {
-        log.info("Nothing to patch for document {} from pipeline '{}'", document.getId(), pipelineName);
-
-        return MessageBuilder
-          .withPayload(document)
-          .copyHeaders(message.getHeaders())
-          .build();
-      } else {
-        var patchedDocument = documentFieldPatchingService.applyPatches(document, pipeline.getPatches()).block();
-
-        if (patchedDocument != null) {
-          return MessageBuilder
-            .withPayload(patchedDocument)
-            .copyHeaders(message.getHeaders())
-            .build();
-        } else {
-          log.error("Error when patching fields of document '{}' from pipeline '{}'", document.getId(), pipelineName);
+    return withLease(message, patchingStageLimiter.limit(Mono.defer(() -> {
+        var patches = getPipelineDefinition(message).getPatches();
+
+        if (patches.isEmpty()) {
+          log.info("Nothing to patch for document {} from pipeline '{}'", document.getId(), pipelineName);
+          return Mono.just(document);
         }
-      }
-    } catch (Exception e) {
-      log.error("Error processing field patches for document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
-    }
 
-    unlockDocument(message);
-    return null;
+        return documentFieldPatchingService.applyPatches(document, patches);
+      }))
+      .retryWhen(stageRetry("patching"))
+      .doOnNext(patchedDocument -> documentJournal.record(DocumentJournal.Stage.PATCHED, pipelineName, patchedDocument))
+      .map(patchedDocument -> MessageBuilder
+        .withPayload(patchedDocument)
+        .copyHeaders(message.getHeaders())
+        .build())
+      .switchIfEmpty(Mono.error(() -> new IllegalStateException("Patching returned no result")))
+      .onErrorResume(e -> {
+        log.error("Error processing field patches for document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
+
+        recordFailure(message, DeadLetterStore.Stage.PATCHING, e);
+        return unlockDocument(message).then(Mono.empty());
+      }));
   }
 
-  @ServiceActivator(inputChannel = "finishedDocumentChannel")
-  public void handleFinishedDocument(Message<Document> message) {
+  @ServiceActivator(inputChannel = "finishedDocumentChannel", async = "true")
+  public Mono<Void> handleFinishedDocument(Message<Document> message) {
     var document = message.getPayload();
     var pipelineName = getPipelineName(message);
 
     log.info("Pipeline '{}': Saving {}", pipelineName, prettyPrintDocument(document));
 
-    try {
-      var pipeline = getPipelineDefinition(message);
+    return withLease(message, savingStageLimiter.limit(Mono.defer(() -> documentService.patch(document, getPipelineDefinition(message).isRemoveInboxTags())))
+      .retryWhen(stageRetry("saving"))
+      .doOnSuccess(saved -> {
+        documentJournal.complete(document.getId());
+        deadLetterStore.clear(document.getId(), pipelineName);
+        log.info("Document '{}' from pipeline '{}' has been saved.", document.getId(), pipelineName);
+      })
+      .then(extractionCheckpointStore.remove(document.getId()))
+      .onErrorResume(e -> {
+        log.error("Error saving document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
+
+        recordFailure(message, DeadLetterStore.Stage.SAVING, e);
+        return Mono.empty();
+      })
+      .then(unlockDocument(message)));
+  }
+
+  private Retry stageRetry(String stage) {
+    return RetryPolicies.transientErrors(pipelineConfig.getRetry(), stage);
+  }
 
-      documentService.patch(document, pipeline.isRemoveInboxTags()).block();
+  private void recordFailure(Message<Document> message, DeadLetterStore.Stage stage, Throwable error) {
+    var pipelineName = getPipelineName(message);
+    if (pipelineName != null) {
+      deadLetterStore.recordFailure(message.getPayload(), pipelineName, stage, error);
+    }
+  }
 
-      log.info("Document '{}' from pipeline '{}' has been saved.", document.getId(), pipelineName);
-    } catch (Exception e) {
-      log.error("Error processing field patches for document {} from pipeline '{}': {}", document.getId(), pipelineName, e.getMessage(), e);
+  /**
+   * Runs a stage under the document lease: the lease is checked when the stage starts, while the heartbeat started
+   * on acquisition keeps it alive, so long OCR jobs keep their lock while leaked locks expire. A document whose lease
+   * expired and may have been taken over by another run is dropped.
+   */
+  private <T> Mono<T> withLease(Message<Document> message, Mono<T> stage) {
+    var documentId = message.getPayload().getId();
+    var lockToken = getLockToken(message);
+    var ttl = pipelineConfig.getLocks().getTtl();
+
+    if (lockToken == null || ttl.isZero()) {
+      return stage;
     }
 
-    unlockDocument(message);
+    return Mono.fromCallable(() -> documentLockRegistry.renew(documentId, lockToken))
+      .subscribeOn(Schedulers.boundedElastic())
+      .flatMap(owned -> {
+        if (!owned) {
+          log.warn("Lease of document {} expired, dropping it from pipeline '{}'", documentId, getPipelineName(message));
+          leaseHeartbeatService.stop(documentId, lockToken);
+          if (!documentLockRegistry.isLocked(documentId)) {
+            inFlightDocumentLimiter.release(documentId);
+          }
+          return Mono.empty();
+        }
+
+        return stage;
+      });
+  }
+
+  /**
+   * Releases the lease and the in-flight slot, on bounded elastic since a shared lease backend blocks
+   */
+  private Mono<Void> unlockDocument(Message<Document> message) {
+    return Mono.<Void>fromRunnable(() -> releaseDocument(message))
+      .subscribeOn(Schedulers.boundedElastic());
   }
 
-  private void unlockDocument(Message<Document> message) {
+  private void releaseDocument(Message<Document> message) {
     var lockedId = message.getPayload().getId();
+    var lockToken = getLockToken(message);
+    leaseHeartbeatService.stop(lockedId, lockToken);
+
+    if (lockToken == null) {
+      documentLockRegistry.unlock(lockedId);
+    } else if (!documentLockRegistry.release(lockedId, lockToken) && documentLockRegistry.isLocked(lockedId)) {
+      // the lease expired and another run owns the document now
+      return;
+    }
+
+    // no-op after a successful save, keeps failed documents journaled only across a shutdown
+    documentJournal.abandon(lockedId);
+    inFlightDocumentLimiter.release(lockedId);
+  }
 
-    documentLockRegistry.unlock(lockedId);
+  private String getLockToken(@NonNull Message<?> message) {
+    return message.getHeaders().get(DocumentQueueService.LOCK_TOKEN_HEADER, String.class);
   }
 
   private @NonNull PipelineConfiguration.PipelineDefinition getPipelineDefinition(@NonNull Message<?> message) {
@@ -0,0 +1,104 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Gives every enabled pipeline its own polling timer.
+ * <p>
+ * Each pipeline polls every {@code polling.interval} plus a random jitter. The delay counts from the end of the
+ * previous poll, so polls of one pipeline never overlap, and pipelines run concurrently on the polling scheduler.
+ */
+@Component
+@Slf4j
+public class PipelinePollingScheduler implements SmartLifecycle {
+
+  private final PipelineConfiguration pipelineConfig;
+  private final DocumentPollingIntegrationConfig pollingIntegrationConfig;
+  private final TaskScheduler pollingTaskScheduler;
+  private final Duration initialDelay;
+
+  private final List<ScheduledFuture<?>> scheduledPolls = new ArrayList<>();
+  private volatile boolean running;
+
+  public PipelinePollingScheduler(
+    PipelineConfiguration pipelineConfig,
+    DocumentPollingIntegrationConfig pollingIntegrationConfig,
+    @Qualifier("pollingTaskScheduler") TaskScheduler pollingTaskScheduler,
+    @Value("${paperless.polling.initial-delay:0}") Duration initialDelay
+  ) {
+    this.pipelineConfig = pipelineConfig;
+    this.pollingIntegrationConfig = pollingIntegrationConfig;
+    this.pollingTaskScheduler = pollingTaskScheduler;
+    this.initialDelay = initialDelay;
+  }
+
+  @Override
+  public synchronized void start() {
+    pipelineConfig.getPipelines().stream()
+      .filter(pipeline -> pipeline.getPolling().isEnabled())
+      .forEach(pipeline -> {
+        log.info("Polling pipeline '{}' every {} (jitter {}%)", pipeline.getName(),
+          pipeline.getPolling().getInterval(), Math.round(pipeline.getPolling().getJitter() * 100));
+
+        scheduledPolls.add(pollingTaskScheduler.schedule(
+          () -> pollingIntegrationConfig.pollPipeline(pipeline),
+          new JitteredFixedDelayTrigger(pipeline, initialDelay)));
+      });
+
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    scheduledPolls.forEach(future -> future.cancel(false));
+    scheduledPolls.clear();
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Fixed delay between the end of one poll and the start of the next, extended by up to jitter * interval
+   */
+  record JitteredFixedDelayTrigger(@NonNull PipelineDefinition pipeline, @NonNull Duration initialDelay) implements Trigger {
+
+    @Override
+    public Instant nextExecution(@NonNull TriggerContext triggerContext) {
+      var lastCompletion = triggerContext.lastCompletion();
+      var base = (lastCompletion != null)
+        ? lastCompletion.plus(pipeline.getPolling().getInterval())
+        : triggerContext.getClock().instant().plus(initialDelay);
+
+      return base.plus(jitter());
+    }
+
+    private Duration jitter() {
+      var maxJitterMillis = (long) (pipeline.getPolling().getInterval().toMillis() * pipeline.getPolling().getJitter());
+      if (maxJitterMillis <= 0) {
+        return Duration.ZERO;
+      }
+
+      return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxJitterMillis + 1));
+    }
+  }
+}
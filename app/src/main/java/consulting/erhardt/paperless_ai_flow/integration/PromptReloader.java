@@ -0,0 +1,72 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Periodically reloads prompt templates overridden in the prompt directory, so prompts can be tuned without a
+ * restart. Documents already in an AI call finish with the previous templates.
+ */
+@Component
+@Slf4j
+public class PromptReloader implements SmartLifecycle {
+
+  private final PipelineConfiguration pipelineConfig;
+  private final PromptRegistry promptRegistry;
+  private final TaskScheduler promptReloadTaskScheduler;
+
+  private ScheduledFuture<?> scheduledReload;
+  private volatile boolean running;
+
+  public PromptReloader(
+    PipelineConfiguration pipelineConfig,
+    PromptRegistry promptRegistry,
+    @Qualifier("promptReloadTaskScheduler") TaskScheduler promptReloadTaskScheduler
+  ) {
+    this.pipelineConfig = pipelineConfig;
+    this.promptRegistry = promptRegistry;
+    this.promptReloadTaskScheduler = promptReloadTaskScheduler;
+  }
+
+  @Override
+  public synchronized void start() {
+    var promptConfig = pipelineConfig.getPrompts();
+    if (promptConfig.getDirectory() != null && !promptConfig.getReloadInterval().isZero()) {
+      var interval = promptConfig.getReloadInterval();
+      scheduledReload = promptReloadTaskScheduler.scheduleWithFixedDelay(this::reload,
+        promptReloadTaskScheduler.getClock().instant().plus(interval), interval);
+    }
+
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduledReload != null) {
+      scheduledReload.cancel(false);
+      scheduledReload = null;
+    }
+
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  void reload() {
+    try {
+      promptRegistry.reloadIfChanged();
+    } catch (Exception e) {
+      log.error("Error reloading prompt templates, keeping the previous ones: {}", e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.storage.SegmentedLogStore;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Counts failed pipeline runs per document and pipeline, and dead-letters documents that keep failing.
+ * <p>
+ * A dead-lettered document is no longer queued, so a poison document (e.g. an encrypted PDF) stops consuming OCR
+ * and AI capacity on every poll. It gets another chance once it was modified in paperless-ngx after its last
+ * failure. Failures are kept in a compacted {@link SegmentedLogStore} and survive restarts.
+ */
+@Service
+@Slf4j
+public class DeadLetterStore {
+
+  private static final String DIRECTORY = "dead-letters";
+  private static final long SEGMENT_BYTES = 1024 * 1024;
+
+  private final ObjectMapper objectMapper;
+  private final Clock clock;
+  private final int deadLetterAfter;
+  private final SegmentedLogStore store;
+
+  public DeadLetterStore(@NonNull PipelineConfiguration pipelineConfig, @NonNull ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    this.clock = Clock.systemUTC();
+    this.deadLetterAfter = pipelineConfig.getRetry().getDeadLetterAfter();
+
+    if (deadLetterAfter > 0) {
+      var directory = Path.of(pipelineConfig.getStorage().getDirectory(), DIRECTORY);
+      this.store = new SegmentedLogStore(directory, SEGMENT_BYTES, 0);
+      log.info("Dead-lettering documents after {} failed runs ({} failure records in {})",
+        deadLetterAfter, store.keys().size(), directory);
+    } else {
+      this.store = null;
+    }
+  }
+
+  /**
+   * Whether the document failed too often in this pipeline and was not modified since its last failure
+   */
+  public boolean isDeadLettered(@NonNull Document document, @NonNull String pipelineName) {
+    return find(document.getId(), pipelineName)
+      .filter(entry -> entry.failures() >= deadLetterAfter)
+      .filter(entry -> !isModifiedSince(document, entry))
+      .isPresent();
+  }
+
+  /**
+   * Records a failed run; a document modified since its previous failure starts counting from zero again
+   */
+  public synchronized void recordFailure(
+    @NonNull Document document,
+    @NonNull String pipelineName,
+    @NonNull Stage stage,
+    @NonNull Throwable error
+  ) {
+    if (store == null) {
+      return;
+    }
+
+    var previousFailures = find(document.getId(), pipelineName)
+      .filter(entry -> !isModifiedSince(document, entry))
+      .map(DeadLetter::failures)
+      .orElse(0);
+
+    var entry = new DeadLetter(document.getId(), pipelineName, stage, describe(error), previousFailures + 1,
+      document.getModified(), clock.instant());
+
+    try {
+      store.put(key(document.getId(), pipelineName), objectMapper.writeValueAsBytes(entry));
+    } catch (Exception e) {
+      log.warn("Failed to record failure of document {}: {}", document.getId(), e.getMessage(), e);
+      return;
+    }
+
+    if (entry.failures() == deadLetterAfter) {
+      log.warn("Dead-lettered document {} of pipeline '{}' after {} failed runs, last in stage {}: {}",
+        document.getId(), pipelineName, entry.failures(), stage, entry.reason());
+    }
+  }
+
+  /**
+   * Forgets the failures of a document once it was processed successfully
+   */
+  public void clear(@NonNull Integer documentId, @NonNull String pipelineName) {
+    if (store == null) {
+      return;
+    }
+
+    try {
+      store.remove(key(documentId, pipelineName));
+    } catch (Exception e) {
+      log.warn("Failed to clear failures of document {}: {}", documentId, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * All documents that are currently dead-lettered, most recent failure first
+   */
+  public List<DeadLetter> deadLetters() {
+    if (store == null) {
+      return List.of();
+    }
+
+    return store.keys().stream()
+      .map(this::read)
+      .flatMap(Optional::stream)
+      .filter(entry -> entry.failures() >= deadLetterAfter)
+      .sorted(Comparator.comparing(DeadLetter::lastFailure).reversed())
+      .toList();
+  }
+
+  @PreDestroy
+  public void close() {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  private Optional<DeadLetter> find(Integer documentId, String pipelineName) {
+    if (store == null) {
+      return Optional.empty();
+    }
+
+    return read(key(documentId, pipelineName));
+  }
+
+  private Optional<DeadLetter> read(String key) {
+    try {
+      return store.get(key).map(bytes -> {
+        try {
+          return objectMapper.readValue(bytes, DeadLetter.class);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    } catch (Exception e) {
+      log.warn("Ignoring unreadable dead letter '{}': {}", key, e.getMessage(), e);
+      return Optional.empty();
+    }
+  }
+
+  private static boolean isModifiedSince(Document document, DeadLetter entry) {
+    return document.getModified() != null
+      && (entry.documentModified() == null || document.getModified().isAfter(entry.documentModified()));
+  }
+
+  private static String describe(Throwable error) {
+    return error.getClass().getSimpleName() + ": " + Objects.requireNonNullElse(error.getMessage(), "no message");
+  }
+
+  private static String key(Integer documentId, String pipelineName) {
+    return documentId + ":" + pipelineName;
+  }
+
+  public enum Stage {
+    OCR,
+    EXTRACTION,
+    PATCHING,
+    SAVING
+  }
+
+  /**
+   * Failure history of a document in one pipeline, {@code documentModified} as of the last failure
+   */
+  public record DeadLetter(
+    Integer documentId,
+    String pipelineName,
+    Stage stage,
+    String reason,
+    int failures,
+    OffsetDateTime documentModified,
+    Instant lastFailure
+  ) {
+  }
+}
@@ -0,0 +1,160 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.storage.SegmentedLogStore;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable journal of the last completed pipeline stage of every in-flight document.
+ * <p>
+ * Each transition overwrites the document's entry together with the document as produced by that stage, so a
+ * restart can continue with the next stage instead of repeating OCR and extraction. The entry is removed once the
+ * document was saved or given up on. Entries are appended to a compacted {@link SegmentedLogStore}.
+ */
+@Service
+@Slf4j
+public class DocumentJournal {
+
+  private static final String DIRECTORY = "journal";
+
+  private final ObjectMapper objectMapper;
+  private final SegmentedLogStore store;
+  private volatile boolean closing;
+
+  public DocumentJournal(@NonNull PipelineConfiguration pipelineConfig, @NonNull ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+
+    var storageConfig = pipelineConfig.getStorage();
+    var journalConfig = storageConfig.getJournal();
+
+    if (journalConfig.isEnabled()) {
+      var directory = Path.of(storageConfig.getDirectory(), DIRECTORY);
+      this.store = new SegmentedLogStore(directory, journalConfig.getSegmentSize().toBytes(), 0);
+      log.info("Document journal enabled in {} ({} pending documents)", directory, store.keys().size());
+    } else {
+      this.store = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return store != null;
+  }
+
+  /**
+   * Records that a document completed a stage, failures are logged and never fail the pipeline
+   */
+  public void record(@NonNull Stage stage, @NonNull String pipelineName, @NonNull Document document) {
+    if (store == null) {
+      return;
+    }
+
+    try {
+      var entry = new Entry(stage, pipelineName, document);
+      store.put(key(document.getId()), objectMapper.writeValueAsBytes(entry));
+      log.debug("Journaled document {} of pipeline '{}' at stage {}", document.getId(), pipelineName, stage);
+    } catch (Exception e) {
+      log.warn("Failed to journal document {} at stage {}: {}", document.getId(), stage, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Removes a document from the journal once it was saved or its processing was abandoned
+   */
+  public void complete(@NonNull Integer documentId) {
+    if (store == null) {
+      return;
+    }
+
+    try {
+      store.remove(key(documentId));
+    } catch (Exception e) {
+      log.warn("Failed to remove document {} from journal: {}", documentId, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Removes a document whose processing failed, unless the failure is caused by the application shutting down:
+   * then the entry is kept so the document resumes at its last completed stage after the restart
+   */
+  public void abandon(@NonNull Integer documentId) {
+    if (closing) {
+      log.debug("Keeping journal entry of document {} across shutdown", documentId);
+      return;
+    }
+
+    complete(documentId);
+  }
+
+  @EventListener(ContextClosedEvent.class)
+  public void onContextClosed() {
+    closing = true;
+  }
+
+  /**
+   * All documents that were in flight when the journal was last written, by document id, unreadable entries are
+   * dropped
+   */
+  public List<Entry> pending() {
+    if (store == null) {
+      return List.of();
+    }
+
+    return store.keys().stream()
+      .sorted(Comparator.comparingInt(Integer::parseInt))
+      .map(this::read)
+      .flatMap(Optional::stream)
+      .toList();
+  }
+
+  @PreDestroy
+  public void close() {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  private Optional<Entry> read(String key) {
+    try {
+      return store.get(key).map(bytes -> {
+        try {
+          return objectMapper.readValue(bytes, Entry.class);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    } catch (Exception e) {
+      log.warn("Dropping unreadable journal entry '{}': {}", key, e.getMessage(), e);
+      store.remove(key);
+      return Optional.empty();
+    }
+  }
+
+  private static String key(Integer documentId) {
+    return String.valueOf(documentId);
+  }
+
+  /**
+   * Last completed stage of a document, saving is the final stage and removes the entry
+   */
+  public enum Stage {
+    POLLED,
+    OCR_DONE,
+    EXTRACTED,
+    PATCHED
+  }
+
+  public record Entry(Stage stage, String pipelineName, Document document) {
+  }
+}
@@ -1,8 +1,8 @@
 package consulting.erhardt.paperless_ai_flow.services;
 
-import consulting.erhardt.paperless_ai_flow.ai.dtos.CreatedDateExtraction;
-import consulting.erhardt.paperless_ai_flow.ai.dtos.TitleExtraction;
+import consulting.erhardt.paperless_ai_flow.ai.dtos.*;
 import consulting.erhardt.paperless_ai_flow.ai.models.*;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Correspondent;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.CustomField;
@@ -11,13 +11,16 @@ import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CorrespondentService;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CustomFieldsService;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import consulting.erhardt.paperless_ai_flow.utils.RetryPolicies;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -26,7 +29,8 @@ import java.util.Optional;
 
 /**
  * Service for extracting document metadata using parallel AI processing
- * Coordinates title, tags, correspondent, and custom field extraction
+ * Coordinates title, tags, correspondent, and custom field extraction, either with one AI call per extraction or
+ * with one combined call for all of them
  */
 @Service
 @RequiredArgsConstructor
@@ -41,6 +45,14 @@ public class DocumentMetadataExtractionService {
   private final CorrespondentService correspondentService;
   private final CustomFieldsService customFieldsService;
   private final CreatedDateExtractionModel createdDateExtractionModel;
+  private final CombinedExtractionModel combinedModel;
+  private final CandidateFilter candidateFilter;
+
+  @Qualifier("llmCallLimiter")
+  private final ConcurrencyLimiter llmCallLimiter;
+
+  @Qualifier("blockingScheduler")
+  private final Scheduler blockingScheduler;
 
   /**
    * Extract metadata from document content using parallel AI processing
@@ -51,27 +63,61 @@ public class DocumentMetadataExtractionService {
   ) {
     var extraction = pipeline.getExtraction();
     var content = document.getContent();
-    log.info("Starting parallel metadata extraction for document content (length: {})", content.length());
-
-    // Run AI extractions in parallel when enabled
-    var titleMono = extraction.getTitle() ?
-      extractTitle(content, extraction) : Mono.just(Optional.empty());
-    var createdDateMono = extraction.getCreatedDate() ?
-      extractCreatedDate(content, extraction) : Mono.just(Optional.empty());
-    var tagsMono = extraction.getTags() ?
-      extractTags(content, extraction) : Mono.just(Optional.empty());
-    var correspondentMono = extraction.getCorrespondent() ?
-      extractCorrespondent(content, extraction) : Mono.just(Optional.empty());
-    var customFieldsMono = extraction.getCustomFields() ?
-      extractCustomFields(content, extraction) : Mono.just(Optional.empty());
-
-    return Mono.zip(titleMono, createdDateMono, tagsMono, correspondentMono, customFieldsMono)
+
+    Mono<Optional<String>> titleMono;
+    Mono<Optional<LocalDate>> createdDateMono;
+    Mono<Optional<List<Tag>>> tagsMono;
+    Mono<Optional<Correspondent>> correspondentMono;
+    Mono<Optional<List<CustomField>>> customFieldsMono;
+
+    if (Boolean.TRUE.equals(extraction.getCombined())) {
+      log.info("Starting combined metadata extraction for document content (length: {})", content.length());
+
+      // one AI call for all extractions, resolved ids are looked up in parallel
+      var combinedMono = extractCombined(content, extraction);
+      titleMono = combinedMono
+        .map(result -> Optional.ofNullable(result.getTitle()).map(TitleExtraction::getTitle))
+        .defaultIfEmpty(Optional.empty());
+      createdDateMono = combinedMono
+        .map(result -> Optional.ofNullable(result.getCreatedDate()).map(CreatedDateExtraction::getCreatedDate))
+        .defaultIfEmpty(Optional.empty());
+      tagsMono = combinedMono
+        .flatMap(result -> (result.getTags() != null) ? resolveTags(result.getTags()) : Mono.just(Optional.<List<Tag>>empty()))
+        .defaultIfEmpty(Optional.empty());
+      correspondentMono = combinedMono
+        .flatMap(result -> (result.getCorrespondent() != null) ? resolveCorrespondent(result.getCorrespondent()) : Mono.just(Optional.<Correspondent>empty()))
+        .defaultIfEmpty(Optional.empty());
+      customFieldsMono = combinedMono
+        .flatMap(result -> (result.getCustomFields() != null) ? resolveCustomFields(result.getCustomFields()) : Mono.just(Optional.<List<CustomField>>empty()))
+        .defaultIfEmpty(Optional.empty());
+    } else {
+      log.info("Starting parallel metadata extraction for document content (length: {})", content.length());
+
+      // Run AI extractions in parallel when enabled
+      titleMono = extraction.getTitle() ?
+        extractTitle(content, extraction) : Mono.just(Optional.empty());
+      createdDateMono = extraction.getCreatedDate() ?
+        extractCreatedDate(content, extraction) : Mono.just(Optional.empty());
+      tagsMono = extraction.getTags() ?
+        extractTags(content, extraction) : Mono.just(Optional.empty());
+      correspondentMono = extraction.getCorrespondent() ?
+        extractCorrespondent(content, extraction) : Mono.just(Optional.empty());
+      customFieldsMono = extraction.getCustomFields() ?
+        extractCustomFields(content, extraction) : Mono.just(Optional.empty());
+    }
+
+    // the candidate selection of tags and correspondents shares per-document work, e.g. the content embedding
+    var candidatesMono = (extraction.getTags() || extraction.getCorrespondent())
+      ? prepareCandidates(content) : Mono.<Void>empty();
+
+    return candidatesMono
+      .then(Mono.zip(titleMono, createdDateMono, tagsMono, correspondentMono, customFieldsMono))
       .map(results -> {
-        var title = (Optional<String>) results.getT1();
-        var createdDate = (Optional<LocalDate>) results.getT2();
-        var tagsOpt = (Optional<List<Tag>>) results.getT3();
-        var correspondentOpt = (Optional<Correspondent>) results.getT4();
-        var customFieldsOpt = (Optional<List<CustomField>>) results.getT5();
+        var title = results.getT1();
+        var createdDate = results.getT2();
+        var tagsOpt = results.getT3();
+        var correspondentOpt = results.getT4();
+        var customFieldsOpt = results.getT5();
 
         // create builder object
         var documentBuilder = document.toBuilder();
@@ -104,16 +150,36 @@ public class DocumentMetadataExtractionService {
       });
   }
 
+  private Mono<Void> prepareCandidates(@NonNull String content) {
+    return candidateFilter.prepare(content)
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, error -> {
+        log.warn("Candidate preparation failed, ranking per extraction: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  /**
+   * Single AI call for all enabled extractions, cached so every field of the result shares it.
+   * Errors are propagated: without the call no field is extracted, so the document fails the extraction stage
+   * instead of being saved unchanged.
+   */
+  private Mono<CombinedExtraction> extractCombined(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
+    return llmCallLimiter.limit(Mono.fromCallable(() -> combinedModel.process(content, extraction))
+      .subscribeOn(blockingScheduler))
+      .doOnSubscribe(sub -> log.debug("Starting combined extraction"))
+      .cache();
+  }
+
   private Mono<Optional<LocalDate>> extractCreatedDate(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
-    return Mono.fromCallable(() -> {
-        var result = createdDateExtractionModel.process(content, extraction.getCreatedDatePrompt());
+    return llmCallLimiter.limit(Mono.fromCallable(() -> {
+        var result = createdDateExtractionModel.process(content, extraction.getCreatedDatePrompt(), extraction.getPromptLayout());
         return Optional.ofNullable(result)
           .map(CreatedDateExtraction::getCreatedDate);
       })
-      .subscribeOn(Schedulers.boundedElastic())
+      .subscribeOn(blockingScheduler))
       .doOnSubscribe(sub -> log.debug("Starting created date extraction"))
       .doOnSuccess(opt -> opt.ifPresent(t -> log.debug("Created date extracted: '{}'", t)))
-      .onErrorResume(error -> {
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, error -> {
         log.error("Title extraction failed: {}", error.getMessage(), error);
         return Mono.just(Optional.empty());
       })
@@ -121,15 +187,15 @@ public class DocumentMetadataExtractionService {
   }
 
   private Mono<Optional<String>> extractTitle(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
-    return Mono.fromCallable(() -> {
-        var result = titleModel.process(content, extraction.getTitlePrompt());
+    return llmCallLimiter.limit(Mono.fromCallable(() -> {
+        var result = titleModel.process(content, extraction.getTitlePrompt(), extraction.getPromptLayout());
         return Optional.ofNullable(result)
           .map(TitleExtraction::getTitle);
       })
-      .subscribeOn(Schedulers.boundedElastic())
+      .subscribeOn(blockingScheduler))
       .doOnSubscribe(sub -> log.debug("Starting title extraction"))
       .doOnSuccess(opt -> opt.ifPresent(t -> log.debug("Title extracted: '{}'", t)))
-      .onErrorResume(error -> {
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, error -> {
         log.error("Title extraction failed: {}", error.getMessage(), error);
         return Mono.just(Optional.empty());
       })
@@ -137,89 +203,103 @@ public class DocumentMetadataExtractionService {
   }
 
   private Mono<Optional<List<Tag>>> extractTags(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
-    return Mono.fromCallable(() -> Optional.ofNullable(tagModel.process(content, extraction.getTagsPrompt())))
-      .subscribeOn(Schedulers.boundedElastic())
+    return llmCallLimiter.limit(Mono.fromCallable(() -> Optional.ofNullable(tagModel.process(content, extraction.getTagsPrompt(), extraction.getPromptLayout())))
+      .subscribeOn(blockingScheduler))
       .doOnSubscribe(s -> log.debug("Starting tags extraction"))
       .flatMap(optDto -> optDto
-        .map(dto -> {
-          var ids = dto.getTagIds();
-
-          return Flux.fromIterable(ids)
-            .flatMapSequential(id ->
-                tagService.getById(id)
-                  .doOnNext(tag -> log.debug("Resolved tag id {} -> {}", id, tag))
-                  .doOnError(e -> log.error("Failed to resolve tag id {}: {}", id, e.getMessage(), e))
-                  .onErrorResume(e -> Mono.empty()),
-              Math.clamp(ids.size(), 1, 8)
-            )
-            .collectList()
-            .map(Optional::of)
-            .doOnNext(opt -> log.debug("Tags extracted (resolved): {}", opt))
-            .onErrorResume(e -> {
-              log.error("Tags resolution failed: {}", e.getMessage(), e);
-              return Mono.just(Optional.empty());
-            });
-        })
+        .map(this::resolveTags)
         .orElse(Mono.just(Optional.empty()))
       )
       .switchIfEmpty(Mono.just(Optional.empty()));
   }
 
+  private Mono<Optional<List<Tag>>> resolveTags(@NonNull TagsExtraction dto) {
+    var ids = dto.getTagIds();
+
+    return Flux.fromIterable(ids)
+      .flatMapSequential(id ->
+          tagService.getById(id)
+            .doOnNext(tag -> log.debug("Resolved tag id {} -> {}", id, tag))
+            .doOnError(e -> log.error("Failed to resolve tag id {}: {}", id, e.getMessage(), e))
+            .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> Mono.empty()),
+        Math.clamp(ids.size(), 1, 8)
+      )
+      .collectList()
+      .map(Optional::of)
+      .doOnNext(opt -> log.debug("Tags extracted (resolved): {}", opt))
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> {
+        log.error("Tags resolution failed: {}", e.getMessage(), e);
+        return Mono.just(Optional.empty());
+      });
+  }
+
   private Mono<Optional<Correspondent>> extractCorrespondent(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
-    return Mono.fromCallable(() -> Optional.ofNullable(correspondentModel.process(content, extraction.getCorrespondentPrompt())))
-      .subscribeOn(Schedulers.boundedElastic())
+    return llmCallLimiter.limit(Mono.fromCallable(() -> Optional.ofNullable(correspondentModel.process(content, extraction.getCorrespondentPrompt(), extraction.getPromptLayout())))
+      .subscribeOn(blockingScheduler))
       .flatMap(opt -> opt
-        .map(dto -> correspondentService.getById(dto.getCorrespondentId())
-          .map(Optional::of)
-          .onErrorResume(e -> {
-            log.error("Correspondent getById failed: {}", e.getMessage(), e);
-
-            return Mono.just(Optional.empty());
-          })
-        )
+        .map(this::resolveCorrespondent)
         .orElse(Mono.just(Optional.empty()))
       )
       .doOnSubscribe(s -> log.debug("Starting correspondent extraction"))
-      .onErrorResume(e -> {
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> {
         log.error("Correspondent extraction failed: {}", e.getMessage(), e);
         return Mono.just(Optional.empty());
       })
       .switchIfEmpty(Mono.just(Optional.empty()));
   }
 
+  private Mono<Optional<Correspondent>> resolveCorrespondent(@NonNull CorrespondentExtraction dto) {
+    return correspondentService.getById(dto.getCorrespondentId())
+      .map(Optional::of)
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> {
+        log.error("Correspondent getById failed: {}", e.getMessage(), e);
+
+        return Mono.just(Optional.empty());
+      });
+  }
+
   private Mono<Optional<List<CustomField>>> extractCustomFields(@NonNull String content, @NonNull PipelineConfiguration.ExtractionConfiguration extraction) {
-    return Mono.fromCallable(() -> Optional.ofNullable(customFieldModel.process(content, extraction.getCustomFieldsPrompt()))) // may be null
-      .subscribeOn(Schedulers.boundedElastic())
+    return llmCallLimiter.limit(Mono.fromCallable(() -> Optional.ofNullable(customFieldModel.process(content, extraction.getCustomFieldsPrompt(), extraction.getPromptLayout()))) // may be null
+      .subscribeOn(blockingScheduler))
       .doOnSubscribe(s -> log.debug("Starting custom fields extraction"))
       .flatMap(optDto -> optDto
-        .map(dto -> {
-          var customFields = dto.getCustomFields();
-
-          final List<Map.Entry<Integer, String>> entries = customFields.entrySet().stream()
-            .sorted(Map.Entry.comparingByKey())
-            .toList();
-
-          return Flux.fromIterable(entries)
-            .flatMapSequential(entry -> customFieldsService.getById(entry.getKey())
-                .map(customField -> (CustomField) customField.toBuilder()
-                  .value(entry.getValue())
-                  .build()
-                )
-                .doOnNext(customField -> log.debug("Resolved custom field id {} -> {}", customField.getName(), customField.getValue()))
-                .doOnError(e -> log.error("Failed to resolve custom field id {}: {}", entry.getKey(), e.getMessage(), e))
-                .onErrorResume(e -> Mono.empty()),
-              Math.clamp(entries.size(), 1, 8)
-            )
-            .collectList()
-            .map(Optional::of)
-            .doOnNext(opt -> log.debug("Custom fields extracted (resolved): {}", opt))
-            .onErrorResume(e -> {
-              log.error("Tags resolution failed: {}", e.getMessage(), e);
-              return Mono.just(Optional.empty());
-            });
-        })
+        .map(this::resolveCustomFields)
         .orElse(Mono.just(Optional.empty()))
       )
       .switchIfEmpty(Mono.just(Optional.empty()));
   }
+
+  private Mono<Optional<List<CustomField>>> resolveCustomFields(@NonNull CustomFieldsExtraction dto) {
+    var customFields = dto.getCustomFields();
+
+    final List<Map.Entry<Integer, String>> entries = customFields.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey())
+      .toList();
+
+    return Flux.fromIterable(entries)
+      .flatMapSequential(entry -> customFieldsService.getById(entry.getKey())
+          .map(customField -> (CustomField) customField.toBuilder()
+            .value(entry.getValue())
+            .build()
+          )
+          .doOnNext(customField -> log.debug("Resolved custom field id {} -> {}", customField.getName(), customField.getValue()))
+          .doOnError(e -> log.error("Failed to resolve custom field id {}: {}", entry.getKey(), e.getMessage(), e))
+          .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> Mono.empty()),
+        Math.clamp(entries.size(), 1, 8)
+      )
+      .collectList()
+      .map(Optional::of)
+      .doOnNext(opt -> log.debug("Custom fields extracted (resolved): {}", opt))
+      .onErrorResume(DocumentMetadataExtractionService::isPermanent, e -> {
+        log.error("Tags resolution failed: {}", e.getMessage(), e);
+        return Mono.just(Optional.empty());
+      });
+  }
+
+  /**
+   * Permanent errors leave the field empty, transient ones propagate to the retry of the extraction stage
+   */
+  private static boolean isPermanent(Throwable error) {
+    return !RetryPolicies.isTransient(error);
+  }
 }
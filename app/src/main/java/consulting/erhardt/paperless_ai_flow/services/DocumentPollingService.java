@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Service
@@ -19,11 +20,27 @@ public class DocumentPollingService {
   private final TagService tagService;
   private final DocumentService documentService;
 
-  public Flux<Document> getDocumentsByTagNames(@NonNull List<String> tagNames) {
+  /**
+   * Lists references (id, title, timestamps) of the documents carrying all given tags, relations are not resolved.
+   * Pages of {@code pageSize} references are fetched on demand only.
+   */
+  public Flux<Document> getDocumentReferencesByTagNames(@NonNull List<String> tagNames, int pageSize) {
     log.debug("Querying documents by tag names: {}", tagNames);
 
     return tagService.getTagIdsByNames(tagNames)
-      .flatMapMany(documentService::getAllByTags)
+      .flatMapMany(tagIds -> documentService.getReferencesByTags(tagIds, pageSize))
+      .doOnNext(doc -> log.debug("Will enqueue document {} - '{}'", doc.getId(), doc.getTitle()));
+  }
+
+  public Flux<Document> getDocumentReferencesByTagNamesModifiedAfter(
+    @NonNull List<String> tagNames,
+    OffsetDateTime modifiedAfter,
+    int pageSize
+  ) {
+    log.debug("Querying documents by tag names {} modified after {}", tagNames, modifiedAfter);
+
+    return tagService.getTagIdsByNames(tagNames)
+      .flatMapMany(tagIds -> documentService.getReferencesByTagsModifiedAfter(tagIds, modifiedAfter, pageSize))
       .doOnNext(doc -> log.debug("Will enqueue document {} - '{}'", doc.getId(), doc.getTitle()));
   }
 }
@@ -0,0 +1,104 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Single entry point into the processing pipeline, shared by the polling sweep and the webhook.
+ * A document is locked before it is queued and unlocked again if the queue does not accept it. The lease is renewed
+ * from then on, also while the document waits in the queue.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentQueueService {
+
+  /**
+   * Marks a payload that is only a document reference and still has to be hydrated by the OCR stage
+   */
+  public static final String REFERENCE_HEADER = "documentReference";
+
+  /**
+   * Owner token of the document lease, used by the stages to renew and finally release it
+   */
+  public static final String LOCK_TOKEN_HEADER = "lockToken";
+
+  @Qualifier("documentLockRegistry")
+  private final IdLockRegistryService<Integer> documentLockRegistry;
+
+  @Qualifier("pollingChannel")
+  private final QueueChannel pollingChannel;
+
+  private final DocumentJournal documentJournal;
+  private final DeadLetterStore deadLetterStore;
+  private final LeaseHeartbeatService leaseHeartbeatService;
+  private final InFlightDocumentLimiter inFlightDocumentLimiter;
+
+  public int remainingCapacity() {
+    return pollingChannel.getRemainingCapacity();
+  }
+
+  public EnqueueResult enqueue(@NonNull Document document, @NonNull PipelineDefinition pipeline) {
+    return enqueue(document, pipeline, false);
+  }
+
+  /**
+   * Enqueues a document reference from a lightweight listing, relations are resolved after it was accepted
+   */
+  public EnqueueResult enqueueReference(@NonNull Document reference, @NonNull PipelineDefinition pipeline) {
+    return enqueue(reference, pipeline, true);
+  }
+
+  private EnqueueResult enqueue(Document document, PipelineDefinition pipeline, boolean reference) {
+    if (deadLetterStore.isDeadLettered(document, pipeline.getName())) {
+      log.debug("Skip dead-lettered document {} for pipeline '{}'", document.getId(), pipeline.getName());
+      return EnqueueResult.DEAD_LETTERED;
+    }
+
+    var lockToken = documentLockRegistry.tryAcquire(document.getId()).orElse(null);
+    if (lockToken == null) {
+      log.debug("Skip locked document {}", document.getId());
+      return EnqueueResult.LOCKED;
+    }
+
+    var message = MessageBuilder
+      .withPayload(document)
+      .setHeader("pipeline", pipeline)
+      .setHeader("pipelineName", pipeline.getName())
+      .setHeader(REFERENCE_HEADER, reference)
+      .setHeader(LOCK_TOKEN_HEADER, lockToken)
+      .setPriority(pipeline.getPriority())
+      .build();
+
+    // counted before it is visible in the queue, the intake may take it right away
+    inFlightDocumentLimiter.queued(pipeline.getPriority());
+    var accepted = pollingChannel.send(message, 0); // non-blocking
+    if (!accepted) {
+      log.debug("Queue full while enqueuing document {}, unlock", document.getId());
+
+      inFlightDocumentLimiter.unqueued(pipeline.getPriority());
+
+      documentLockRegistry.release(document.getId(), lockToken);
+      return EnqueueResult.QUEUE_FULL;
+    }
+
+    leaseHeartbeatService.start(document.getId(), lockToken);
+    documentJournal.record(DocumentJournal.Stage.POLLED, pipeline.getName(), document);
+    log.debug("Enqueued document {} (title: '{}') for pipeline '{}'", document.getId(), document.getTitle(), pipeline.getName());
+    return EnqueueResult.ENQUEUED;
+  }
+
+  public enum EnqueueResult {
+    ENQUEUED,
+    LOCKED,
+    QUEUE_FULL,
+    DEAD_LETTERED
+  }
+}
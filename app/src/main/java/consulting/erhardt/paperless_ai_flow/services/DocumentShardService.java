@@ -0,0 +1,50 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.utils.ConsistentHashRing;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides which documents this replica polls. Without sharding every document is owned, with sharding each
+ * document id belongs to exactly one replica of the ring, so replicas neither compete for locks nor hydrate
+ * the same documents. Webhooks and journal recovery are not sharded, so sharding requires leases shared by all
+ * replicas.
+ */
+@Service
+@Slf4j
+public class DocumentShardService {
+
+  private final String replica;
+  private final ConsistentHashRing ring;
+
+  public DocumentShardService(@NonNull PipelineConfiguration pipelineConfig) {
+    var shardingConfig = pipelineConfig.getSharding();
+
+    if (!shardingConfig.isEnabled()) {
+      this.replica = null;
+      this.ring = null;
+      return;
+    }
+
+    if (shardingConfig.getReplica() == null || !shardingConfig.getReplicas().contains(shardingConfig.getReplica())) {
+      throw new IllegalStateException("Sharding replica '" + shardingConfig.getReplica()
+        + "' is not one of the configured replicas " + shardingConfig.getReplicas());
+    }
+
+    if (pipelineConfig.getLocks().getBackend() != PipelineConfiguration.LockBackend.FILE) {
+      // webhook deliveries and journal recovery are not sharded, only shared leases keep replicas apart there
+      throw new IllegalStateException("Sharding requires the file lock backend (paperless.locks.backend: file), got "
+        + pipelineConfig.getLocks().getBackend());
+    }
+
+    this.replica = shardingConfig.getReplica();
+    this.ring = new ConsistentHashRing(shardingConfig.getReplicas(), shardingConfig.getVirtualNodes());
+    log.info("Replica '{}' polls its share of documents among replicas {}", replica, shardingConfig.getReplicas());
+  }
+
+  public boolean owns(@NonNull Integer documentId) {
+    return ring == null || replica.equals(ring.ownerOf(String.valueOf(documentId)));
+  }
+}
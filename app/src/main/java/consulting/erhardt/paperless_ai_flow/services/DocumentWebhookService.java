@@ -0,0 +1,81 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.DocumentService;
+import consulting.erhardt.paperless_ai_flow.services.DocumentQueueService.EnqueueResult;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Enqueues a single document announced by a paperless-ngx workflow webhook
+ * into the first pipeline whose required tags it carries, whether or not the pipeline polls.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentWebhookService {
+
+  private final PipelineConfiguration pipelineConfig;
+  private final DocumentService documentService;
+  private final DocumentQueueService documentQueueService;
+
+  public Mono<WebhookResult> handleDocument(@NonNull Integer documentId) {
+    return documentService.getById(documentId)
+      // locking may block on a shared lease backend
+      .publishOn(Schedulers.boundedElastic())
+      .map(document -> findPipeline(document)
+        .map(pipeline -> {
+          var result = documentQueueService.enqueue(document, pipeline);
+          log.info("Webhook for document {}: {} (pipeline '{}')", documentId, result, pipeline.getName());
+
+          return toWebhookResult(result);
+        })
+        .orElseGet(() -> {
+          log.debug("Webhook for document {}: no matching pipeline", documentId);
+          return WebhookResult.NO_MATCHING_PIPELINE;
+        }))
+      .defaultIfEmpty(WebhookResult.NO_MATCHING_PIPELINE);
+  }
+
+  private Optional<PipelineDefinition> findPipeline(@NonNull Document document) {
+    var tagNames = Optional.ofNullable(document.getTags())
+      .orElseGet(List::of)
+      .stream()
+      .map(Tag::getName)
+      .filter(Objects::nonNull)
+      .collect(Collectors.toSet());
+
+    return pipelineConfig.getPipelines().stream()
+      .filter(pipeline -> tagNames.containsAll(pipeline.getSelector().getRequiredTags()))
+      .findFirst();
+  }
+
+  private static WebhookResult toWebhookResult(EnqueueResult result) {
+    return switch (result) {
+      case ENQUEUED -> WebhookResult.ENQUEUED;
+      case LOCKED -> WebhookResult.ALREADY_PROCESSING;
+      case QUEUE_FULL -> WebhookResult.QUEUE_FULL;
+      case DEAD_LETTERED -> WebhookResult.DEAD_LETTERED;
+    };
+  }
+
+  public enum WebhookResult {
+    ENQUEUED,
+    ALREADY_PROCESSING,
+    NO_MATCHING_PIPELINE,
+    QUEUE_FULL,
+    DEAD_LETTERED
+  }
+}
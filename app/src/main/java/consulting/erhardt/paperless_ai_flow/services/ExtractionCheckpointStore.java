@@ -0,0 +1,159 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.storage.SegmentedLogStore;
+import consulting.erhardt.paperless_ai_flow.utils.HashUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Persistent checkpoints of OCR text and metadata extraction results.
+ * <p>
+ * A checkpoint is keyed by the document, its modification time, the pipeline and the SHA-256 of the OCR and
+ * extraction settings, so a document whose patching or saving failed skips OCR and the AI extractions on its retry,
+ * while modified documents or changed settings are processed again. Checkpoints are removed once the document was
+ * saved.
+ */
+@Service
+@Slf4j
+public class ExtractionCheckpointStore {
+
+  private static final String DIRECTORY = "extraction-checkpoints";
+
+  private final ObjectMapper objectMapper;
+  private final SegmentedLogStore store;
+
+  public ExtractionCheckpointStore(@NonNull PipelineConfiguration pipelineConfig, @NonNull ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+
+    var storageConfig = pipelineConfig.getStorage();
+    var checkpointConfig = storageConfig.getCheckpoints();
+
+    if (checkpointConfig.isEnabled()) {
+      var directory = Path.of(storageConfig.getDirectory(), DIRECTORY);
+      this.store = new SegmentedLogStore(directory,
+        checkpointConfig.getSegmentSize().toBytes(), checkpointConfig.getMaxSize().toBytes());
+      log.info("Extraction checkpoints enabled in {} ({} entries)", directory, store.keys().size());
+    } else {
+      this.store = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return store != null;
+  }
+
+  /**
+   * Builds the key from the document id, the pipeline and a hash of the document version and the settings the OCR
+   * text and extraction results depend on
+   */
+  public String checkpointKey(@NonNull PipelineDefinition pipeline, @NonNull Document document) {
+    var ocr = pipeline.getOcr();
+    var extraction = pipeline.getExtraction();
+    var inputs = String.join("\n",
+      String.valueOf(document.getModified()),
+      ocr.getModel(),
+      HashUtils.sha256(Objects.requireNonNullElse(ocr.getPrompt(), "")),
+      ocr.getStrategy().name(),
+      setting(extraction.getTitle(), extraction.getTitlePrompt()),
+      setting(extraction.getCreatedDate(), extraction.getCreatedDatePrompt()),
+      setting(extraction.getCorrespondent(), extraction.getCorrespondentPrompt()),
+      setting(extraction.getTags(), extraction.getTagsPrompt()),
+      setting(extraction.getCustomFields(), extraction.getCustomFieldsPrompt()),
+      String.valueOf(extraction.getCombined()),
+      extraction.getPromptLayout().name());
+
+    return document.getId() + ":" + pipeline.getName() + ":" + HashUtils.sha256(inputs);
+  }
+
+  public Mono<Checkpoint> get(@NonNull String key) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    return Mono.fromCallable(() -> store.get(key)
+        .map(this::readCheckpoint)
+        .orElse(null))
+      .subscribeOn(Schedulers.boundedElastic())
+      .onErrorResume(error -> {
+        log.warn("Failed to read extraction checkpoint: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  public Mono<Void> put(@NonNull String key, @NonNull Checkpoint checkpoint) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    return Mono.<Void>fromRunnable(() -> store.put(key, writeCheckpoint(checkpoint)))
+      .subscribeOn(Schedulers.boundedElastic())
+      // a failing checkpoint must never fail the document
+      .onErrorResume(error -> {
+        log.warn("Failed to store extraction checkpoint: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  /**
+   * Drops all checkpoints of a document once it was saved
+   */
+  public Mono<Void> remove(@NonNull Integer documentId) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    var prefix = documentId + ":";
+    return Mono.<Void>fromRunnable(() -> store.keys().stream()
+        .filter(key -> key.startsWith(prefix))
+        .forEach(store::remove))
+      .subscribeOn(Schedulers.boundedElastic())
+      .onErrorResume(error -> {
+        log.warn("Failed to remove extraction checkpoints of document {}: {}", documentId, error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  @PreDestroy
+  public void close() {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  private Checkpoint readCheckpoint(byte[] bytes) {
+    try {
+      return objectMapper.readValue(bytes, Checkpoint.class);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unreadable extraction checkpoint", e);
+    }
+  }
+
+  private byte[] writeCheckpoint(Checkpoint checkpoint) {
+    try {
+      return objectMapper.writeValueAsBytes(checkpoint);
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to serialize extraction checkpoint", e);
+    }
+  }
+
+  private static String setting(Boolean enabled, String prompt) {
+    return enabled + ":" + HashUtils.sha256(Objects.requireNonNullElse(prompt, ""));
+  }
+
+  /**
+   * OCR text of the document and the document with the extracted metadata
+   */
+  public record Checkpoint(String content, Document extracted) {
+  }
+}
@@ -1,37 +1,222 @@
 package consulting.erhardt.paperless_ai_flow.services;
 
+import consulting.erhardt.paperless_ai_flow.storage.InMemoryLeaseBackend;
+import consulting.erhardt.paperless_ai_flow.storage.Lease;
+import consulting.erhardt.paperless_ai_flow.storage.LeaseBackend;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Registry of leases on ids.
+ * <p>
+ * A lease is owned by the token handed out on acquisition and expires after the TTL unless it is renewed, so a lock
+ * leaked by a failing stage frees itself. Expired leases are taken over by the next acquisition and removed by
+ * {@link #reapExpired()}. A TTL of zero disables expiry. Leases live in a {@link LeaseBackend}: in memory for a
+ * single instance, or in a store shared by several replicas. All changes are compare-and-set operations on the
+ * backend, retried a few times when another owner changed the lease concurrently.
+ */
 @Slf4j
-@RequiredArgsConstructor
 public final class IdLockRegistryService<K> {
 
-  private final Set<K> locked = ConcurrentHashMap.newKeySet();
+  private static final int MAX_CAS_ATTEMPTS = 10;
+
+  private final LeaseBackend<K> backend;
+  private final Duration ttl;
+  private final Clock clock;
+
+  private final AtomicLong acquiredCount = new AtomicLong();
+  private final AtomicLong releasedCount = new AtomicLong();
+  private final AtomicLong expiredCount = new AtomicLong();
+  private final AtomicLong totalHoldMillis = new AtomicLong();
+  private final AtomicLong maxHoldMillis = new AtomicLong();
+
+  public IdLockRegistryService() {
+    this(new InMemoryLeaseBackend<>(), Duration.ZERO, Clock.systemUTC());
+  }
+
+  public IdLockRegistryService(@NonNull Duration ttl, @NonNull Clock clock) {
+    this(new InMemoryLeaseBackend<>(), ttl, clock);
+  }
+
+  public IdLockRegistryService(@NonNull LeaseBackend<K> backend, @NonNull Duration ttl, @NonNull Clock clock) {
+    if (ttl.isNegative()) {
+      throw new IllegalArgumentException("Lease TTL must not be negative, got " + ttl);
+    }
+
+    this.backend = backend;
+    this.ttl = ttl;
+    this.clock = clock;
+  }
+
+  /**
+   * Acquires a lease unless a live lease is held
+   *
+   * @return the owner token needed to renew or release the lease
+   */
+  public Optional<String> tryAcquire(@NonNull K id) {
+    for (var attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+      var now = clock.instant();
+      var lease = new Lease(UUID.randomUUID().toString(), now, expiry(now));
+      var current = backend.get(id).orElse(null);
+
+      if (current != null && !current.isExpired(now)) {
+        log.trace("Lock already held for id={}", id);
+        return Optional.empty();
+      }
+
+      var acquired = (current == null) ? backend.create(id, lease) : backend.replace(id, current, lease);
+      if (acquired) {
+        if (current != null) {
+          onExpired(id, current, now);
+        }
+
+        acquiredCount.incrementAndGet();
+        log.trace("Lock acquired for id={}", id);
+        return Optional.of(lease.token());
+      }
+    }
+
+    log.debug("Lease of id={} kept changing, treating it as held", id);
+    return Optional.empty();
+  }
 
   public boolean tryLock(@NonNull K id) {
-    var acquired = locked.add(id);
-    if (acquired) {
-      log.trace("Lock acquired for id={}", id);
-    } else {
-      log.trace("Lock already held for id={}", id);
+    return tryAcquire(id).isPresent();
+  }
+
+  /**
+   * Extends the lease by another TTL
+   *
+   * @return false if the lease expired and was taken over, or was released in the meantime
+   */
+  public boolean renew(@NonNull K id, @NonNull String token) {
+    for (var attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+      var now = clock.instant();
+      var current = backend.get(id).orElse(null);
+
+      if (current == null || !current.token().equals(token) || current.isExpired(now)) {
+        return false;
+      }
+
+      if (backend.replace(id, current, new Lease(token, current.acquiredAt(), expiry(now)))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Releases the lease if it is still owned by the token, a lease taken over by another owner is left alone
+   */
+  public boolean release(@NonNull K id, @NonNull String token) {
+    for (var attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+      var current = backend.get(id).orElse(null);
+
+      if (current == null || !current.token().equals(token)) {
+        log.debug("Lease of id={} is no longer owned by the releasing token", id);
+        return false;
+      }
+
+      if (backend.remove(id, current)) {
+        onReleased(id, current);
+        return true;
+      }
     }
-    return acquired;
+
+    return false;
   }
 
+  /**
+   * Releases the lease regardless of its owner
+   */
   public void unlock(@NonNull K id) {
-    if (locked.remove(id)) {
-      log.trace("Lock released for id={}", id);
-    } else {
-      log.trace("Unlock called but id was not locked: id={}", id);
+    for (var attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+      var current = backend.get(id).orElse(null);
+
+      if (current == null) {
+        log.trace("Unlock called but id was not locked: id={}", id);
+        return;
+      }
+
+      if (backend.remove(id, current)) {
+        onReleased(id, current);
+        return;
+      }
     }
   }
 
   public boolean isLocked(@NonNull K id) {
-    return locked.contains(id);
+    return backend.get(id)
+      .filter(lease -> !lease.isExpired(clock.instant()))
+      .isPresent();
+  }
+
+  /**
+   * Removes all expired leases
+   *
+   * @return the ids whose leases were removed
+   */
+  public List<K> reapExpired() {
+    var now = clock.instant();
+    var reaped = new ArrayList<K>();
+
+    for (var id : backend.ids()) {
+      var lease = backend.get(id).orElse(null);
+      if (lease != null && lease.isExpired(now) && backend.remove(id, lease)) {
+        onExpired(id, lease, now);
+        reaped.add(id);
+      }
+    }
+
+    return reaped;
+  }
+
+  public LockStats stats() {
+    var released = releasedCount.get();
+    var averageHoldMillis = (released > 0) ? totalHoldMillis.get() / released : 0;
+
+    return new LockStats(backend.ids().size(), acquiredCount.get(), released, expiredCount.get(),
+      Duration.ofMillis(averageHoldMillis), Duration.ofMillis(maxHoldMillis.get()));
+  }
+
+  private Instant expiry(Instant now) {
+    return ttl.isZero() ? null : now.plus(ttl);
+  }
+
+  private void onReleased(K id, Lease lease) {
+    var holdMillis = Duration.between(lease.acquiredAt(), clock.instant()).toMillis();
+    releasedCount.incrementAndGet();
+    totalHoldMillis.addAndGet(holdMillis);
+    maxHoldMillis.accumulateAndGet(holdMillis, Math::max);
+    log.trace("Lock released for id={} after {} ms", id, holdMillis);
+  }
+
+  private void onExpired(K id, Lease lease, Instant now) {
+    expiredCount.incrementAndGet();
+    log.warn("Lease of id={} expired after {} without being released",
+      id, Duration.between(lease.acquiredAt(), now));
+  }
+
+  /**
+   * Snapshot of the lease counters, hold times are measured from acquisition to release
+   */
+  public record LockStats(
+    int held,
+    long acquired,
+    long released,
+    long expired,
+    Duration averageHoldTime,
+    Duration maxHoldTime
+  ) {
   }
 }
@@ -0,0 +1,122 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.integration.scheduling.PollSkipStrategy;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks the documents currently flowing through the processing stages.
+ * Used as poll skip strategy for the polling channel, so no further documents are taken from the queue
+ * while the configured number of documents is in flight.
+ * <p>
+ * The last {@code reserved} slots are kept for the pipelines of the highest priority: the queue hands out the
+ * highest waiting priority first, so a poll is only skipped for lower priorities, and a busy low-priority pipeline
+ * cannot take every slot while an interactive one waits.
+ */
+@Slf4j
+public final class InFlightDocumentLimiter implements PollSkipStrategy {
+
+  @Getter
+  private final int maxInFlight;
+
+  @Getter
+  private final int reserved;
+
+  private final int topPriority;
+
+  private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Number of queued documents per priority, the highest one is next in the queue
+   */
+  private final ConcurrentSkipListMap<Integer, Integer> queued = new ConcurrentSkipListMap<>();
+
+  public InFlightDocumentLimiter(int maxInFlight) {
+    this(maxInFlight, 0, 0);
+  }
+
+  public InFlightDocumentLimiter(int maxInFlight, int reserved, int topPriority) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("At least one document must be allowed in flight, got " + maxInFlight);
+    }
+    if (reserved < 0 || reserved >= maxInFlight) {
+      throw new IllegalArgumentException("Reserved slots must be between 0 and " + (maxInFlight - 1) + ", got " + reserved);
+    }
+
+    this.maxInFlight = maxInFlight;
+    this.reserved = reserved;
+    this.topPriority = topPriority;
+  }
+
+  /**
+   * Counts a document that enters the queue with the given priority
+   */
+  public void queued(int priority) {
+    queued.merge(priority, 1, Integer::sum);
+  }
+
+  /**
+   * Uncounts a document the queue did not accept
+   */
+  public void unqueued(int priority) {
+    queued.computeIfPresent(priority, (key, count) -> (count > 1) ? count - 1 : null);
+  }
+
+  /**
+   * Admits a document taken from the queue
+   */
+  public void admit(@NonNull Integer documentId, int priority) {
+    unqueued(priority);
+    admit(documentId);
+  }
+
+  /**
+   * Admits a document that did not pass the queue
+   */
+  public void admit(@NonNull Integer documentId) {
+    inFlight.add(documentId);
+    log.trace("Document {} admitted, {} in flight", documentId, inFlight.size());
+  }
+
+  /**
+   * Admits a document that did not pass the queue if a slot is free
+   */
+  public synchronized boolean tryAdmit(@NonNull Integer documentId) {
+    if (inFlight.size() >= maxInFlight) {
+      return false;
+    }
+
+    admit(documentId);
+    return true;
+  }
+
+  public void release(@NonNull Integer documentId) {
+    if (inFlight.remove(documentId)) {
+      log.trace("Document {} released, {} in flight", documentId, inFlight.size());
+    }
+  }
+
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+  @Override
+  public boolean skipPoll() {
+    var inFlightCount = inFlight.size();
+    if (inFlightCount >= maxInFlight) {
+      return true;
+    }
+    if (inFlightCount < maxInFlight - reserved) {
+      return false;
+    }
+
+    // only reserved slots left, they go to the next document only if it is of the highest priority
+    var next = queued.lastEntry();
+    return next == null || next.getKey() < topPriority;
+  }
+}
@@ -0,0 +1,87 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renews document leases from acquisition until release, so a document waiting in a queue or between stages keeps
+ * its lease as long as the process is alive. Renewals may block on a shared lease backend and run on bounded elastic.
+ */
+@Service
+@Slf4j
+public class LeaseHeartbeatService {
+
+  private final IdLockRegistryService<Integer> documentLockRegistry;
+  private final Duration ttl;
+  private final Map<Integer, Heartbeat> heartbeats = new ConcurrentHashMap<>();
+
+  public LeaseHeartbeatService(
+    PipelineConfiguration pipelineConfig,
+    @Qualifier("documentLockRegistry") IdLockRegistryService<Integer> documentLockRegistry
+  ) {
+    this.documentLockRegistry = documentLockRegistry;
+    this.ttl = pipelineConfig.getLocks().getTtl();
+  }
+
+  /**
+   * Renews the lease every third of the TTL until it is stopped or lost, replaces the heartbeat of a previous lease
+   */
+  public void start(@NonNull Integer documentId, @NonNull String lockToken) {
+    if (ttl.isZero()) {
+      return;
+    }
+
+    var renewals = Flux.interval(ttl.dividedBy(3), Schedulers.boundedElastic())
+      .subscribe(tick -> renew(documentId, lockToken));
+
+    var previous = heartbeats.put(documentId, new Heartbeat(lockToken, renewals));
+    if (previous != null) {
+      previous.renewals().dispose();
+    }
+  }
+
+  /**
+   * Stops renewing the lease owned by the token, any lease of the document if the token is null
+   */
+  public void stop(@NonNull Integer documentId, String lockToken) {
+    var heartbeat = heartbeats.get(documentId);
+    if (heartbeat != null && (lockToken == null || heartbeat.lockToken().equals(lockToken))
+      && heartbeats.remove(documentId, heartbeat)) {
+      heartbeat.renewals().dispose();
+    }
+  }
+
+  public int activeCount() {
+    return heartbeats.size();
+  }
+
+  @PreDestroy
+  public void stopAll() {
+    heartbeats.keySet().forEach(documentId -> stop(documentId, null));
+  }
+
+  private void renew(Integer documentId, String lockToken) {
+    try {
+      if (!documentLockRegistry.renew(documentId, lockToken)) {
+        log.debug("Lease of document {} is gone, stop renewing it", documentId);
+        stop(documentId, lockToken);
+      }
+    } catch (Exception e) {
+      log.warn("Failed to renew lease of document {}: {}", documentId, e.getMessage(), e);
+    }
+  }
+
+  private record Heartbeat(String lockToken, Disposable renewals) {
+  }
+}
@@ -0,0 +1,146 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.OcrConfiguration;
+import consulting.erhardt.paperless_ai_flow.storage.SegmentedLogStore;
+import consulting.erhardt.paperless_ai_flow.utils.HashUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Persistent cache of OCR results, keyed by the content of the PDF and the OCR settings that produced the text.
+ * Re-runs of an unchanged document (re-tagging, retries after a later stage failed) skip the OCR model entirely.
+ */
+@Service
+@Slf4j
+public class OcrResultCache {
+
+  private static final String DIRECTORY = "ocr-cache";
+  private static final String PAGE_SEPARATOR = ":page:";
+
+  private final PromptRegistry promptRegistry;
+  private final SegmentedLogStore store;
+
+  public OcrResultCache(@NonNull PipelineConfiguration pipelineConfig, @NonNull PromptRegistry promptRegistry) {
+    this.promptRegistry = promptRegistry;
+
+    var storageConfig = pipelineConfig.getStorage();
+    var cacheConfig = storageConfig.getOcrCache();
+
+    if (cacheConfig.isEnabled()) {
+      var directory = Path.of(storageConfig.getDirectory(), DIRECTORY);
+      this.store = new SegmentedLogStore(directory,
+        cacheConfig.getSegmentSize().toBytes(), cacheConfig.getMaxSize().toBytes());
+      log.info("OCR result cache enabled in {} ({} entries)", directory, store.keys().size());
+    } else {
+      this.store = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return store != null;
+  }
+
+  /**
+   * Builds the cache key from the SHA-256 of the PDF bytes and a hash of everything that influences the OCR text
+   */
+  public String cacheKey(byte @NonNull [] pdfBytes, @NonNull OcrConfiguration ocrConfig) {
+    var prompt = Objects.requireNonNullElse(ocrConfig.getPrompt(), promptRegistry.get("prompts/ocr.txt"));
+    var textLayer = ocrConfig.getTextLayer();
+    var settings = String.join("\n",
+      ocrConfig.getModel(),
+      HashUtils.sha256(prompt),
+      ocrConfig.getStrategy().name(),
+      String.valueOf(textLayer.getMinCharacters()),
+      String.valueOf(textLayer.getMinGlyphRatio()));
+
+    return HashUtils.sha256(pdfBytes) + ":" + HashUtils.sha256(settings);
+  }
+
+  public Mono<String> get(@NonNull String key) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    return Mono.fromCallable(() -> store.getString(key).orElse(null))
+      .subscribeOn(Schedulers.boundedElastic())
+      .onErrorResume(error -> {
+        log.warn("Failed to read OCR result from cache: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  public Mono<Void> put(@NonNull String key, @NonNull String text) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    return Mono.<Void>fromRunnable(() -> store.putString(key, text))
+      .subscribeOn(Schedulers.boundedElastic())
+      // a failing cache must never fail the document
+      .onErrorResume(error -> {
+        log.warn("Failed to store OCR result in cache: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  /**
+   * Blocking lookup of a single page transcription, for callers already running on a blocking-capable thread
+   */
+  public Optional<String> findPage(@NonNull String documentKey, int pageIndex) {
+    if (store == null) {
+      return Optional.empty();
+    }
+
+    try {
+      return store.getString(pageKey(documentKey, pageIndex));
+    } catch (RuntimeException e) {
+      log.warn("Failed to read page {} from OCR cache: {}", pageIndex + 1, e.getMessage(), e);
+      return Optional.empty();
+    }
+  }
+
+  public Mono<Void> putPage(@NonNull String documentKey, int pageIndex, @NonNull String text) {
+    return put(pageKey(documentKey, pageIndex), text);
+  }
+
+  /**
+   * Drops the page transcriptions of a document once its complete result has been cached
+   */
+  public Mono<Void> removePages(@NonNull String documentKey, int pageCount) {
+    if (store == null) {
+      return Mono.empty();
+    }
+
+    return Mono.<Void>fromRunnable(() -> {
+        for (var pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+          store.remove(pageKey(documentKey, pageIndex));
+        }
+      })
+      .subscribeOn(Schedulers.boundedElastic())
+      .onErrorResume(error -> {
+        log.warn("Failed to remove cached pages: {}", error.getMessage(), error);
+        return Mono.empty();
+      });
+  }
+
+  @PreDestroy
+  public void close() {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  private static String pageKey(String documentKey, int pageIndex) {
+    return documentKey + PAGE_SEPARATOR + pageIndex;
+  }
+}
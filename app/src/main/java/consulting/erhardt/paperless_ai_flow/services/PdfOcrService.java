@@ -1,24 +1,30 @@
 package consulting.erhardt.paperless_ai_flow.services;
 
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.OcrConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.OcrStrategy;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.TextLayerConfiguration;
 import consulting.erhardt.paperless_ai_flow.ai.ocr.OcrClient;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.DocumentService;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
 import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.icepdf.core.exceptions.PDFSecurityException;
 import org.icepdf.core.pobjects.PDimension;
 import org.icepdf.core.pobjects.Page;
 import org.icepdf.core.util.GraphicsRenderingHints;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.ai.content.Media;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeTypeUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -28,8 +34,11 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.stream.IntStream;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
 
 /**
  * Service for processing PDF documents through OCR pipeline
@@ -44,67 +53,219 @@ public class PdfOcrService {
   private static final float RENDER_SCALE = TARGET_DPI / 72f; // ICEpdf uses 72 DPI baseline
   private static final float RENDER_ROTATION = 0f;
   private static final float JPEG_COMPRESSION_QUALITY = 0.9f;
+  private static final int REPLACEMENT_CHARACTER = 0xFFFD;
 
   private final DocumentService documentService;
   private final OcrClient ocrClient;
+  private final OcrResultCache ocrResultCache;
+
+  @Qualifier("ocrPageLimiter")
+  private final ConcurrencyLimiter ocrPageLimiter;
+
+  @Qualifier("pageRenderPermits")
+  private final Semaphore pageRenderPermits;
+
+  @Qualifier("blockingScheduler")
+  private final Scheduler blockingScheduler;
 
   public Mono<String> processDocument(Document document, PipelineDefinition pipelineDefinition) {
     var documentId = document.getId();
     var ocrConfig = pipelineDefinition.getOcr();
 
-    log.info("Processing document {} with OCR model: {}", documentId, ocrConfig.getModel());
+    log.info("Processing document {} with OCR model: {} (strategy: {})",
+      documentId, ocrConfig.getModel(), ocrConfig.getStrategy());
 
     return documentService.downloadById(document.getId())
-      .flatMapMany(pdfBytes -> convertPdfToImages(pdfBytes, documentId))
-      .collectList()
-      .flatMap(images -> processImagesWithOcr(Flux.fromIterable(images), pipelineDefinition))
+      .flatMap(pdfBytes -> processPdf(pdfBytes, documentId, pipelineDefinition))
       .doOnSuccess(result -> log.info("Successfully processed document {} - result length: {}",
         documentId, result.length()))
       .doOnError(error -> log.error("Failed to process document {}: {}",
         documentId, error.getMessage(), error));
   }
 
-  private Flux<BufferedImage> convertPdfToImages(byte[] pdfBytes, @NonNull Integer documentId) {
-    return Mono.fromCallable(() -> {
-        log.info("Converting PDF of {} bytes to images for document {}", pdfBytes.length, documentId);
-
-        var iceDocument = new org.icepdf.core.pobjects.Document();
-        try (var bais = new ByteArrayInputStream(pdfBytes)) {
-          iceDocument.setInputStream(bais, null);
-
-          var pageCount = iceDocument.getNumberOfPages();
-          log.debug("Converting {} pages of document {} to images", pageCount, documentId);
-
-          return IntStream.range(0, pageCount)
-            .mapToObj(pageIndex -> {
-              try {
-                var image = renderPageToImage(iceDocument, pageIndex);
-                log.debug("Converted page {} of document {} to image ({}x{})",
-                  pageIndex + 1, documentId, image.getWidth(), image.getHeight());
-                return image;
-              } catch (Exception e) {
-                log.error("Failed to render page {} of document {}: {}", pageIndex + 1, documentId, e.getMessage(), e);
-                throw new RuntimeException("Failed to render PDF page", e);
-              }
-            })
-            .toList();
-        } catch (PDFSecurityException e) {
-          log.error("Encrypted or password-protected PDF for document {}: {}", documentId, e.getMessage(), e);
-          throw new RuntimeException("Cannot process encrypted or password-protected PDF", e);
-        } catch (IOException e) {
-          log.error("Failed to load PDF for document {}: {}", documentId, e.getMessage(), e);
-          throw new RuntimeException("Failed to load PDF document", e);
-        } finally {
-          try {
-            iceDocument.dispose();
-            log.debug("ICEpdf Document disposed for {}", documentId);
-          } catch (Throwable t) {
-            log.warn("Error disposing ICEpdf Document for {}: {}", documentId, t.getMessage(), t);
-          }
-        }
-      })
-      .flatMapMany(Flux::fromIterable)
-      .subscribeOn(Schedulers.boundedElastic());
+  private Mono<String> processPdf(byte[] pdfBytes, @NonNull Integer documentId, @NonNull PipelineDefinition pipeline) {
+    var ocrConfig = pipeline.getOcr();
+    if (!ocrResultCache.isEnabled()) {
+      return processPagesWithOcr(loadPages(pdfBytes, documentId, ocrConfig, null), pipeline, null);
+    }
+
+    var cacheKey = ocrResultCache.cacheKey(pdfBytes, ocrConfig);
+
+    return ocrResultCache.get(cacheKey)
+      .doOnNext(cached -> log.info("Using cached OCR result for document {}", documentId))
+      .switchIfEmpty(Mono.defer(() ->
+        processPagesWithOcr(loadPages(pdfBytes, documentId, ocrConfig, cacheKey), pipeline, cacheKey)));
+  }
+
+  /**
+   * Loads pages lazily: page N+1 is only read or rendered once downstream OCR requests it.
+   * The ICEpdf document stays open for the lifetime of the stream and is disposed on any terminal signal.
+   * Pages transcribed by an earlier, failed attempt are taken from the OCR cache without rendering.
+   */
+  private Flux<PageContent> loadPages(
+    byte[] pdfBytes,
+    @NonNull Integer documentId,
+    @NonNull OcrConfiguration ocrConfig,
+    String cacheKey
+  ) {
+    return Flux.using(
+        () -> openDocument(pdfBytes, documentId),
+        iceDocument -> Flux.range(0, iceDocument.getNumberOfPages())
+          .map(pageIndex -> loadCachedPage(cacheKey, pageIndex, documentId)
+            .orElseGet(() -> loadPage(iceDocument, pageIndex, documentId, ocrConfig))),
+        iceDocument -> disposeDocument(iceDocument, documentId)
+      )
+      .subscribeOn(blockingScheduler);
+  }
+
+  private org.icepdf.core.pobjects.Document openDocument(byte[] pdfBytes, @NonNull Integer documentId) {
+    log.info("Opening PDF of {} bytes for document {}", pdfBytes.length, documentId);
+
+    var iceDocument = new org.icepdf.core.pobjects.Document();
+    try (var bais = new ByteArrayInputStream(pdfBytes)) {
+      iceDocument.setInputStream(bais, null);
+      log.debug("Document {} has {} pages", documentId, iceDocument.getNumberOfPages());
+
+      return iceDocument;
+    } catch (PDFSecurityException e) {
+      log.error("Encrypted or password-protected PDF for document {}: {}", documentId, e.getMessage(), e);
+      disposeDocument(iceDocument, documentId);
+      throw new RuntimeException("Cannot process encrypted or password-protected PDF", e);
+    } catch (IOException e) {
+      log.error("Failed to load PDF for document {}: {}", documentId, e.getMessage(), e);
+      disposeDocument(iceDocument, documentId);
+      throw new RuntimeException("Failed to load PDF document", e);
+    }
+  }
+
+  private void disposeDocument(@NonNull org.icepdf.core.pobjects.Document iceDocument, @NonNull Integer documentId) {
+    try {
+      iceDocument.dispose();
+      log.debug("ICEpdf Document disposed for {}", documentId);
+    } catch (Throwable t) {
+      log.warn("Error disposing ICEpdf Document for {}: {}", documentId, t.getMessage(), t);
+    }
+  }
+
+  private Optional<PageContent> loadCachedPage(String cacheKey, int pageIndex, @NonNull Integer documentId) {
+    if (cacheKey == null) {
+      return Optional.empty();
+    }
+
+    return ocrResultCache.findPage(cacheKey, pageIndex)
+      .map(text -> {
+        log.debug("Using cached OCR text for page {} of document {}", pageIndex + 1, documentId);
+        return PageContent.ofText(text);
+      });
+  }
+
+  private PageContent loadPage(
+    @NonNull org.icepdf.core.pobjects.Document iceDocument,
+    int pageIndex,
+    @NonNull Integer documentId,
+    @NonNull OcrConfiguration ocrConfig
+  ) {
+    var strategy = ocrConfig.getStrategy();
+
+    if (strategy != OcrStrategy.VISION) {
+      var text = extractTextLayer(iceDocument, pageIndex, documentId);
+
+      if (strategy == OcrStrategy.TEXT_LAYER) {
+        return PageContent.ofText(Objects.requireNonNullElse(text, ""));
+      }
+
+      if (text != null && isUsableTextLayer(text, ocrConfig.getTextLayer())) {
+        log.debug("Using embedded text layer for page {} of document {} ({} chars)",
+          pageIndex + 1, documentId, text.length());
+        return PageContent.ofText(text);
+      }
+
+      log.debug("Text layer of page {} of document {} is insufficient, falling back to OCR model",
+        pageIndex + 1, documentId);
+    }
+
+    return PageContent.ofMedia(renderPageToMedia(iceDocument, pageIndex, documentId));
+  }
+
+  private String extractTextLayer(
+    @NonNull org.icepdf.core.pobjects.Document iceDocument,
+    int pageIndex,
+    @NonNull Integer documentId
+  ) {
+    try {
+      var pageText = iceDocument.getPageText(pageIndex);
+
+      return (pageText != null) ? pageText.toString().trim() : null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while extracting text of PDF page " + pageIndex, e);
+    } catch (Exception e) {
+      log.warn("Failed to extract text layer of page {} of document {}: {}", pageIndex + 1, documentId, e.getMessage(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether an embedded text layer is good enough to skip the OCR model:
+   * it needs a minimum number of characters and mostly readable glyphs (no replacement or private-use characters).
+   */
+  static boolean isUsableTextLayer(@NonNull String text, @NonNull TextLayerConfiguration config) {
+    var glyphs = text.codePoints()
+      .filter(codePoint -> !Character.isWhitespace(codePoint))
+      .toArray();
+
+    if (glyphs.length == 0 || glyphs.length < config.getMinCharacters()) {
+      return false;
+    }
+
+    var readable = Arrays.stream(glyphs)
+      .filter(PdfOcrService::isReadableGlyph)
+      .count();
+
+    return (double) readable / glyphs.length >= config.getMinGlyphRatio();
+  }
+
+  private static boolean isReadableGlyph(int codePoint) {
+    if (codePoint == REPLACEMENT_CHARACTER) {
+      return false;
+    }
+
+    return switch (Character.getType(codePoint)) {
+      case Character.CONTROL, Character.FORMAT, Character.PRIVATE_USE, Character.SURROGATE, Character.UNASSIGNED -> false;
+      default -> true;
+    };
+  }
+
+  private Media renderPageToMedia(
+    @NonNull org.icepdf.core.pobjects.Document iceDocument,
+    int pageIndex,
+    @NonNull Integer documentId
+  ) {
+    try {
+      // the permit is held until the raster is released, as it dominates memory while rendering
+      pageRenderPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to render PDF page " + pageIndex, e);
+    }
+
+    try {
+      var image = renderPageToImage(iceDocument, pageIndex);
+      try {
+        log.debug("Rendered page {} of document {} to image ({}x{})",
+          pageIndex + 1, documentId, image.getWidth(), image.getHeight());
+
+        return convertImageToMedia(image);
+      } catch (IOException e) {
+        log.error("Failed to encode page {} of document {}: {}", pageIndex + 1, documentId, e.getMessage(), e);
+        throw new UncheckedIOException("Failed to encode PDF page", e);
+      } finally {
+        // only the encoded JPEG is kept, the raster is released right away
+        image.flush();
+      }
+    } finally {
+      pageRenderPermits.release();
+    }
   }
 
   private BufferedImage renderPageToImage(@NonNull org.icepdf.core.pobjects.Document document, int pageNumber) {
@@ -133,24 +294,48 @@ public class PdfOcrService {
     }
   }
 
-  private Mono<String> processImagesWithOcr(Flux<BufferedImage> images, PipelineDefinition pipeline) {
-    return images
+  /**
+   * OCRs the loaded pages and joins them in page order.
+   * With a cache key, every OCRed page is cached as soon as it completes, so a retry after a failing page
+   * only OCRs the missing pages; once the document succeeds the page entries are replaced by the full result.
+   */
+  private Mono<String> processPagesWithOcr(Flux<PageContent> loadedPages, PipelineDefinition pipeline, String cacheKey) {
+    var pageConcurrency = pipeline.getOcr().getPageConcurrency();
+
+    // pages are OCRed concurrently, flatMapSequential keeps the results in page order
+    // and only requests as many rendered pages as there are OCR slots
+    return loadedPages
       .index()
-      .concatMap(indexedImage -> {
-        var pageNumber = indexedImage.getT1() + 1;
-        var image = indexedImage.getT2();
-
-        log.debug("Processing page {} with OCR", pageNumber);
-
-        return Mono.fromCallable(() -> convertImageToMedia(image))
-          .subscribeOn(Schedulers.boundedElastic())
-          .flatMap(media -> ocrClient.extractText(pipeline, media))
-          .map(text -> String.format("# Page %d%n%n%s%n%n", pageNumber, text))
-          .doFinally(sig -> image.flush());
-      })
+      .flatMapSequential(indexedPage -> {
+        var pageNumber = indexedPage.getT1() + 1;
+        var page = indexedPage.getT2();
+
+        Mono<String> pageText;
+        if (page.getText() != null) {
+          pageText = Mono.just(page.getText());
+        } else {
+          log.debug("Processing page {} with OCR", pageNumber);
+          pageText = ocrPageLimiter.limit(ocrClient.extractText(pipeline, page.getMedia()));
+
+          if (cacheKey != null) {
+            var pageIndex = indexedPage.getT1().intValue();
+            pageText = pageText.flatMap(text -> ocrResultCache.putPage(cacheKey, pageIndex, text).thenReturn(text));
+          }
+        }
+
+        return pageText.map(text -> String.format("# Page %d%n%n%s%n%n", pageNumber, text));
+      }, pageConcurrency, 1)
       .collectList()
-      .map(pages -> String.join("", pages))
-      .map(String::trim);
+      .flatMap(pages -> {
+        var result = String.join("", pages).trim();
+        if (cacheKey == null) {
+          return Mono.just(result);
+        }
+
+        return ocrResultCache.put(cacheKey, result)
+          .then(ocrResultCache.removePages(cacheKey, pages.size()))
+          .thenReturn(result);
+      });
   }
 
   private Media convertImageToMedia(@NonNull BufferedImage image) throws IOException {
@@ -185,4 +370,21 @@ public class PdfOcrService {
       return new Media(MimeTypeUtils.IMAGE_JPEG, imageResource);
     }
   }
+
+  /**
+   * A single page, either already available as text (text layer) or as image for the OCR model
+   */
+  @Value
+  private static class PageContent {
+    String text;
+    Media media;
+
+    static PageContent ofText(@NonNull String text) {
+      return new PageContent(text, null);
+    }
+
+    static PageContent ofMedia(@NonNull Media media) {
+      return new PageContent(null, media);
+    }
+  }
 }
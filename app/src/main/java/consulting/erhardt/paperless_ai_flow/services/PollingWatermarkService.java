@@ -0,0 +1,150 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PipelineDefinition;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the per-pipeline high-water mark of document modification times for incremental polling.
+ * <p>
+ * Watermarks survive restarts in {@code polling-watermarks.properties} inside the storage directory.
+ * Full sweeps are tracked in memory only, so every pipeline starts with a full sweep after a restart. Watermarks
+ * only ever hold {@code modified} timestamps reported by paperless-ngx, never the local clock, so clock skew between
+ * a replica and the server cannot skip documents.
+ */
+@Service
+@Slf4j
+public class PollingWatermarkService {
+
+  private static final String FILE_NAME = "polling-watermarks.properties";
+
+  private final Path file;
+  private final Clock clock;
+  private final Map<String, OffsetDateTime> watermarks = new ConcurrentHashMap<>();
+  private final Map<String, Instant> lastFullSweeps = new ConcurrentHashMap<>();
+
+  @Autowired
+  public PollingWatermarkService(@NonNull PipelineConfiguration pipelineConfig) {
+    this(Path.of(pipelineConfig.getStorage().getDirectory()).resolve(FILE_NAME), Clock.systemUTC());
+  }
+
+  PollingWatermarkService(@NonNull Path file, @NonNull Clock clock) {
+    this.file = file;
+    this.clock = clock;
+    load();
+  }
+
+  public Optional<OffsetDateTime> getWatermark(@NonNull String pipelineName) {
+    return Optional.ofNullable(watermarks.get(pipelineName));
+  }
+
+  /**
+   * Moves the watermark of a pipeline forward, older timestamps are ignored
+   */
+  public void advance(@NonNull String pipelineName, OffsetDateTime modified) {
+    if (modified == null) {
+      return;
+    }
+
+    var current = watermarks.get(pipelineName);
+    if (current != null && !modified.isAfter(current)) {
+      return;
+    }
+
+    watermarks.put(pipelineName, modified);
+    log.debug("Advanced polling watermark of pipeline '{}' to {}", pipelineName, modified);
+    save();
+  }
+
+  public boolean isFullSweepDue(@NonNull PipelineDefinition pipeline) {
+    var lastFullSweep = lastFullSweeps.get(pipeline.getName());
+
+    return lastFullSweep == null
+      || !clock.instant().isBefore(lastFullSweep.plus(pipeline.getPolling().getFullSweepInterval()));
+  }
+
+  public void markFullSweep(@NonNull String pipelineName) {
+    lastFullSweeps.put(pipelineName, clock.instant());
+  }
+
+  private synchronized void load() {
+    if (!Files.exists(file)) {
+      return;
+    }
+
+    try (var reader = Files.newBufferedReader(file)) {
+      var properties = new Properties();
+      properties.load(reader);
+      properties.forEach((name, value) -> watermarks.put((String) name, OffsetDateTime.parse((String) value)));
+
+      log.info("Loaded polling watermarks for {} pipelines from {}", watermarks.size(), file);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to load polling watermarks from {}, starting without: {}", file, e.getMessage(), e);
+      watermarks.clear();
+    }
+  }
+
+  private synchronized void save() {
+    var properties = new Properties();
+    watermarks.forEach((name, value) -> properties.setProperty(name, value.toString()));
+
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      var tempFile = file.resolveSibling(FILE_NAME + ".tmp");
+      try (var writer = Files.newBufferedWriter(tempFile)) {
+        properties.store(writer, "Polling watermarks per pipeline");
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the in-memory watermark still applies, a restart only costs one full listing
+      log.warn("Failed to persist polling watermarks to {}: {}", file, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Collects the modification times of the documents handled in one poll.
+   * Documents of an incomplete listing must be recorded in ascending order of modification.
+   */
+  public static final class Tracker {
+
+    private OffsetDateTime latest;
+    private OffsetDateTime beforeLatest;
+
+    public void record(@NonNull Document document) {
+      var modified = document.getModified();
+      if (modified == null) {
+        return;
+      }
+
+      if (latest == null || modified.isAfter(latest)) {
+        beforeLatest = latest;
+        latest = modified;
+      }
+    }
+
+    /**
+     * @param complete whether the listing was read to its end
+     * @return the watermark that is safe to commit; when the listing was cut short, documents sharing the
+     * last timestamp may not have been seen yet, so only the timestamp before it is safe
+     */
+    public Optional<OffsetDateTime> safeWatermark(boolean complete) {
+      return Optional.ofNullable(complete ? latest : beforeLatest);
+    }
+  }
+}
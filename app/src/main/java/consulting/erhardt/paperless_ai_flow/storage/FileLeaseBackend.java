@@ -0,0 +1,195 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Leases stored as one file per id in a directory shared by all replicas, e.g. on a network file system.
+ * <p>
+ * Files are created with {@code CREATE_NEW}, so only one replica can create a lease, and replaced or removed
+ * under an exclusive file lock after comparing their content. A removed lease is truncated before its file is
+ * deleted, so a replica that opened the file just before reads it as absent. Expiry is based on the wall clock
+ * of each replica, clocks must be kept in sync.
+ * <p>
+ * File layout: {@code token\nacquiredAt\nexpiresAt}, an empty expiry line means the lease never expires.
+ */
+@Slf4j
+public final class FileLeaseBackend<K> implements LeaseBackend<K> {
+
+  private static final String SUFFIX = ".lease";
+  /**
+   * File locks are held per process, a second lock on the same file from another thread or backend instance
+   * of this process fails instead of waiting, so all file operations of the process are serialized
+   */
+  private static final Object PROCESS_LOCK = new Object();
+
+  private final Path directory;
+  private final Function<String, K> idParser;
+
+  public FileLeaseBackend(@NonNull Path directory, @NonNull Function<String, K> idParser) {
+    this.directory = directory;
+    this.idParser = idParser;
+
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create lease directory " + directory, e);
+    }
+  }
+
+  @Override
+  public Optional<Lease> get(@NonNull K id) {
+    synchronized (PROCESS_LOCK) {
+      try (var channel = FileChannel.open(file(id), StandardOpenOption.READ)) {
+        var lock = channel.lock(0, Long.MAX_VALUE, true);
+        try {
+          return read(channel);
+        } finally {
+          lock.release();
+        }
+      } catch (NoSuchFileException e) {
+        return Optional.empty();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read lease of " + id, e);
+      }
+    }
+  }
+
+  @Override
+  public boolean create(@NonNull K id, @NonNull Lease lease) {
+    synchronized (PROCESS_LOCK) {
+      try (var channel = FileChannel.open(file(id), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        var lock = channel.lock();
+        try {
+          write(channel, lease);
+          return true;
+        } finally {
+          lock.release();
+        }
+      } catch (FileAlreadyExistsException e) {
+        return false;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to create lease of " + id, e);
+      }
+    }
+  }
+
+  @Override
+  public boolean replace(@NonNull K id, @NonNull Lease expected, @NonNull Lease replacement) {
+    synchronized (PROCESS_LOCK) {
+      try (var channel = FileChannel.open(file(id), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        var lock = channel.lock();
+        try {
+          if (!read(channel).filter(expected::equals).isPresent()) {
+            return false;
+          }
+
+          channel.truncate(0);
+          write(channel, replacement);
+          return true;
+        } finally {
+          lock.release();
+        }
+      } catch (NoSuchFileException e) {
+        return false;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to replace lease of " + id, e);
+      }
+    }
+  }
+
+  @Override
+  public boolean remove(@NonNull K id, @NonNull Lease expected) {
+    synchronized (PROCESS_LOCK) {
+      var file = file(id);
+      try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        var lock = channel.lock();
+        try {
+          if (!read(channel).filter(expected::equals).isPresent()) {
+            return false;
+          }
+
+          channel.truncate(0);
+          Files.deleteIfExists(file);
+          return true;
+        } finally {
+          lock.release();
+        }
+      } catch (NoSuchFileException e) {
+        return false;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to remove lease of " + id, e);
+      }
+    }
+  }
+
+  @Override
+  public Set<K> ids() {
+    synchronized (PROCESS_LOCK) {
+      try (var files = Files.list(directory)) {
+        var ids = new HashSet<K>();
+        files.map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(SUFFIX))
+          .forEach(name -> {
+            try {
+              ids.add(idParser.apply(name.substring(0, name.length() - SUFFIX.length())));
+            } catch (RuntimeException e) {
+              log.debug("Ignoring foreign file {} in lease directory", name);
+            }
+          });
+        return ids;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to list leases in " + directory, e);
+      }
+    }
+  }
+
+  private Path file(K id) {
+    return directory.resolve(id + SUFFIX);
+  }
+
+  /**
+   * Empty or incomplete files belong to a lease that is being created or removed and count as absent
+   */
+  private static Optional<Lease> read(FileChannel channel) throws IOException {
+    var buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+    channel.read(buffer, 0);
+
+    var lines = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\n", -1);
+    if (lines.length < 3 || lines[0].isEmpty()) {
+      return Optional.empty();
+    }
+
+    var expiresAt = lines[2].isEmpty() ? null : Instant.parse(lines[2]);
+    return Optional.of(new Lease(lines[0], Instant.parse(lines[1]), expiresAt));
+  }
+
+  private static void write(FileChannel channel, Lease lease) throws IOException {
+    var content = String.join("\n",
+      lease.token(),
+      lease.acquiredAt().toString(),
+      (lease.expiresAt() != null) ? lease.expiresAt().toString() : "");
+
+    var buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, buffer.position());
+    }
+    channel.force(true);
+  }
+}
@@ -0,0 +1,41 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-local leases, sufficient for a single instance
+ */
+public final class InMemoryLeaseBackend<K> implements LeaseBackend<K> {
+
+  private final Map<K, Lease> leases = new ConcurrentHashMap<>();
+
+  @Override
+  public Optional<Lease> get(@NonNull K id) {
+    return Optional.ofNullable(leases.get(id));
+  }
+
+  @Override
+  public boolean create(@NonNull K id, @NonNull Lease lease) {
+    return leases.putIfAbsent(id, lease) == null;
+  }
+
+  @Override
+  public boolean replace(@NonNull K id, @NonNull Lease expected, @NonNull Lease replacement) {
+    return leases.replace(id, expected, replacement);
+  }
+
+  @Override
+  public boolean remove(@NonNull K id, @NonNull Lease expected) {
+    return leases.remove(id, expected);
+  }
+
+  @Override
+  public Set<K> ids() {
+    return Set.copyOf(leases.keySet());
+  }
+}
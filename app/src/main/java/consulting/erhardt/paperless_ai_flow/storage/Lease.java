@@ -0,0 +1,15 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import lombok.NonNull;
+
+import java.time.Instant;
+
+/**
+ * Lease on an id, owned by whoever holds the token. A lease without expiry never expires.
+ */
+public record Lease(@NonNull String token, @NonNull Instant acquiredAt, Instant expiresAt) {
+
+  public boolean isExpired(@NonNull Instant now) {
+    return expiresAt != null && !now.isBefore(expiresAt);
+  }
+}
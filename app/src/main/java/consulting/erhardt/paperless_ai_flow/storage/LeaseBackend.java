@@ -0,0 +1,32 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import lombok.NonNull;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Storage of leases with compare-and-set semantics, shared by all replicas that must not process the same id.
+ * Implementations only store leases, expiry and ownership rules are applied by the caller.
+ */
+public interface LeaseBackend<K> {
+
+  Optional<Lease> get(@NonNull K id);
+
+  /**
+   * Stores the lease unless a lease for the id exists
+   */
+  boolean create(@NonNull K id, @NonNull Lease lease);
+
+  /**
+   * Replaces the lease only if the stored lease still equals {@code expected}
+   */
+  boolean replace(@NonNull K id, @NonNull Lease expected, @NonNull Lease replacement);
+
+  /**
+   * Removes the lease only if the stored lease still equals {@code expected}
+   */
+  boolean remove(@NonNull K id, @NonNull Lease expected);
+
+  Set<K> ids();
+}
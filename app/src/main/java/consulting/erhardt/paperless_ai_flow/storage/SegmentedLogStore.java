@@ -0,0 +1,372 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value store on local disk.
+ * <p>
+ * Records are appended to segment files; an in-memory index points to the latest record of every key
+ * and is rebuilt by scanning the segments on startup. A torn record at the end of a segment (e.g. after
+ * a crash) is truncated during recovery. When a size limit is configured, whole segments are evicted
+ * oldest-first once the limit is exceeded. Without a limit, sealed segments are compacted once more than half
+ * of the store is taken by overwritten or deleted records: their live records are copied to the active segment
+ * and the sealed segments are deleted.
+ * <p>
+ * Record layout: {@code [int keyLength][int valueLength][key][value][long crc32]},
+ * a value length of {@code -1} marks a deletion.
+ */
+@Slf4j
+public final class SegmentedLogStore implements Closeable {
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int HEADER_BYTES = 2 * Integer.BYTES;
+  private static final int TRAILER_BYTES = Long.BYTES;
+  private static final int TOMBSTONE = -1;
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final long maxBytes;
+
+  private final NavigableMap<Long, FileChannel> segments = new TreeMap<>();
+  private final Map<String, Location> index = new HashMap<>();
+  private long totalBytes;
+  private long liveBytes;
+  private boolean closed;
+
+  /**
+   * @param directory    directory holding the segment files, created if missing
+   * @param segmentBytes size after which the active segment is rolled over
+   * @param maxBytes     total size after which the oldest segments are evicted, {@code 0} for unbounded
+   */
+  public SegmentedLogStore(@NonNull Path directory, long segmentBytes, long maxBytes) {
+    if (segmentBytes <= 0) {
+      throw new IllegalArgumentException("Segment size must be positive, got " + segmentBytes);
+    }
+
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxBytes = maxBytes;
+
+    try {
+      Files.createDirectories(directory);
+      recover();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open log store in " + directory, e);
+    }
+  }
+
+  public synchronized Optional<byte[]> get(@NonNull String key) {
+    ensureOpen();
+    var location = index.get(key);
+    if (location == null) {
+      return Optional.empty();
+    }
+
+    try {
+      var buffer = ByteBuffer.allocate(location.length());
+      readFully(segments.get(location.segmentId()), buffer, location.valueOffset());
+
+      return Optional.of(buffer.array());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read key '" + key + "' from " + directory, e);
+    }
+  }
+
+  public Optional<String> getString(@NonNull String key) {
+    return get(key).map(bytes -> new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  public synchronized void put(@NonNull String key, byte @NonNull [] value) {
+    append(key, value);
+    maintain();
+  }
+
+  public void putString(@NonNull String key, @NonNull String value) {
+    put(key, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public synchronized void remove(@NonNull String key) {
+    if (index.containsKey(key)) {
+      append(key, null);
+      maintain();
+    }
+  }
+
+  public synchronized boolean contains(@NonNull String key) {
+    return index.containsKey(key);
+  }
+
+  public synchronized Set<String> keys() {
+    return Set.copyOf(index.keySet());
+  }
+
+  public synchronized long sizeInBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Copies the live records of all sealed segments into the active segment and deletes the sealed segments.
+   * All sealed segments are dropped together, so no tombstone is lost while an older value survives.
+   */
+  public synchronized void compact() {
+    try {
+      var sealed = List.copyOf(segments.headMap(activeSegmentId(), false).keySet());
+      if (sealed.isEmpty()) {
+        return;
+      }
+
+      var sealedSet = Set.copyOf(sealed);
+      var liveKeys = index.entrySet().stream()
+        .filter(entry -> sealedSet.contains(entry.getValue().segmentId()))
+        .map(Map.Entry::getKey)
+        .toList();
+
+      for (var key : liveKeys) {
+        append(key, get(key).orElseThrow());
+      }
+
+      for (var segmentId : sealed) {
+        dropSegment(segmentId);
+      }
+
+      log.debug("Compacted {} segments ({} live keys) in {}", sealed.size(), liveKeys.size(), directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to compact log store in " + directory, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    for (var channel : segments.values()) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Failed to close segment in {}: {}", directory, e.getMessage(), e);
+      }
+    }
+    segments.clear();
+    index.clear();
+    closed = true;
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Log store in " + directory + " is closed");
+    }
+  }
+
+  private void append(String key, byte[] value) {
+    ensureOpen();
+    try {
+      var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+      var valueLength = (value != null) ? value.length : TOMBSTONE;
+      var recordLength = HEADER_BYTES + keyBytes.length + Math.max(valueLength, 0) + TRAILER_BYTES;
+
+      var buffer = ByteBuffer.allocate(recordLength);
+      buffer.putInt(keyBytes.length);
+      buffer.putInt(valueLength);
+      buffer.put(keyBytes);
+      if (value != null) {
+        buffer.put(value);
+      }
+      buffer.putLong(checksum(keyBytes, value));
+      buffer.flip();
+
+      var segmentId = activeSegmentId();
+      var channel = segments.get(segmentId);
+      var offset = channel.size();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, offset + buffer.position());
+      }
+      totalBytes += recordLength;
+
+      updateIndex(key, (value != null)
+        ? new Location(segmentId, offset + HEADER_BYTES + keyBytes.length, value.length, recordLength)
+        : null);
+
+      if (channel.size() >= segmentBytes) {
+        openSegment(segmentId + 1);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to append key '" + key + "' to " + directory, e);
+    }
+  }
+
+  private void maintain() {
+    try {
+      if (maxBytes > 0) {
+        evictIfNeeded();
+      } else if (totalBytes - liveBytes > Math.max(liveBytes, segmentBytes) && segments.size() > 1) {
+        compact();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to maintain log store in " + directory, e);
+    }
+  }
+
+  private void evictIfNeeded() throws IOException {
+    while (totalBytes > maxBytes && segments.size() > 1) {
+      var segmentId = segments.firstKey();
+      dropSegment(segmentId);
+
+      log.debug("Evicted segment {} from {}", segmentId, directory);
+    }
+  }
+
+  private void dropSegment(long segmentId) throws IOException {
+    var channel = segments.remove(segmentId);
+
+    totalBytes -= channel.size();
+    channel.close();
+    Files.deleteIfExists(segmentPath(segmentId));
+
+    index.values().removeIf(location -> {
+      if (location.segmentId() != segmentId) {
+        return false;
+      }
+
+      liveBytes -= location.recordLength();
+      return true;
+    });
+  }
+
+  private void updateIndex(String key, Location location) {
+    var previous = (location != null) ? index.put(key, location) : index.remove(key);
+    if (previous != null) {
+      liveBytes -= previous.recordLength();
+    }
+    if (location != null) {
+      liveBytes += location.recordLength();
+    }
+  }
+
+  private long activeSegmentId() throws IOException {
+    if (segments.isEmpty()) {
+      openSegment(0);
+    }
+
+    return segments.lastKey();
+  }
+
+  private void openSegment(long segmentId) throws IOException {
+    var channel = FileChannel.open(segmentPath(segmentId),
+      StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segments.put(segmentId, channel);
+  }
+
+  private void recover() throws IOException {
+    try (var files = Files.list(directory)) {
+      var segmentIds = files
+        .map(path -> path.getFileName().toString())
+        .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+        .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+        .sorted()
+        .toList();
+
+      for (var segmentId : segmentIds) {
+        openSegment(segmentId);
+        totalBytes += replay(segmentId, segments.get(segmentId));
+      }
+    }
+
+    log.debug("Recovered {} keys from {} segments in {}", index.size(), segments.size(), directory);
+  }
+
+  /**
+   * Replays a segment into the index and truncates a torn record at its end
+   *
+   * @return the valid size of the segment
+   */
+  private long replay(long segmentId, FileChannel channel) throws IOException {
+    var size = channel.size();
+    var offset = 0L;
+    var header = ByteBuffer.allocate(HEADER_BYTES);
+
+    while (offset + HEADER_BYTES <= size) {
+      header.clear();
+      readFully(channel, header, offset);
+      header.flip();
+      var keyLength = header.getInt();
+      var valueLength = header.getInt();
+
+      if (keyLength < 0 || valueLength < TOMBSTONE) {
+        break;
+      }
+
+      var recordLength = (long) HEADER_BYTES + keyLength + Math.max(valueLength, 0) + TRAILER_BYTES;
+      if (offset + recordLength > size) {
+        break;
+      }
+
+      var body = ByteBuffer.allocate((int) (recordLength - HEADER_BYTES));
+      readFully(channel, body, offset + HEADER_BYTES);
+      body.flip();
+
+      var keyBytes = new byte[keyLength];
+      body.get(keyBytes);
+      byte[] value = null;
+      if (valueLength != TOMBSTONE) {
+        value = new byte[valueLength];
+        body.get(value);
+      }
+
+      if (body.getLong() != checksum(keyBytes, value)) {
+        break;
+      }
+
+      var key = new String(keyBytes, StandardCharsets.UTF_8);
+      updateIndex(key, (value != null)
+        ? new Location(segmentId, offset + HEADER_BYTES + keyLength, valueLength, recordLength)
+        : null);
+
+      offset += recordLength;
+    }
+
+    if (offset < size) {
+      log.warn("Truncating torn record at offset {} of segment {} in {}", offset, segmentId, directory);
+      channel.truncate(offset);
+    }
+
+    return offset;
+  }
+
+  private Path segmentPath(long segmentId) {
+    return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+    var start = buffer.position();
+    while (buffer.hasRemaining()) {
+      var read = channel.read(buffer, offset + buffer.position() - start);
+      if (read < 0) {
+        throw new IOException("Unexpected end of segment at offset " + offset);
+      }
+    }
+  }
+
+  private static long checksum(byte[] key, byte[] value) {
+    var crc = new CRC32();
+    crc.update(key);
+    if (value != null) {
+      crc.update(value);
+    }
+    return crc.getValue();
+  }
+
+  private record Location(long segmentId, long valueOffset, int length, long recordLength) {
+  }
+}
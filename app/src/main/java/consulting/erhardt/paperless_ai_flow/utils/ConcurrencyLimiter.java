@@ -0,0 +1,104 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Non-blocking permit pool for reactive pipelines.
+ * Subscriptions beyond the configured number of permits are parked until a permit is released,
+ * without occupying a thread while waiting.
+ */
+@Slf4j
+public final class ConcurrencyLimiter {
+
+  @Getter
+  private final String name;
+
+  @Getter
+  private final int permits;
+
+  private final Deque<Ticket> waiting = new ArrayDeque<>();
+  private int available;
+
+  public ConcurrencyLimiter(@NonNull String name, int permits) {
+    if (permits < 1) {
+      throw new IllegalArgumentException("Limiter '" + name + "' needs at least one permit, got " + permits);
+    }
+
+    this.name = name;
+    this.permits = permits;
+    this.available = permits;
+  }
+
+  /**
+   * Subscribes to the given source only once a permit is available.
+   * The permit is released on completion, error or cancellation.
+   */
+  public <T> Mono<T> limit(@NonNull Mono<T> source) {
+    return Mono.defer(() -> {
+      var ticket = new Ticket();
+      acquire(ticket);
+
+      return ticket.granted.asMono()
+        .then(source)
+        .doFinally(signal -> release(ticket));
+    });
+  }
+
+  public synchronized int availablePermits() {
+    return available;
+  }
+
+  public synchronized int waitingCount() {
+    return waiting.size();
+  }
+
+  private void acquire(Ticket ticket) {
+    synchronized (this) {
+      if (available <= 0) {
+        waiting.addLast(ticket);
+        log.trace("Limiter '{}': no permit available, {} waiting", name, waiting.size());
+        return;
+      }
+
+      available--;
+      ticket.acquired = true;
+    }
+
+    ticket.granted.tryEmitEmpty();
+  }
+
+  private void release(Ticket ticket) {
+    Ticket next;
+    synchronized (this) {
+      if (!ticket.acquired) {
+        // cancelled while still waiting
+        waiting.remove(ticket);
+        return;
+      }
+
+      ticket.acquired = false;
+      next = waiting.pollFirst();
+      if (next != null) {
+        next.acquired = true;
+      } else {
+        available++;
+      }
+    }
+
+    if (next != null) {
+      next.granted.tryEmitEmpty();
+    }
+  }
+
+  private static final class Ticket {
+    private final Sinks.Empty<Void> granted = Sinks.empty();
+    private boolean acquired;
+  }
+}
@@ -0,0 +1,52 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Static consistent-hash ring. Every member is placed on the ring at several virtual nodes, a key belongs to the
+ * first member clockwise of its hash. Adding or removing a member only moves the keys of that member's ranges.
+ */
+public final class ConsistentHashRing {
+
+  private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+  public ConsistentHashRing(@NonNull Collection<String> members, int virtualNodes) {
+    if (members.isEmpty()) {
+      throw new IllegalArgumentException("A hash ring needs at least one member");
+    }
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("Each member needs at least one virtual node, got " + virtualNodes);
+    }
+
+    for (var member : members) {
+      for (var node = 0; node < virtualNodes; node++) {
+        ring.put(hash(member + "#" + node), member);
+      }
+    }
+  }
+
+  public String ownerOf(@NonNull String key) {
+    var entry = ring.ceilingEntry(hash(key));
+    return (entry != null ? entry : ring.firstEntry()).getValue();
+  }
+
+  /**
+   * First 8 bytes of the MD5 digest, stable across JVMs and well distributed, unlike {@link String#hashCode()}
+   */
+  private static long hash(String value) {
+    try {
+      var digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 not available", e);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+@UtilityClass
+public class HashUtils {
+  @SneakyThrows
+  public static String sha256(byte[] bytes) {
+    var digest = MessageDigest.getInstance("SHA-256");
+    return HexFormat.of().formatHex(digest.digest(bytes));
+  }
+
+  public static String sha256(String text) {
+    return sha256(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,61 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.RetryConfiguration;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.retry.Retry;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+@UtilityClass
+@Slf4j
+public class RetryPolicies {
+
+  /**
+   * Exponential backoff for transient errors of one pipeline stage, exhausted retries rethrow the last error
+   */
+  public static Retry transientErrors(@NonNull RetryConfiguration retryConfig, @NonNull String stage) {
+    return Retry.backoff(Math.max(retryConfig.getMaxAttempts() - 1, 0), retryConfig.getInitialBackoff())
+      .maxBackoff(retryConfig.getMaxBackoff())
+      .filter(RetryPolicies::isTransient)
+      .doBeforeRetry(signal -> log.warn("Stage '{}' failed transiently (attempt {}), retrying: {}",
+        stage, signal.totalRetries() + 1, signal.failure().getMessage()))
+      .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+  }
+
+  /**
+   * Server errors, rate limits, connection problems and timeouts are worth retrying, everything else
+   * (client errors, unreadable or encrypted PDFs, invalid AI responses) fails the same way again
+   */
+  public static boolean isTransient(Throwable error) {
+    // blocking calls wrapped into Monos may hide the actual error as cause
+    for (var current = error; current != null; current = current.getCause()) {
+      if (isTransientType(current)) {
+        return true;
+      }
+      if (current.getCause() == current) {
+        break;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isTransientType(Throwable error) {
+    if (error instanceof WebClientResponseException responseException) {
+      var status = responseException.getStatusCode();
+      return status.is5xxServerError() || status.value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    return error instanceof WebClientRequestException
+      || error instanceof TimeoutException
+      || error instanceof SocketTimeoutException
+      || error instanceof TransientAiException;
+  }
+}
@@ -0,0 +1,99 @@
+package consulting.erhardt.paperless_ai_flow.web;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.services.DocumentWebhookService;
+import consulting.erhardt.paperless_ai_flow.services.DocumentWebhookService.WebhookResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Inbound endpoint for paperless-ngx workflow webhooks.
+ * The workflow posts either {@code {"document_id": 123}} or the {@code {"doc_url": "{doc_url}"}} placeholder.
+ * Startup fails if the webhook is enabled without a secret.
+ */
+@RestController
+@RequestMapping("/webhook")
+@ConditionalOnProperty(prefix = "paperless.webhook", name = "enabled", havingValue = "true")
+@Slf4j
+public class DocumentWebhookController {
+
+  static final String SECRET_HEADER = "X-Webhook-Secret";
+  private static final Pattern DOCUMENT_URL_ID = Pattern.compile("/documents/(\\d+)");
+
+  private final DocumentWebhookService documentWebhookService;
+  private final byte[] expectedSecret;
+
+  public DocumentWebhookController(
+    PipelineConfiguration pipelineConfig,
+    DocumentWebhookService documentWebhookService
+  ) {
+    var secret = pipelineConfig.getWebhook().getSecret();
+    if (secret == null || secret.isBlank()) {
+      throw new IllegalStateException("paperless.webhook.secret is required when the webhook is enabled");
+    }
+
+    this.documentWebhookService = documentWebhookService;
+    this.expectedSecret = secret.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @PostMapping("/documents")
+  public Mono<ResponseEntity<Map<String, String>>> documentEvent(
+    @RequestHeader(name = SECRET_HEADER, required = false) String secret,
+    @RequestBody WebhookRequest request
+  ) {
+    if (!isAuthorized(secret)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
+
+    var documentId = request.resolveDocumentId();
+    if (documentId == null) {
+      return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "document_id or doc_url required")));
+    }
+
+    return documentWebhookService.handleDocument(documentId)
+      .map(result -> ResponseEntity.status(toStatus(result)).body(Map.of("result", result.name())));
+  }
+
+  private boolean isAuthorized(String secret) {
+    return secret != null && MessageDigest.isEqual(expectedSecret, secret.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static HttpStatus toStatus(WebhookResult result) {
+    return switch (result) {
+      case ENQUEUED -> HttpStatus.ACCEPTED;
+      case ALREADY_PROCESSING, NO_MATCHING_PIPELINE, DEAD_LETTERED -> HttpStatus.OK;
+      // the reconciliation sweep picks the document up later
+      case QUEUE_FULL -> HttpStatus.SERVICE_UNAVAILABLE;
+    };
+  }
+
+  record WebhookRequest(
+    @JsonProperty("document_id") Integer documentId,
+    @JsonProperty("doc_url") String docUrl
+  ) {
+    Integer resolveDocumentId() {
+      if (documentId != null) {
+        return documentId;
+      }
+
+      if (docUrl != null) {
+        var matcher = DOCUMENT_URL_ID.matcher(docUrl);
+        if (matcher.find()) {
+          return Integer.valueOf(matcher.group(1));
+        }
+      }
+
+      return null;
+    }
+  }
+}
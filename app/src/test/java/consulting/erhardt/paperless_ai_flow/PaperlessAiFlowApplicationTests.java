@@ -1,7 +1,12 @@
 package consulting.erhardt.paperless_ai_flow;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
 
 @SpringBootTest(
   classes = PaperlessAiFlowApplication.class,
@@ -20,6 +25,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 )
 class PaperlessAiFlowApplicationTests {
 
+  @TempDir
+  static Path storageDirectory;
+
+  @DynamicPropertySource
+  static void storageProperties(DynamicPropertyRegistry registry) {
+    registry.add("paperless.storage.directory", storageDirectory::toString);
+  }
+
   @Test
   void contextLoads() {
   }
@@ -0,0 +1,140 @@
+package consulting.erhardt.paperless_ai_flow.ai;
+
+import consulting.erhardt.paperless_ai_flow.utils.FileUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for PromptRegistry verifying bundled templates, overrides and reloading.
+ */
+class PromptRegistryTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  @DisplayName("Should load all bundled prompts and schemas")
+  void get_bundledTemplates_returnsResourceContent() throws IOException {
+    // Given
+    var registry = new PromptRegistry();
+
+    // When / Then
+    assertThat(registry.get("prompts/title.txt")).isEqualTo(FileUtils.readFileFromResources("prompts/title.txt"));
+    assertThat(registry.get("schemas/tags.json")).isEqualTo(FileUtils.readFileFromResources("schemas/tags.json"));
+    assertThat(registry.get("prompts/ocr.txt")).isNotBlank();
+    assertThat(registry.version()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should reject unknown templates")
+  void get_unknownTemplate_throws() {
+    var registry = new PromptRegistry();
+
+    assertThatThrownBy(() -> registry.get("prompts/unknown.txt"))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Should prefer templates from the override directory")
+  void get_overriddenTemplate_returnsOverride() throws IOException {
+    // Given
+    Files.createDirectories(tempDir.resolve("prompts"));
+    Files.writeString(tempDir.resolve("prompts/title.txt"), "Custom title prompt");
+
+    // When
+    var registry = new PromptRegistry(tempDir);
+
+    // Then
+    assertThat(registry.get("prompts/title.txt")).isEqualTo("Custom title prompt");
+    assertThat(registry.get("prompts/tags.txt")).isEqualTo(FileUtils.readFileFromResources("prompts/tags.txt"));
+  }
+
+  @Test
+  @DisplayName("Should reload changed and removed overrides once they are settled")
+  void reloadIfChanged_changedOverride_swapsTemplates() throws IOException {
+    // Given
+    var file = Files.createDirectories(tempDir.resolve("schemas")).resolve("title.json");
+    Files.writeString(file, "{\"type\": \"object\"}");
+    var registry = new PromptRegistry(tempDir);
+
+    // When / Then: nothing changed
+    assertThat(registry.reloadIfChanged()).isFalse();
+
+    // When / Then: changed override, swapped on the next check
+    Files.writeString(file, "{\"type\": \"object\", \"required\": []}");
+    Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+    assertThat(registry.reloadIfChanged()).isFalse();
+    assertThat(registry.reloadIfChanged()).isTrue();
+    assertThat(registry.get("schemas/title.json")).isEqualTo("{\"type\": \"object\", \"required\": []}");
+    assertThat(registry.version()).isEqualTo(1);
+
+    // When / Then: removed override falls back to the bundled schema
+    Files.delete(file);
+    assertThat(registry.reloadIfChanged()).isFalse();
+    assertThat(registry.reloadIfChanged()).isTrue();
+    assertThat(registry.get("schemas/title.json")).isEqualTo(FileUtils.readFileFromResources("schemas/title.json"));
+    assertThat(registry.version()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Should wait while an override is still being written")
+  void reloadIfChanged_overrideStillWritten_waits() throws IOException {
+    // Given
+    var file = Files.createDirectories(tempDir.resolve("prompts")).resolve("title.txt");
+    Files.writeString(file, "Custom title prompt");
+    var registry = new PromptRegistry(tempDir);
+
+    // When / Then: the file grows between two checks
+    Files.writeString(file, "Custom title");
+    assertThat(registry.reloadIfChanged()).isFalse();
+    Files.writeString(file, "Custom title prompt, second version");
+    assertThat(registry.reloadIfChanged()).isFalse();
+    assertThat(registry.get("prompts/title.txt")).isEqualTo("Custom title prompt");
+
+    // When / Then: unchanged since the last check
+    assertThat(registry.reloadIfChanged()).isTrue();
+    assertThat(registry.get("prompts/title.txt")).isEqualTo("Custom title prompt, second version");
+  }
+
+  @Test
+  @DisplayName("Should keep the previous templates when an override is invalid")
+  void reloadIfChanged_invalidSchema_keepsPreviousTemplates() throws IOException {
+    // Given
+    var file = Files.createDirectories(tempDir.resolve("schemas")).resolve("title.json");
+    Files.writeString(file, "{\"type\": \"object\"}");
+    var registry = new PromptRegistry(tempDir);
+
+    // When
+    Files.writeString(file, "{\"type\": \"obj");
+    registry.reloadIfChanged();
+    var reloaded = registry.reloadIfChanged();
+
+    // Then
+    assertThat(reloaded).isFalse();
+    assertThat(registry.get("schemas/title.json")).isEqualTo("{\"type\": \"object\"}");
+    assertThat(registry.version()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should refuse to start with an invalid override")
+  void constructor_blankPrompt_throws() throws IOException {
+    // Given
+    Files.createDirectories(tempDir.resolve("prompts"));
+    Files.writeString(tempDir.resolve("prompts/title.txt"), "  ");
+
+    // When / Then
+    assertThatThrownBy(() -> new PromptRegistry(tempDir))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessageContaining("prompts/title.txt");
+  }
+}
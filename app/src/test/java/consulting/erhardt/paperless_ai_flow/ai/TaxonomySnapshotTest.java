@@ -0,0 +1,116 @@
+package consulting.erhardt.paperless_ai_flow.ai;
+
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.Bm25CandidateRetriever;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for TaxonomySnapshot verifying rendering per refresh and versioning.
+ */
+class TaxonomySnapshotTest {
+
+  private final AtomicInteger renders = new AtomicInteger();
+
+  private String render(List<String> entries) {
+    renders.incrementAndGet();
+    return String.join(",", entries);
+  }
+
+  @Test
+  @DisplayName("Should render the taxonomy once while the cached list is unchanged")
+  void get_sameList_rendersOnce() {
+    // Given
+    var entries = List.of("Invoice", "Receipt");
+    var snapshot = new TaxonomySnapshot<String>("tags", () -> Mono.just(entries), this::render);
+
+    // When
+    var first = snapshot.get();
+    var second = snapshot.get();
+
+    // Then
+    assertThat(first.text()).isEqualTo("Invoice,Receipt");
+    assertThat(second).isSameAs(first);
+    assertThat(renders).hasValue(1);
+  }
+
+  @Test
+  @DisplayName("Should keep the rendered block for an equal list fetched again")
+  void get_equalList_keepsRenderedBlock() {
+    // Given
+    var snapshot = new TaxonomySnapshot<String>("tags", () -> Mono.just(new ArrayList<>(List.of("Invoice"))), this::render);
+
+    // When
+    var first = snapshot.get();
+    var second = snapshot.get();
+
+    // Then
+    assertThat(second).isSameAs(first);
+    assertThat(renders).hasValue(1);
+  }
+
+  @Test
+  @DisplayName("Should re-render with a new version when the taxonomy changed")
+  void get_changedList_rendersNewVersion() {
+    // Given
+    var entries = new AtomicReference<>(List.of("Invoice"));
+    var snapshot = new TaxonomySnapshot<String>("tags", () -> Mono.just(entries.get()), this::render);
+    var first = snapshot.get();
+
+    // When
+    entries.set(List.of("Invoice", "Tax"));
+    var second = snapshot.get();
+
+    // Then
+    assertThat(second.text()).isEqualTo("Invoice,Tax");
+    assertThat(second.version()).isNotEqualTo(first.version()).hasSize(12);
+    assertThat(renders).hasValue(2);
+  }
+
+  @Test
+  @DisplayName("Should render an empty taxonomy when the source is empty")
+  void get_emptySource_rendersEmptyList() {
+    var snapshot = new TaxonomySnapshot<String>("tags", Mono::empty, this::render);
+
+    assertThat(snapshot.get().text()).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Should list only the top K entries for large taxonomies")
+  void get_withCandidateFilter_listsTopK() {
+    // Given
+    var entries = List.of("Invoice", "Receipt", "Insurance", "Tax");
+    var snapshot = new TaxonomySnapshot<String>("tags", () -> Mono.just(entries), this::render,
+      entry -> entry, new CandidateFilter(2, new Bm25CandidateRetriever()));
+
+    // When
+    var filtered = snapshot.get("Tax assessment for your insurance");
+    var full = snapshot.get();
+
+    // Then
+    assertThat(filtered.text().split(",")).containsExactlyInAnyOrder("Tax", "Insurance")
+      .hasSize(2);
+    assertThat(full.text()).isEqualTo("Invoice,Receipt,Insurance,Tax");
+    assertThat(filtered.version()).isNotEqualTo(full.version()).hasSize(12);
+    assertThat(snapshot.get("Tax assessment for your insurance").version()).isEqualTo(filtered.version());
+  }
+
+  @Test
+  @DisplayName("Should list small taxonomies completely")
+  void get_smallTaxonomy_listsAll() {
+    // Given
+    var snapshot = new TaxonomySnapshot<String>("tags", () -> Mono.just(List.of("Invoice", "Tax")), this::render,
+      entry -> entry, new CandidateFilter(2, new Bm25CandidateRetriever()));
+
+    // When / Then
+    assertThat(snapshot.get("Tax assessment").text()).isEqualTo("Invoice,Tax");
+  }
+}
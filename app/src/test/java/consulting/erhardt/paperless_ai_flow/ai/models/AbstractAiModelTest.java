@@ -0,0 +1,144 @@
+package consulting.erhardt.paperless_ai_flow.ai.models;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration.PromptLayout;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AbstractAiModelTest {
+
+  private static final String CONTENT = "Invoice from ACME dated 2025-01-15";
+
+  @Mock
+  private OpenAiChatModel openAiChatModel;
+
+  @Mock
+  private TagService tagService;
+
+  private TitleExtractionModel titleModel;
+  private TagExtractionModel tagModel;
+
+  @BeforeEach
+  void setUp() {
+    var objectMapper = JsonMapper.builder().findAndAddModules().build();
+    var promptRegistry = new PromptRegistry();
+    titleModel = new TitleExtractionModel(openAiChatModel, objectMapper, promptRegistry);
+    tagModel = new TagExtractionModel(openAiChatModel, objectMapper, promptRegistry, tagService, CandidateFilter.disabled());
+  }
+
+  @Test
+  void process_contentFirst_shouldShareThePromptPrefixAcrossModels() throws IOException {
+    // Given
+    when(tagService.getAll()).thenReturn(Mono.just(List.of(Tag.builder().id(3).name("Invoice").build())));
+    when(openAiChatModel.call(any(Prompt.class))).thenReturn(
+      response("{\"title\": {\"title\": \"Invoice ACME 2025-01-15\"}, \"createdDate\": null, \"tags\": null,"
+        + " \"correspondent\": null, \"customFields\": null}"),
+      response("{\"title\": null, \"createdDate\": null, \"tags\": {\"tagIds\": [3]},"
+        + " \"correspondent\": null, \"customFields\": null}"));
+
+    // When
+    var title = titleModel.process(CONTENT, null, PromptLayout.CONTENT_FIRST);
+    var tags = tagModel.process(CONTENT, null, PromptLayout.CONTENT_FIRST);
+
+    // Then
+    assertThat(title.getTitle()).isEqualTo("Invoice ACME 2025-01-15");
+    assertThat(tags.getTagIds()).containsExactly(3);
+
+    var promptCaptor = ArgumentCaptor.forClass(Prompt.class);
+    verify(openAiChatModel, times(2)).call(promptCaptor.capture());
+    var titlePrompt = promptCaptor.getAllValues().get(0);
+    var tagPrompt = promptCaptor.getAllValues().get(1);
+    var titleMessages = titlePrompt.getInstructions();
+    var tagMessages = tagPrompt.getInstructions();
+
+    // the response format precedes the messages, so it must be shared as well
+    assertThat(((OpenAiChatOptions) titlePrompt.getOptions()).getResponseFormat().getSchema())
+      .isEqualTo(((OpenAiChatOptions) tagPrompt.getOptions()).getResponseFormat().getSchema());
+
+    assertThat(titleMessages).hasSize(3);
+    assertThat(tagMessages).hasSize(3);
+    assertThat(titleMessages.subList(0, 2)).isEqualTo(tagMessages.subList(0, 2));
+    assertThat(titleMessages.get(1).getText()).contains(CONTENT);
+
+    assertThat(tagMessages.get(2).getMessageType()).isEqualTo(MessageType.USER);
+    assertThat(tagMessages.get(2).getText())
+      .startsWith("### Available tags:")
+      .contains("### Task:", "document-tag classifier", "property \"tags\"")
+      .doesNotContain(CONTENT);
+  }
+
+  @Test
+  void process_instructionsFirst_shouldKeepSystemPromptBeforeTheDocument() throws IOException {
+    // Given
+    when(openAiChatModel.call(any(Prompt.class))).thenReturn(response("{\"title\": \"Invoice ACME 2025-01-15\"}"));
+
+    // When
+    var result = titleModel.process(CONTENT, "Custom title rules");
+
+    // Then
+    assertThat(result.getTitle()).isEqualTo("Invoice ACME 2025-01-15");
+
+    var promptCaptor = ArgumentCaptor.forClass(Prompt.class);
+    verify(openAiChatModel).call(promptCaptor.capture());
+    var messages = promptCaptor.getValue().getInstructions();
+
+    assertThat(messages).hasSize(2);
+    assertThat(messages.get(0).getMessageType()).isEqualTo(MessageType.SYSTEM);
+    assertThat(messages.get(0).getText()).isEqualTo("Custom title rules");
+    assertThat(messages.get(1).getText()).contains(CONTENT);
+  }
+
+  @Test
+  void getSharedJsonSchema_shouldBuildOncePerTemplateVersion() throws IOException {
+    // Given
+    var promptRegistry = spy(new PromptRegistry());
+    var model = new TitleExtractionModel(openAiChatModel, JsonMapper.builder().findAndAddModules().build(), promptRegistry);
+    var schema = model.getSharedJsonSchema();
+
+    // When
+    var reused = model.getSharedJsonSchema();
+    doReturn(1L).when(promptRegistry).version();
+    var rebuilt = model.getSharedJsonSchema();
+
+    // Then
+    assertThat(reused).isSameAs(schema);
+    assertThat(rebuilt).isEqualTo(schema).isNotSameAs(schema);
+    verify(promptRegistry, times(2)).get("schemas/title.json");
+  }
+
+  private static ChatResponse response(String json) {
+    var nativeUsage = new OpenAiApi.Usage(50, 2000, 2050, new OpenAiApi.Usage.PromptTokensDetails(0, 1536), null);
+    var metadata = ChatResponseMetadata.builder()
+      .usage(new DefaultUsage(2000, 50, 2050, nativeUsage))
+      .build();
+
+    return new ChatResponse(List.of(new Generation(new AssistantMessage(json))), metadata);
+  }
+}
@@ -0,0 +1,128 @@
+package consulting.erhardt.paperless_ai_flow.ai.models;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CorrespondentService;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CustomFieldsService;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CombinedExtractionModelTest {
+
+  @Mock
+  private OpenAiChatModel openAiChatModel;
+
+  @Mock
+  private TagService tagService;
+
+  @Mock
+  private CorrespondentService correspondentService;
+
+  @Mock
+  private CustomFieldsService customFieldsService;
+
+  private CombinedExtractionModel combinedExtractionModel;
+
+  @BeforeEach
+  void setUp() {
+    // modules as registered by Spring Boot, the DTOs rely on parameter names
+    var objectMapper = JsonMapper.builder().findAndAddModules().build();
+    var promptRegistry = new PromptRegistry();
+    combinedExtractionModel = new CombinedExtractionModel(
+      openAiChatModel,
+      objectMapper,
+      promptRegistry,
+      new TitleExtractionModel(openAiChatModel, objectMapper, promptRegistry),
+      new CreatedDateExtractionModel(openAiChatModel, objectMapper, promptRegistry),
+      new TagExtractionModel(openAiChatModel, objectMapper, promptRegistry, tagService, CandidateFilter.disabled()),
+      new CorrespondentExtractionModel(openAiChatModel, objectMapper, promptRegistry, correspondentService, CandidateFilter.disabled()),
+      new CustomFieldExtractionModel(openAiChatModel, objectMapper, promptRegistry, customFieldsService)
+    );
+  }
+
+  @Test
+  void process_shouldSendOnePromptWithEnabledExtractionsAndSplitTheResult() throws IOException {
+    // Given
+    var extraction = PipelineConfiguration.ExtractionConfiguration.builder()
+      .title(true)
+      .titlePrompt("Custom title rules")
+      .createdDate(false)
+      .tags(true)
+      .correspondent(false)
+      .customFields(false)
+      .build();
+
+    when(tagService.getAll()).thenReturn(Mono.just(List.of(Tag.builder().id(3).name("Invoice").build())));
+    when(openAiChatModel.call(any(Prompt.class))).thenReturn(new ChatResponse(List.of(new Generation(
+      new AssistantMessage("{\"title\": {\"title\": \"Invoice ACME\"}, \"tags\": {\"tagIds\": [3]}}")))));
+
+    // When
+    var result = combinedExtractionModel.process("Invoice from ACME", extraction);
+
+    // Then
+    assertThat(result.getTitle().getTitle()).isEqualTo("Invoice ACME");
+    assertThat(result.getTags().getTagIds()).containsExactly(3);
+    assertThat(result.getCreatedDate()).isNull();
+    assertThat(result.getCorrespondent()).isNull();
+
+    var promptCaptor = ArgumentCaptor.forClass(Prompt.class);
+    verify(openAiChatModel, times(1)).call(promptCaptor.capture());
+    var prompt = promptCaptor.getValue();
+
+    assertThat(prompt.getSystemMessage().getText())
+      .contains("## Task \"title\"", "Custom title rules", "## Task \"tags\"", "document-tag classifier")
+      .doesNotContain("## Task \"createdDate\"");
+    assertThat(prompt.getUserMessage().getText())
+      .containsOnlyOnce("Invoice from ACME")
+      .contains("- ID: 3, Name: \"Invoice\"");
+
+    var schema = ((OpenAiChatOptions) prompt.getOptions()).getResponseFormat().getJsonSchema().getSchema();
+    assertThat(schema.get("required")).isEqualTo(List.of("title", "tags"));
+    assertThat(schema)
+      .extractingByKey("properties", InstanceOfAssertFactories.map(String.class, Object.class))
+      .containsOnlyKeys("title", "tags");
+  }
+
+  @Test
+  void process_shouldSkipTheCallWhenNoExtractionIsEnabled() throws IOException {
+    // Given
+    var extraction = PipelineConfiguration.ExtractionConfiguration.builder()
+      .title(false)
+      .createdDate(false)
+      .tags(false)
+      .correspondent(false)
+      .customFields(false)
+      .build();
+
+    // When
+    var result = combinedExtractionModel.process("content", extraction);
+
+    // Then
+    assertThat(result.getTitle()).isNull();
+    verifyNoInteractions(openAiChatModel);
+  }
+}
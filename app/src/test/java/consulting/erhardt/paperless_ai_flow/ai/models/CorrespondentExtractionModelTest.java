@@ -1,6 +1,8 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.models.CorrespondentExtractionModel;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Correspondent;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CorrespondentService;
@@ -36,7 +38,9 @@ class CorrespondentExtractionModelTest {
     correspondentExtractionModel = new CorrespondentExtractionModel(
       openAiChatModel,
       objectMapper,
-      correspondentService
+      new PromptRegistry(),
+      correspondentService,
+      CandidateFilter.disabled()
     );
   }
 
@@ -1,6 +1,7 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.models.CreatedDateExtractionModel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,7 +25,7 @@ class CreatedDateExtractionModelTest {
 
   @BeforeEach
   void setUp() {
-    createdDateExtractionModel = new CreatedDateExtractionModel(openAiChatModel, objectMapper);
+    createdDateExtractionModel = new CreatedDateExtractionModel(openAiChatModel, objectMapper, new PromptRegistry());
   }
 
   @Test
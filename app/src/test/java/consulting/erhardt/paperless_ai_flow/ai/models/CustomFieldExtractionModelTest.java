@@ -1,6 +1,7 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.models.CustomFieldExtractionModel;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.CustomField;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CustomFieldsService;
@@ -37,6 +38,7 @@ class CustomFieldExtractionModelTest {
     customFieldExtractionModel = new CustomFieldExtractionModel(
       openAiChatModel,
       objectMapper,
+      new PromptRegistry(),
       customFieldsService
     );
   }
@@ -1,6 +1,8 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.models.TagExtractionModel;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
@@ -36,7 +38,9 @@ class TagExtractionModelTest {
     tagExtractionModel = new TagExtractionModel(
       openAiChatModel,
       objectMapper,
-      tagService
+      new PromptRegistry(),
+      tagService,
+      CandidateFilter.disabled()
     );
   }
 
@@ -1,6 +1,7 @@
 package consulting.erhardt.paperless_ai_flow.ai.models;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.ai.models.TitleExtractionModel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,7 +25,7 @@ class TitleExtractionModelTest {
 
   @BeforeEach
   void setUp() {
-    titleExtractionModel = new TitleExtractionModel(openAiChatModel, objectMapper);
+    titleExtractionModel = new TitleExtractionModel(openAiChatModel, objectMapper, new PromptRegistry());
   }
 
   @Test
@@ -1,6 +1,8 @@
 package consulting.erhardt.paperless_ai_flow.ai.ocr;
 
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +11,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.content.Media;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.util.MimeTypeUtils;
+import reactor.core.scheduler.Schedulers;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -23,7 +26,7 @@ class OcrExtractionModelTest {
 
     @BeforeEach
     void setUp() {
-        ocrExtractionModel = new OcrExtractionModel(openAiChatModel);
+        ocrExtractionModel = new OcrExtractionModel(openAiChatModel, new PromptRegistry(), new ConcurrencyLimiter("llm-calls", 4), Schedulers.boundedElastic());
     }
 
     @Test
@@ -70,7 +73,7 @@ class OcrExtractionModelTest {
     @Test
     void shouldCreateOcrExtractionModel() {
         // When
-        var model = new OcrExtractionModel(openAiChatModel);
+        var model = new OcrExtractionModel(openAiChatModel, new PromptRegistry(), new ConcurrencyLimiter("llm-calls", 4), Schedulers.boundedElastic());
 
         // Then
         assertThat(model).isNotNull();
@@ -0,0 +1,63 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for Bm25CandidateRetriever verifying lexical ranking.
+ */
+class Bm25CandidateRetrieverTest {
+
+  private final Bm25CandidateRetriever retriever = new Bm25CandidateRetriever();
+
+  @Test
+  @DisplayName("Should rank names sharing rare words with the content first and fill up with the others")
+  void topK_ranksByRelevance() {
+    // Given
+    var index = retriever.index(List.of("Insurance", "Car Insurance", "Health", "Tax Office Berlin", "Electricity"));
+
+    // When
+    var positions = index.topK("Your car insurance policy for 2025, premium due by March.", 3);
+
+    // Then
+    assertThat(positions).containsExactly(1, 0, 2);
+  }
+
+  @Test
+  @DisplayName("Should limit the result to K entries and ignore case and punctuation")
+  void topK_limitsResult() {
+    // Given
+    var index = retriever.index(List.of("ACME GmbH", "Globex", "Initech", "acme-support"));
+
+    // When
+    var positions = index.topK("Invoice from acme: ACME GmbH, Munich", 1);
+
+    // Then
+    assertThat(positions).containsExactly(0);
+  }
+
+  @Test
+  @DisplayName("Should list the first K entries when nothing matches")
+  void topK_noMatch_padsToK() {
+    // Given
+    var index = retriever.index(List.of("Invoice", "Receipt", "Contract", "Payslip"));
+
+    // When
+    var positions = index.topK("Completely unrelated text", 3);
+
+    // Then
+    assertThat(positions).containsExactly(0, 1, 2);
+  }
+
+  @Test
+  @DisplayName("Should list all entries when K exceeds the taxonomy")
+  void topK_kExceedsTaxonomy_listsAll() {
+    var index = retriever.index(List.of("Invoice", "Receipt"));
+
+    assertThat(index.topK("Receipt for your order", 5)).containsExactly(1, 0);
+  }
+}
@@ -0,0 +1,93 @@
+package consulting.erhardt.paperless_ai_flow.ai.retrieval;
+
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingModel;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EmbeddingCandidateRetriever verifying ranking by cosine similarity.
+ */
+@ExtendWith(MockitoExtension.class)
+class EmbeddingCandidateRetrieverTest {
+
+  @Mock
+  private EmbeddingModel embeddingModel;
+
+  private final ConcurrencyLimiter llmCallLimiter = new ConcurrencyLimiter("llm-calls", 1);
+
+  @Test
+  @DisplayName("Should embed names once and rank them by similarity to the content")
+  void topK_ranksBySimilarity() {
+    // Given
+    when(embeddingModel.embed(anyList())).thenReturn(List.of(
+      new float[]{1, 0, 0},
+      new float[]{0, 2, 0},
+      new float[]{0.7f, 0.7f, 0}
+    ));
+    when(embeddingModel.embed(anyString())).thenReturn(new float[]{0, 1, 0.1f});
+    var index = new EmbeddingCandidateRetriever(embeddingModel, 2048, llmCallLimiter)
+      .index(List.of("Tax", "Insurance", "Finance"));
+
+    // When
+    var first = index.topK("Your policy", 2);
+    var second = index.topK("Your policy", 1);
+
+    // Then
+    assertThat(first).containsExactly(1, 2);
+    assertThat(second).containsExactly(1);
+    verify(embeddingModel, times(1)).embed(anyList());
+  }
+
+  @Test
+  @DisplayName("Should embed names in batches of the configured size")
+  void index_largeTaxonomy_embedsInBatches() {
+    // Given
+    var names = IntStream.range(0, 5).mapToObj(i -> "Tag " + i).toList();
+    when(embeddingModel.embed(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream()
+      .map(name -> new float[]{1, 0})
+      .toList());
+
+    // When
+    new EmbeddingCandidateRetriever(embeddingModel, 2, llmCallLimiter).index(names);
+
+    // Then
+    verify(embeddingModel).embed(names.subList(0, 2));
+    verify(embeddingModel).embed(names.subList(2, 4));
+    verify(embeddingModel).embed(names.subList(4, 5));
+  }
+
+  @Test
+  @DisplayName("Should embed the prepared content once for all indexes")
+  void prepare_sharesContentEmbeddingAcrossIndexes() {
+    // Given
+    when(embeddingModel.embed(anyList())).thenReturn(List.of(new float[]{1, 0}, new float[]{0, 1}));
+    when(embeddingModel.embed(anyString())).thenReturn(new float[]{0, 1});
+    var retriever = new EmbeddingCandidateRetriever(embeddingModel, 2048, llmCallLimiter);
+    var tags = retriever.index(List.of("Tax", "Insurance"));
+    var correspondents = retriever.index(List.of("Tax Office", "Insurer"));
+
+    // When
+    StepVerifier.create(retriever.prepare("Your policy")).verifyComplete();
+    var tagPositions = tags.topK("Your policy", 1);
+    var correspondentPositions = correspondents.topK("Your policy", 1);
+
+    // Then
+    assertThat(tagPositions).containsExactly(1);
+    assertThat(correspondentPositions).containsExactly(1);
+    verify(embeddingModel, times(1)).embed("Your policy");
+    assertThat(llmCallLimiter.availablePermits()).isEqualTo(1);
+  }
+}
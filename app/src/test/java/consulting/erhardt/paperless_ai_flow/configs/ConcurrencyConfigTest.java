@@ -0,0 +1,122 @@
+package consulting.erhardt.paperless_ai_flow.configs;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test for ConcurrencyConfig to ensure the virtual-thread mode switches the execution of blocking work
+ */
+class ConcurrencyConfigTest {
+
+  private final ConcurrencyConfig concurrencyConfig = new ConcurrencyConfig();
+
+  @Test
+  void shouldUseBoundedElasticSchedulerByDefault() {
+    // Given: Default concurrency configuration
+    var pipelineConfig = pipelineConfig(false);
+
+    // When: Create the blocking scheduler
+    var scheduler = concurrencyConfig.blockingScheduler(pipelineConfig);
+
+    // Then: Should be Reactor's shared bounded elastic scheduler
+    assertThat(scheduler).isSameAs(Schedulers.boundedElastic());
+  }
+
+  @Test
+  void shouldRunBlockingWorkOnVirtualThreadsWhenEnabled() {
+    // Given: Virtual-thread mode
+    var pipelineConfig = pipelineConfig(true);
+    var scheduler = concurrencyConfig.blockingScheduler(pipelineConfig);
+
+    // When: Run a blocking call on the scheduler
+    var virtual = Mono.fromCallable(() -> Thread.currentThread().isVirtual())
+      .subscribeOn(scheduler)
+      .block();
+
+    // Then: Should run on a virtual thread
+    assertThat(virtual).isTrue();
+    scheduler.dispose();
+  }
+
+  @Test
+  void shouldDisposeVirtualThreadSchedulerOnShutdown() {
+    // Given: Virtual-thread mode
+    var scheduler = concurrencyConfig.blockingScheduler(pipelineConfig(true));
+
+    // When: The context shuts down
+    concurrencyConfig.disposeVirtualThreadScheduler();
+
+    // Then: Should dispose the scheduler it created
+    assertThat(scheduler.isDisposed()).isTrue();
+  }
+
+  @Test
+  void shouldNotDisposeSharedSchedulerOnShutdown() {
+    // Given: Default concurrency configuration
+    var scheduler = concurrencyConfig.blockingScheduler(pipelineConfig(false));
+
+    // When: The context shuts down
+    concurrencyConfig.disposeVirtualThreadScheduler();
+
+    // Then: Reactor's shared scheduler stays usable
+    assertThat(scheduler.isDisposed()).isFalse();
+  }
+
+  @Test
+  void shouldRunStageWorkersOnVirtualThreadsWhenEnabled() throws Exception {
+    // Given: Virtual-thread mode
+    var executor = concurrencyConfig.extractionStageExecutor(pipelineConfig(true));
+
+    // When: Run a task on the stage executor
+    var virtual = CompletableFuture.supplyAsync(() -> Thread.currentThread().isVirtual(), executor).get();
+
+    // Then: Should run on a virtual thread
+    assertThat(virtual).isTrue();
+  }
+
+  @Test
+  void shouldRejectDocumentLimitBelowLargestStageLimit() {
+    // Given: Fewer documents in flight than extraction workers
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .concurrency(PipelineConfiguration.ConcurrencyConfiguration.builder()
+        .documents(4)
+        .build())
+      .build();
+
+    // When & Then: Should fail at startup
+    assertThatThrownBy(() -> concurrencyConfig.inFlightDocumentLimiter(pipelineConfig))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("paperless.concurrency.documents");
+  }
+
+  @Test
+  void shouldAcceptDefaultDocumentLimit() {
+    // When: Create the limiter with the default configuration
+    var limiter = concurrencyConfig.inFlightDocumentLimiter(pipelineConfig(false));
+
+    // Then: Should cover the largest stage
+    assertThat(limiter.getMaxInFlight()).isEqualTo(16);
+  }
+
+  private static PipelineConfiguration pipelineConfig(boolean virtualThreads) {
+    return PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .concurrency(PipelineConfiguration.ConcurrencyConfiguration.builder()
+        .virtualThreads(virtualThreads)
+        .build())
+      .build();
+  }
+}
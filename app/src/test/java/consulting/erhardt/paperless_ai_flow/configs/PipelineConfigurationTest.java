@@ -53,4 +53,19 @@ class PipelineConfigurationTest {
     assertThat(model).isEqualTo("openai/gpt-4o");
     assertThat(prompt).isNull();
   }
+
+  @Test
+  void shouldProvideDefaultStageConcurrencyWhenNotConfigured() {
+    // Given: Concurrency configuration bound without a stages section
+    var concurrency = new PipelineConfiguration.ConcurrencyConfiguration(null, null, null, null, null, null, null);
+
+    // When: Get the stage workers
+    var stages = concurrency.getStages();
+
+    // Then: Should use the default worker counts per stage
+    assertThat(stages.getOcr()).isEqualTo(4);
+    assertThat(stages.getExtraction()).isEqualTo(16);
+    assertThat(stages.getPatching()).isEqualTo(8);
+    assertThat(stages.getSaving()).isEqualTo(8);
+  }
 }
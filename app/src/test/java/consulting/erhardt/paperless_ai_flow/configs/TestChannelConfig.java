@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.PriorityChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.messaging.MessageChannel;
 
@@ -12,7 +13,7 @@ import org.springframework.messaging.MessageChannel;
 public class TestChannelConfig {
   @Bean
   public QueueChannel pollingChannel() {
-    var channel = new QueueChannel(2);
+    var channel = new PriorityChannel(2);
     channel.setComponentName("pollingChannel");
     return channel;
   }
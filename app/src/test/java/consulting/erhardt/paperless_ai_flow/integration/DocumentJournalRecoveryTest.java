@@ -0,0 +1,138 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.services.DocumentJournal;
+import consulting.erhardt.paperless_ai_flow.services.DocumentQueueService;
+import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import consulting.erhardt.paperless_ai_flow.services.InFlightDocumentLimiter;
+import consulting.erhardt.paperless_ai_flow.services.LeaseHeartbeatService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.integration.channel.QueueChannel;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class DocumentJournalRecoveryTest {
+
+  @TempDir
+  Path storageDirectory;
+
+  private PipelineConfiguration pipelineConfig;
+  private DocumentJournal documentJournal;
+  private DocumentQueueService documentQueueService;
+  private IdLockRegistryService<Integer> lockRegistry;
+  private QueueChannel metadataExtractChannel;
+  private QueueChannel metadataResultChannel;
+  private QueueChannel finishedDocumentChannel;
+  private DocumentJournalRecovery recovery;
+
+  @BeforeEach
+  void setUp() {
+    pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .pipelines(List.of(PipelineConfiguration.PipelineDefinition.builder()
+        .name("invoices")
+        .selector(PipelineConfiguration.SelectorConfiguration.builder()
+          .requiredTags(List.of("INPUT"))
+          .build())
+        .build()))
+      .storage(PipelineConfiguration.StorageConfiguration.builder()
+        .directory(storageDirectory.toString())
+        .journal(PipelineConfiguration.JournalConfiguration.builder()
+          .enabled(true)
+          .build())
+        .build())
+      .build();
+
+    documentJournal = new DocumentJournal(pipelineConfig, new ObjectMapper().findAndRegisterModules());
+    documentQueueService = mock(DocumentQueueService.class);
+    when(documentQueueService.enqueueReference(any(), any())).thenReturn(DocumentQueueService.EnqueueResult.ENQUEUED);
+    lockRegistry = new IdLockRegistryService<>();
+    metadataExtractChannel = new QueueChannel();
+    metadataResultChannel = new QueueChannel();
+    finishedDocumentChannel = new QueueChannel();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (recovery != null) {
+      recovery.stop();
+    }
+    documentJournal.close();
+  }
+
+  @Test
+  void shouldResumeEveryDocumentAtTheStageAfterItsLastOne() {
+    // Given
+    documentJournal.record(DocumentJournal.Stage.POLLED, "invoices", document(1));
+    documentJournal.record(DocumentJournal.Stage.OCR_DONE, "invoices", document(2));
+    documentJournal.record(DocumentJournal.Stage.EXTRACTED, "invoices", document(3));
+    documentJournal.record(DocumentJournal.Stage.PATCHED, "invoices", document(4));
+    recovery = createRecovery(new InFlightDocumentLimiter(3));
+
+    // When
+    recovery.start();
+
+    // Then
+    verify(documentQueueService).enqueueReference(argThat(document -> document.getId() == 1), any());
+    await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+      assertThat(metadataExtractChannel.getQueueSize()).isEqualTo(1);
+      assertThat(metadataResultChannel.getQueueSize()).isEqualTo(1);
+      assertThat(finishedDocumentChannel.getQueueSize()).isEqualTo(1);
+    });
+    assertThat(((Document) metadataExtractChannel.receive(0).getPayload()).getId()).isEqualTo(2);
+    assertThat(((Document) metadataResultChannel.receive(0).getPayload()).getId()).isEqualTo(3);
+    assertThat(((Document) finishedDocumentChannel.receive(0).getPayload()).getId()).isEqualTo(4);
+    assertThat(lockRegistry.isLocked(2)).isTrue();
+  }
+
+  @Test
+  void shouldResumeNoMoreDocumentsThanAllowedInFlight() {
+    // Given
+    var limiter = new InFlightDocumentLimiter(1);
+    documentJournal.record(DocumentJournal.Stage.OCR_DONE, "invoices", document(1));
+    documentJournal.record(DocumentJournal.Stage.OCR_DONE, "invoices", document(2));
+    recovery = createRecovery(limiter);
+
+    // When
+    recovery.start();
+
+    // Then
+    await().atMost(Duration.ofSeconds(5)).until(() -> metadataExtractChannel.getQueueSize() == 1);
+    await().during(Duration.ofMillis(300)).until(() -> metadataExtractChannel.getQueueSize() == 1);
+    assertThat(((Document) metadataExtractChannel.receive(0).getPayload()).getId()).isEqualTo(1);
+    assertThat(lockRegistry.isLocked(2)).isTrue();
+
+    // When
+    limiter.release(1);
+
+    // Then
+    await().atMost(Duration.ofSeconds(5)).until(() -> metadataExtractChannel.getQueueSize() == 1);
+    assertThat(((Document) metadataExtractChannel.receive(0).getPayload()).getId()).isEqualTo(2);
+  }
+
+  private DocumentJournalRecovery createRecovery(InFlightDocumentLimiter limiter) {
+    return new DocumentJournalRecovery(pipelineConfig, documentJournal, documentQueueService, lockRegistry, limiter,
+      new LeaseHeartbeatService(pipelineConfig, lockRegistry), metadataExtractChannel, metadataResultChannel,
+      finishedDocumentChannel);
+  }
+
+  private static Document document(int id) {
+    return Document.builder().id(id).title("Document " + id).build();
+  }
+}
@@ -3,6 +3,7 @@ package consulting.erhardt.paperless_ai_flow.integration;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.matching.StringValuePattern;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.entities.DocumentResponse;
@@ -10,13 +11,16 @@ import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.entities.PagedR
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.entities.TagResponse;
 import consulting.erhardt.paperless_ai_flow.services.DocumentFieldPatchingService;
 import consulting.erhardt.paperless_ai_flow.services.DocumentMetadataExtractionService;
+import consulting.erhardt.paperless_ai_flow.services.DocumentQueueService;
 import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import consulting.erhardt.paperless_ai_flow.services.InFlightDocumentLimiter;
 import consulting.erhardt.paperless_ai_flow.services.PdfOcrService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.integration.support.MessageBuilder;
@@ -29,7 +33,9 @@ import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import reactor.core.publisher.Mono;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
@@ -37,6 +43,8 @@ import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMoc
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ActiveProfiles("test")
@@ -48,6 +56,9 @@ import static org.mockito.Mockito.when;
     "paperless.pipelines[0].patches[0].type=tag",
     "paperless.pipelines[0].patches[0].name=PROCESSED",
     "paperless.pipelines[0].removeInboxTags=true",
+    // tests trigger polling themselves, a scheduled run would race with them
+    "paperless.polling.initial-delay=3600000",
+    "paperless.retry.initial-backoff=10ms",
   }
 )
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
@@ -61,10 +72,14 @@ class DocumentPollingIntegrationConfigTest {
 
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
 
+  @TempDir
+  static Path storageDirectory;
+
   @DynamicPropertySource
   static void registerProperties(DynamicPropertyRegistry registry) {
     registry.add("paperless.api.base-url", () -> WIRE_MOCK.getRuntimeInfo().getHttpBaseUrl());
     registry.add("paperless.api.token", () -> "test-token");
+    registry.add("paperless.storage.directory", () -> storageDirectory.toString());
   }
 
   @Autowired
@@ -79,6 +94,9 @@ class DocumentPollingIntegrationConfigTest {
   @Autowired
   private IdLockRegistryService<Integer> documentLockRegistry;
 
+  @Autowired
+  private InFlightDocumentLimiter inFlightDocumentLimiter;
+
   @MockitoBean
   private PdfOcrService pdfOcrService;
 
@@ -190,9 +208,63 @@ class DocumentPollingIntegrationConfigTest {
     assertThat(documentLockRegistry.isLocked(202)).isFalse();
     assertThat(documentLockRegistry.isLocked(203)).isFalse();
 
-    // Page 2 should not have been fetched (stopped after capacity reached)
+    // Only enqueued documents are hydrated
+    WIRE_MOCK.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/200/")));
+    WIRE_MOCK.verify(0, getRequestedFor(urlPathEqualTo("/api/documents/202/")));
+
+    // Page 2 should not have been fetched (stopped after capacity reached), page 1 sized to the capacity
     WIRE_MOCK.verify(0, getRequestedFor(urlPathEqualTo("/api/documents/"))
       .withQueryParam("page", equalTo("2")));
+    WIRE_MOCK.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("1"))
+      .withQueryParam("page_size", equalTo("2")));
+  }
+
+  @Test
+  void pollDocuments_shouldOnlyListModifiedDocumentsAfterFullSweep() throws Exception {
+    stubTagPages();
+    // the sweep runs long after the newest modification, the watermark must still come from paperless-ngx
+    var sweptModified = OffsetDateTime.parse("2024-05-01T10:00:00Z");
+    var listedModified = OffsetDateTime.parse("2024-05-01T11:00:00Z");
+
+    // first poll after startup is a full sweep
+    stubDocumentPage(1, List.of(DocumentResponse.builder()
+      .id(500)
+      .title("Doc-500")
+      .modified(sweptModified)
+      .tagIds(List.of())
+      .customFields(List.of())
+      .build()), null);
+    stubDocumentPatch(500);
+    pollingIntegrationConfig.pollDocuments();
+
+    await().atMost(Duration.ofSeconds(5))
+      .untilAsserted(() -> assertThat(documentLockRegistry.isLocked(500)).isFalse());
+
+    // second poll only lists documents modified after the newest one of the sweep
+    stubIncrementalDocumentPage(equalTo("2024-05-01T10:00:00Z"), List.of(DocumentResponse.builder()
+      .id(501)
+      .title("Doc-501")
+      .modified(listedModified)
+      .tagIds(List.of())
+      .customFields(List.of())
+      .build()));
+    stubDocumentPatch(501);
+    pollingIntegrationConfig.pollDocuments();
+
+    await().atMost(Duration.ofSeconds(5))
+      .untilAsserted(() -> assertThat(documentLockRegistry.isLocked(501)).isFalse());
+
+    // third poll only asks for documents modified after the newest listed one
+    stubIncrementalDocumentPage(equalTo("2024-05-01T11:00:00Z"), List.of());
+    pollingIntegrationConfig.pollDocuments();
+
+    WIRE_MOCK.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("ordering", equalTo("-added")));
+    WIRE_MOCK.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("modified__gt", equalTo("2024-05-01T10:00:00Z")));
+    WIRE_MOCK.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("modified__gt", equalTo("2024-05-01T11:00:00Z")));
   }
 
   @Test
@@ -209,7 +281,7 @@ class DocumentPollingIntegrationConfigTest {
       .setHeader("pipelineName", pipeline.getName())
       .build();
 
-    var result = pollingIntegrationConfig.processDocumentOcr(message);
+    var result = pollingIntegrationConfig.processDocumentOcr(message).block();
 
     assertThat(result).isNull();
     assertThat(documentLockRegistry.isLocked(300)).isFalse();
@@ -247,19 +319,19 @@ class DocumentPollingIntegrationConfigTest {
       .build();
 
     // Process through OCR stage
-    var ocrResult = pollingIntegrationConfig.processDocumentOcr(message);
+    var ocrResult = pollingIntegrationConfig.processDocumentOcr(message).block();
     assertThat(ocrResult).isNotNull();
 
     // Process through metadata extraction stage
-    var metadataResult = pollingIntegrationConfig.processMetadataExtraction(ocrResult);
+    var metadataResult = pollingIntegrationConfig.processMetadataExtraction(ocrResult).block();
     assertThat(metadataResult).isNotNull();
 
     // Process through patching stage
-    var patchingResult = pollingIntegrationConfig.processPatching(metadataResult);
+    var patchingResult = pollingIntegrationConfig.processPatching(metadataResult).block();
     assertThat(patchingResult).isNotNull();
 
     // Process through final save stage
-    pollingIntegrationConfig.handleFinishedDocument(patchingResult);
+    pollingIntegrationConfig.handleFinishedDocument(patchingResult).block();
 
     // Verify document was unlocked after successful processing
     assertThat(documentLockRegistry.isLocked(documentId)).isFalse();
@@ -268,6 +340,31 @@ class DocumentPollingIntegrationConfigTest {
     WIRE_MOCK.verify(1, patchRequestedFor(urlPathEqualTo("/api/documents/" + documentId + "/")));
   }
 
+  @Test
+  void processDocumentOcr_shouldKeepDocumentInFlightUntilFinished() throws Exception {
+    var pipeline = pipelineConfiguration.getPipelines().getFirst();
+    var documentId = 450;
+    var document = Document.builder().id(documentId).title("In flight").build();
+    documentLockRegistry.tryLock(documentId);
+    stubDocumentPatch(documentId);
+
+    Message<Document> message = MessageBuilder.withPayload(document)
+      .setHeader("pipeline", pipeline)
+      .setHeader("pipelineName", pipeline.getName())
+      .build();
+
+    var ocrStage = pollingIntegrationConfig.processDocumentOcr(message);
+    assertThat(inFlightDocumentLimiter.inFlightCount()).isEqualTo(1);
+
+    var ocrResult = ocrStage.block();
+    var metadataResult = pollingIntegrationConfig.processMetadataExtraction(ocrResult).block();
+    var patchingResult = pollingIntegrationConfig.processPatching(metadataResult).block();
+    assertThat(inFlightDocumentLimiter.inFlightCount()).isEqualTo(1);
+
+    pollingIntegrationConfig.handleFinishedDocument(patchingResult).block();
+    assertThat(inFlightDocumentLimiter.inFlightCount()).isZero();
+  }
+
   @Test
   void processMetadataExtraction_shouldUnlockOnFailure() {
     var pipeline = pipelineConfiguration.getPipelines().getFirst();
@@ -287,12 +384,35 @@ class DocumentPollingIntegrationConfigTest {
       .setHeader("pipelineName", pipeline.getName())
       .build();
 
-    var result = pollingIntegrationConfig.processMetadataExtraction(message);
+    var result = pollingIntegrationConfig.processMetadataExtraction(message).block();
 
     assertThat(result).isNull();
     assertThat(documentLockRegistry.isLocked(documentId)).isFalse();
   }
 
+  @Test
+  void processMetadataExtraction_shouldDropDocumentWhoseLeaseWasTakenOver() {
+    var pipeline = pipelineConfiguration.getPipelines().getFirst();
+    var documentId = 550;
+    var document = Document.builder().id(documentId).title("Stale lease").content("text").build();
+
+    var staleToken = documentLockRegistry.tryAcquire(documentId).orElseThrow();
+    documentLockRegistry.unlock(documentId);
+    documentLockRegistry.tryAcquire(documentId).orElseThrow();
+
+    Message<Document> message = MessageBuilder.withPayload(document)
+      .setHeader("pipeline", pipeline)
+      .setHeader("pipelineName", pipeline.getName())
+      .setHeader(DocumentQueueService.LOCK_TOKEN_HEADER, staleToken)
+      .build();
+
+    var result = pollingIntegrationConfig.processMetadataExtraction(message).block();
+
+    assertThat(result).isNull();
+    assertThat(documentLockRegistry.isLocked(documentId)).isTrue();
+    verify(documentMetadataExtractionService, never()).extractMetadata(any(), any());
+  }
+
   @Test
   void processPatching_shouldUnlockOnFailure() {
     var pipeline = pipelineConfiguration.getPipelines().getFirst();
@@ -312,7 +432,7 @@ class DocumentPollingIntegrationConfigTest {
       .setHeader("pipelineName", pipeline.getName())
       .build();
 
-    var result = pollingIntegrationConfig.processPatching(message);
+    var result = pollingIntegrationConfig.processPatching(message).block();
 
     assertThat(result).isNull();
     assertThat(documentLockRegistry.isLocked(documentId)).isFalse();
@@ -342,13 +462,13 @@ class DocumentPollingIntegrationConfigTest {
       .build();
 
     // This should handle the error gracefully and unlock
-    pollingIntegrationConfig.handleFinishedDocument(message);
+    pollingIntegrationConfig.handleFinishedDocument(message).block();
 
     // Verify document was unlocked despite save failure
     assertThat(documentLockRegistry.isLocked(documentId)).isFalse();
 
-    // Verify the patch was attempted
-    WIRE_MOCK.verify(1, patchRequestedFor(urlPathEqualTo("/api/documents/" + documentId + "/")));
+    // Verify the transient server error was retried up to the maximum attempts
+    WIRE_MOCK.verify(3, patchRequestedFor(urlPathEqualTo("/api/documents/" + documentId + "/")));
   }
 
   private void stubTagPages() throws Exception {
@@ -394,6 +514,40 @@ class DocumentPollingIntegrationConfigTest {
       .willReturn(aResponse()
         .withHeader("Content-Type", "application/json")
         .withBody(body)));
+
+    stubDocuments(documents);
+  }
+
+  private void stubIncrementalDocumentPage(StringValuePattern modifiedAfter, List<DocumentResponse> documents) throws Exception {
+    var body = OBJECT_MAPPER.writeValueAsString(PagedResponse.<DocumentResponse>builder()
+      .count(documents.size())
+      .next(null)
+      .previous(null)
+      .results(documents)
+      .build());
+
+    WIRE_MOCK.stubFor(get(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("1"))
+      .withQueryParam("tags__id__all", equalTo("1"))
+      .withQueryParam("ordering", equalTo("modified"))
+      .withQueryParam("modified__gt", modifiedAfter)
+      .willReturn(aResponse()
+        .withHeader("Content-Type", "application/json")
+        .withBody(body)));
+
+    stubDocuments(documents);
+  }
+
+  /**
+   * Listings only return references, enqueued documents are fetched again by id
+   */
+  private void stubDocuments(List<DocumentResponse> documents) throws Exception {
+    for (var document : documents) {
+      WIRE_MOCK.stubFor(get(urlPathEqualTo("/api/documents/" + document.getId() + "/"))
+        .willReturn(aResponse()
+          .withHeader("Content-Type", "application/json")
+          .withBody(OBJECT_MAPPER.writeValueAsString(document))));
+    }
   }
 
   private DocumentResponse documentResponse(int id, String title) {
@@ -0,0 +1,92 @@
+package consulting.erhardt.paperless_ai_flow.integration;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PipelinePollingSchedulerTest {
+
+  private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+  @Test
+  void triggerShouldStartAfterInitialDelayWithinJitter() {
+    // Given
+    var trigger = new PipelinePollingScheduler.JitteredFixedDelayTrigger(pipeline("a", true, 0.5), Duration.ofSeconds(5));
+    var context = new SimpleTriggerContext(Clock.fixed(NOW, ZoneOffset.UTC));
+
+    // When
+    var next = trigger.nextExecution(context);
+
+    // Then
+    assertThat(next).isBetween(NOW.plusSeconds(5), NOW.plusSeconds(5 + 5));
+  }
+
+  @Test
+  void triggerShouldCountIntervalFromLastCompletion() {
+    // Given
+    var trigger = new PipelinePollingScheduler.JitteredFixedDelayTrigger(pipeline("a", true, 0), Duration.ZERO);
+    var context = new SimpleTriggerContext(Clock.fixed(NOW, ZoneOffset.UTC));
+    var completion = NOW.plusSeconds(42);
+    context.update(NOW, NOW, completion);
+
+    // When
+    var next = trigger.nextExecution(context);
+
+    // Then
+    assertThat(next).isEqualTo(completion.plusSeconds(10));
+  }
+
+  @Test
+  void shouldScheduleEveryEnabledPipelineAndCancelOnStop() {
+    // Given
+    var taskScheduler = mock(TaskScheduler.class);
+    var future = mock(ScheduledFuture.class);
+    doReturn(future).when(taskScheduler).schedule(any(Runnable.class), any(PipelinePollingScheduler.JitteredFixedDelayTrigger.class));
+
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .pipelines(List.of(pipeline("a", true, 0.1), pipeline("b", false, 0.1), pipeline("c", true, 0.1)))
+      .build();
+
+    var scheduler = new PipelinePollingScheduler(pipelineConfig, mock(DocumentPollingIntegrationConfig.class),
+      taskScheduler, Duration.ZERO);
+
+    // When
+    scheduler.start();
+    scheduler.stop();
+
+    // Then
+    verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(PipelinePollingScheduler.JitteredFixedDelayTrigger.class));
+    verify(future, times(2)).cancel(false);
+    assertThat(scheduler.isRunning()).isFalse();
+  }
+
+  private static PipelineConfiguration.PipelineDefinition pipeline(String name, boolean enabled, double jitter) {
+    return PipelineConfiguration.PipelineDefinition.builder()
+      .name(name)
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .polling(PipelineConfiguration.PollingConfiguration.builder()
+        .interval(Duration.ofSeconds(10))
+        .enabled(enabled)
+        .jitter(jitter)
+        .build())
+      .build();
+  }
+}
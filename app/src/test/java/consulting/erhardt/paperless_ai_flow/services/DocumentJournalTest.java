@@ -0,0 +1,125 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for DocumentJournal covering persistence across restarts and shutdown handling.
+ */
+class DocumentJournalTest {
+
+  @TempDir
+  Path storageDirectory;
+
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+  @Test
+  @DisplayName("Should restore the last stage and document of every pending document after a restart")
+  void pending_afterRestart_returnsLastStagePerDocument() {
+    // Arrange
+    var document = Document.builder()
+      .id(1)
+      .title("Invoice")
+      .content("# Page 1\n\nTotal 42.00 EUR")
+      .tags(List.of(Tag.builder().id(5).name("INPUT").build()))
+      .modified(OffsetDateTime.of(2024, 1, 31, 12, 0, 0, 0, ZoneOffset.UTC))
+      .build();
+
+    var journal = createJournal(true);
+    journal.record(DocumentJournal.Stage.POLLED, "invoices", Document.builder().id(1).build());
+    journal.record(DocumentJournal.Stage.OCR_DONE, "invoices", document);
+    journal.record(DocumentJournal.Stage.POLLED, "letters", Document.builder().id(2).build());
+    journal.record(DocumentJournal.Stage.POLLED, "letters", Document.builder().id(3).build());
+    journal.complete(3);
+    journal.close();
+
+    // Act
+    var pending = createJournal(true).pending();
+
+    // Assert
+    assertThat(pending).containsExactly(
+      new DocumentJournal.Entry(DocumentJournal.Stage.OCR_DONE, "invoices", document),
+      new DocumentJournal.Entry(DocumentJournal.Stage.POLLED, "letters", Document.builder().id(2).build()));
+  }
+
+  @Test
+  @DisplayName("Should return pending documents ordered numerically by document id")
+  void pending_returnsEntriesByDocumentId() {
+    // Arrange
+    var journal = createJournal(true);
+    journal.record(DocumentJournal.Stage.POLLED, "invoices", Document.builder().id(10).build());
+    journal.record(DocumentJournal.Stage.POLLED, "invoices", Document.builder().id(9).build());
+    journal.record(DocumentJournal.Stage.POLLED, "invoices", Document.builder().id(2).build());
+
+    // Act
+    var pending = journal.pending();
+
+    // Assert
+    assertThat(pending)
+      .extracting(entry -> entry.document().getId())
+      .containsExactly(2, 9, 10);
+  }
+
+  @Test
+  @DisplayName("Should drop failed documents but keep documents failing during shutdown")
+  void abandon_keepsEntriesOnlyWhileClosing() {
+    // Arrange
+    var journal = createJournal(true);
+    journal.record(DocumentJournal.Stage.EXTRACTED, "invoices", Document.builder().id(1).build());
+    journal.record(DocumentJournal.Stage.EXTRACTED, "invoices", Document.builder().id(2).build());
+
+    // Act
+    journal.abandon(1);
+    journal.onContextClosed();
+    journal.abandon(2);
+
+    // Assert
+    assertThat(journal.pending())
+      .extracting(entry -> entry.document().getId())
+      .containsExactly(2);
+  }
+
+  @Test
+  @DisplayName("Should not write anything when the journal is disabled")
+  void record_disabled_isNoOp() {
+    // Arrange
+    var journal = createJournal(false);
+
+    // Act
+    journal.record(DocumentJournal.Stage.POLLED, "invoices", Document.builder().id(1).build());
+
+    // Assert
+    assertThat(journal.isEnabled()).isFalse();
+    assertThat(journal.pending()).isEmpty();
+    assertThat(storageDirectory.resolve("journal")).doesNotExist();
+  }
+
+  private DocumentJournal createJournal(boolean enabled) {
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .storage(PipelineConfiguration.StorageConfiguration.builder()
+        .directory(storageDirectory.toString())
+        .journal(PipelineConfiguration.JournalConfiguration.builder()
+          .enabled(enabled)
+          .build())
+        .build())
+      .build();
+
+    return new DocumentJournal(pipelineConfig, objectMapper);
+  }
+}
@@ -2,6 +2,7 @@ package consulting.erhardt.paperless_ai_flow.services;
 
 import consulting.erhardt.paperless_ai_flow.ai.dtos.*;
 import consulting.erhardt.paperless_ai_flow.ai.models.*;
+import consulting.erhardt.paperless_ai_flow.ai.retrieval.CandidateFilter;
 import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Correspondent;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.CustomField;
@@ -10,13 +11,16 @@ import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CorrespondentService;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.CustomFieldsService;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.TagService;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.retry.TransientAiException;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
@@ -26,7 +30,7 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Unit tests for DocumentMetadataExtractionService using mocked AI models.
@@ -49,6 +53,9 @@ class DocumentMetadataExtractionServiceTest {
   @Mock
   private CreatedDateExtractionModel createdDateModel;
 
+  @Mock
+  private CombinedExtractionModel combinedModel;
+
   @Mock
   private TagService tagService;
 
@@ -70,7 +77,11 @@ class DocumentMetadataExtractionServiceTest {
       tagService,
       correspondentService,
       customFieldsService,
-      createdDateModel
+      createdDateModel,
+      combinedModel,
+      CandidateFilter.disabled(),
+      new ConcurrencyLimiter("llm-calls", 4),
+      Schedulers.boundedElastic()
     );
   }
 
@@ -101,18 +112,18 @@ class DocumentMetadataExtractionServiceTest {
       .build();
 
     // Mock title extraction
-    when(titleModel.process(anyString(), isNull()))
+    when(titleModel.process(anyString(), isNull(), any()))
       .thenReturn(new TitleExtraction("Invoice Company X 2025-01-15"));
 
     // Mock created date extraction
-    when(createdDateModel.process(anyString(), isNull()))
+    when(createdDateModel.process(anyString(), isNull(), any()))
       .thenReturn(CreatedDateExtraction.builder()
         .createdDate(LocalDate.of(2025, 1, 15))
         .build());
 
     // Mock tags extraction
     var tagExtraction = TagsExtraction.builder().tagIds(List.of(1, 2)).build();
-    when(tagModel.process(anyString(), isNull())).thenReturn(tagExtraction);
+    when(tagModel.process(anyString(), isNull(), any())).thenReturn(tagExtraction);
     when(tagService.getById(1)).thenReturn(Mono.just(
       Tag.builder().id(1).name("Invoice").slug("invoice").color("#FF0000").textColor("#FFFFFF").build()
     ));
@@ -122,7 +133,7 @@ class DocumentMetadataExtractionServiceTest {
 
     // Mock correspondent extraction
     var correspondentExtraction = CorrespondentExtraction.builder().correspondentId(5).build();
-    when(correspondentModel.process(anyString(), isNull())).thenReturn(correspondentExtraction);
+    when(correspondentModel.process(anyString(), isNull(), any())).thenReturn(correspondentExtraction);
     when(correspondentService.getById(5)).thenReturn(Mono.just(
       Correspondent.builder().id(5).name("Company X").slug("company-x").build()
     ));
@@ -131,7 +142,7 @@ class DocumentMetadataExtractionServiceTest {
     var customFieldsExtraction = CustomFieldsExtraction.builder()
       .customFields(Map.of(1, "12345", 2, "1000.00"))
       .build();
-    when(customFieldModel.process(anyString(), isNull())).thenReturn(customFieldsExtraction);
+    when(customFieldModel.process(anyString(), isNull(), any())).thenReturn(customFieldsExtraction);
     when(customFieldsService.getById(1)).thenReturn(Mono.just(
       CustomField.builder().id(1).name("Invoice Number").dataType("string").build()
     ));
@@ -177,7 +188,7 @@ class DocumentMetadataExtractionServiceTest {
       .extraction(extraction)
       .build();
 
-    when(titleModel.process(anyString(), isNull()))
+    when(titleModel.process(anyString(), isNull(), any()))
       .thenReturn(new TitleExtraction("Test Title"));
 
     // Act & Assert
@@ -192,6 +203,41 @@ class DocumentMetadataExtractionServiceTest {
       .verifyComplete();
   }
 
+  @Test
+  @DisplayName("Should propagate transient AI errors to the stage retry")
+  void extractMetadata_transientAiError_propagatesError() throws IOException {
+    // Arrange
+    var document = Document.builder()
+      .id(123)
+      .content("Test content")
+      .build();
+
+    var extraction = PipelineConfiguration.ExtractionConfiguration.builder()
+      .title(true)
+      .createdDate(false)
+      .tags(false)
+      .correspondent(false)
+      .customFields(false)
+      .build();
+
+    var selector = PipelineConfiguration.SelectorConfiguration.builder()
+      .requiredTags(List.of("test"))
+      .build();
+    var pipeline = PipelineConfiguration.PipelineDefinition.builder()
+      .name("test-pipeline")
+      .selector(selector)
+      .extraction(extraction)
+      .build();
+
+    when(titleModel.process(anyString(), isNull(), any()))
+      .thenThrow(new TransientAiException("429 rate limited"));
+
+    // Act & Assert
+    StepVerifier.create(extractionService.extractMetadata(pipeline, document))
+      .expectError(TransientAiException.class)
+      .verify();
+  }
+
   @Test
   @DisplayName("Should handle null extraction results")
   void extractMetadata_nullResults_skipsNullFields() throws IOException {
@@ -220,8 +266,8 @@ class DocumentMetadataExtractionServiceTest {
       .build();
 
     // Return null results
-    when(titleModel.process(anyString(), isNull())).thenReturn(null);
-    when(createdDateModel.process(anyString(), isNull())).thenReturn(null);
+    when(titleModel.process(anyString(), isNull(), any())).thenReturn(null);
+    when(createdDateModel.process(anyString(), isNull(), any())).thenReturn(null);
 
     // Act & Assert
     StepVerifier.create(extractionService.extractMetadata(pipeline, document))
@@ -296,7 +342,7 @@ class DocumentMetadataExtractionServiceTest {
       .build();
 
     var tagExtraction = TagsExtraction.builder().tagIds(List.of(1, 999, 3)).build();
-    when(tagModel.process(anyString(), isNull())).thenReturn(tagExtraction);
+    when(tagModel.process(anyString(), isNull(), any())).thenReturn(tagExtraction);
     when(tagService.getById(1)).thenReturn(Mono.just(
       Tag.builder().id(1).name("Tag1").slug("tag1").color("#FF0000").textColor("#FFFFFF").build()
     ));
@@ -345,7 +391,7 @@ class DocumentMetadataExtractionServiceTest {
     var customFieldsExtraction = CustomFieldsExtraction.builder()
       .customFields(Map.of(1, "INV-12345", 2, "1000.00"))
       .build();
-    when(customFieldModel.process(anyString(), isNull())).thenReturn(customFieldsExtraction);
+    when(customFieldModel.process(anyString(), isNull(), any())).thenReturn(customFieldsExtraction);
     when(customFieldsService.getById(1)).thenReturn(Mono.just(
       CustomField.builder().id(1).name("Invoice Number").dataType("string").build()
     ));
@@ -393,7 +439,7 @@ class DocumentMetadataExtractionServiceTest {
       .extraction(extraction)
       .build();
 
-    when(titleModel.process(anyString(), eq("Custom title prompt")))
+    when(titleModel.process(anyString(), eq("Custom title prompt"), any()))
       .thenReturn(new TitleExtraction("Custom Title"));
 
     // Act & Assert
@@ -429,7 +475,7 @@ class DocumentMetadataExtractionServiceTest {
       .build();
 
     var emptyTagExtraction = TagsExtraction.builder().tagIds(List.of()).build();
-    when(tagModel.process(anyString(), isNull())).thenReturn(emptyTagExtraction);
+    when(tagModel.process(anyString(), isNull(), any())).thenReturn(emptyTagExtraction);
 
     // Act & Assert
     StepVerifier.create(extractionService.extractMetadata(pipeline, document))
@@ -466,7 +512,7 @@ class DocumentMetadataExtractionServiceTest {
       .extraction(extraction)
       .build();
 
-    when(correspondentModel.process(anyString(), isNull()))
+    when(correspondentModel.process(anyString(), isNull(), any()))
       .thenReturn(CorrespondentExtraction.builder().correspondentId(null).build());
 
     // Act & Assert
@@ -504,7 +550,7 @@ class DocumentMetadataExtractionServiceTest {
     var customFieldsExtraction = CustomFieldsExtraction.builder()
       .customFields(Map.of(1, "value1", 999, "value999", 3, "value3"))
       .build();
-    when(customFieldModel.process(anyString(), isNull())).thenReturn(customFieldsExtraction);
+    when(customFieldModel.process(anyString(), isNull(), any())).thenReturn(customFieldsExtraction);
     when(customFieldsService.getById(1)).thenReturn(Mono.just(
       CustomField.builder().id(1).name("Field1").dataType("string").build()
     ));
@@ -523,4 +569,91 @@ class DocumentMetadataExtractionServiceTest {
       })
       .verifyComplete();
   }
+
+  @Test
+  @DisplayName("Should extract all metadata with a single call in combined mode")
+  void extractMetadata_combined_usesSingleCall() throws IOException {
+    // Arrange
+    var document = Document.builder()
+      .id(123)
+      .content("Invoice from Company X dated 2025-01-15")
+      .build();
+
+    var extraction = PipelineConfiguration.ExtractionConfiguration.builder()
+      .combined(true)
+      .build();
+
+    var selector = PipelineConfiguration.SelectorConfiguration.builder()
+      .requiredTags(List.of("test"))
+      .build();
+    var pipeline = PipelineConfiguration.PipelineDefinition.builder()
+      .name("test-pipeline")
+      .selector(selector)
+      .extraction(extraction)
+      .build();
+
+    when(combinedModel.process(anyString(), eq(extraction))).thenReturn(CombinedExtraction.builder()
+      .title(new TitleExtraction("Invoice Company X 2025-01-15"))
+      .createdDate(CreatedDateExtraction.builder().createdDate(LocalDate.of(2025, 1, 15)).build())
+      .tags(TagsExtraction.builder().tagIds(List.of(1)).build())
+      .correspondent(CorrespondentExtraction.builder().correspondentId(5).build())
+      .customFields(CustomFieldsExtraction.builder().customFields(Map.of(2, "1000.00")).build())
+      .build());
+    when(tagService.getById(1)).thenReturn(Mono.just(
+      Tag.builder().id(1).name("Invoice").slug("invoice").build()
+    ));
+    when(correspondentService.getById(5)).thenReturn(Mono.just(
+      Correspondent.builder().id(5).name("Company X").slug("company-x").build()
+    ));
+    when(customFieldsService.getById(2)).thenReturn(Mono.just(
+      CustomField.builder().id(2).name("Amount").dataType("monetary").build()
+    ));
+
+    // Act & Assert
+    StepVerifier.create(extractionService.extractMetadata(pipeline, document))
+      .assertNext(result -> {
+        assertEquals("Invoice Company X 2025-01-15", result.getTitle());
+        assertEquals(LocalDate.of(2025, 1, 15), result.getCreatedDate());
+        assertEquals("Invoice", result.getTags().getFirst().getName());
+        assertEquals("Company X", result.getCorrespondent().getName());
+        assertEquals("1000.00", result.getCustomFields().getFirst().getValue());
+      })
+      .verifyComplete();
+
+    verify(combinedModel, times(1)).process(anyString(), eq(extraction));
+    verifyNoInteractions(titleModel, createdDateModel, tagModel, correspondentModel, customFieldModel);
+  }
+
+  @Test
+  @DisplayName("Should fail the extraction when the combined call fails")
+  void extractMetadata_combinedFails_propagatesError() throws IOException {
+    // Arrange
+    var document = Document.builder()
+      .id(123)
+      .title("Original")
+      .content("Test content")
+      .build();
+
+    var extraction = PipelineConfiguration.ExtractionConfiguration.builder()
+      .combined(true)
+      .build();
+
+    var selector = PipelineConfiguration.SelectorConfiguration.builder()
+      .requiredTags(List.of("test"))
+      .build();
+    var pipeline = PipelineConfiguration.PipelineDefinition.builder()
+      .name("test-pipeline")
+      .selector(selector)
+      .extraction(extraction)
+      .build();
+
+    when(combinedModel.process(anyString(), eq(extraction))).thenThrow(new IOException("invalid response"));
+
+    // Act & Assert
+    StepVerifier.create(extractionService.extractMetadata(pipeline, document))
+      .expectError(IOException.class)
+      .verify();
+
+    verify(combinedModel, times(1)).process(anyString(), eq(extraction));
+  }
 }
@@ -0,0 +1,176 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.integration.channel.PriorityChannel;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentQueueServiceTest {
+
+  private IdLockRegistryService<Integer> lockRegistry;
+  private PriorityChannel channel;
+  private DeadLetterStore deadLetterStore;
+  private InFlightDocumentLimiter inFlightDocumentLimiter;
+  private DocumentQueueService queueService;
+
+  @TempDir
+  Path storageDirectory;
+
+  @BeforeEach
+  void setUp() {
+    lockRegistry = new IdLockRegistryService<>();
+    channel = new PriorityChannel(3);
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .storage(PipelineConfiguration.StorageConfiguration.builder()
+        .directory(storageDirectory.toString())
+        .build())
+      .retry(PipelineConfiguration.RetryConfiguration.builder()
+        .deadLetterAfter(2)
+        .build())
+      .build();
+    var objectMapper = new ObjectMapper().findAndRegisterModules();
+    deadLetterStore = new DeadLetterStore(pipelineConfig, objectMapper);
+    inFlightDocumentLimiter = new InFlightDocumentLimiter(3, 1, 10);
+    queueService = new DocumentQueueService(lockRegistry, channel,
+      new DocumentJournal(pipelineConfig, objectMapper), deadLetterStore,
+      new LeaseHeartbeatService(pipelineConfig, lockRegistry), inFlightDocumentLimiter);
+  }
+
+  @Test
+  void shouldDequeueHigherPriorityPipelinesFirst() {
+    // Given
+    var backfill = pipeline("backfill", 0);
+    var interactive = pipeline("interactive", 10);
+
+    // When
+    queueService.enqueue(document(1), backfill);
+    queueService.enqueue(document(2), backfill);
+    queueService.enqueue(document(3), interactive);
+
+    // Then
+    assertThat(List.of(receiveId(), receiveId(), receiveId())).containsExactly(3, 1, 2);
+  }
+
+  @Test
+  void shouldKeepReservedSlotForHigherPriorityWhileLowPriorityPipelineIsBusy() {
+    // Given: a backfill pipeline holding all unreserved slots and queuing further documents
+    var backfill = pipeline("backfill", 0);
+    queueService.enqueue(document(1), backfill);
+    queueService.enqueue(document(2), backfill);
+    admitNext();
+    admitNext();
+    queueService.enqueue(document(3), backfill);
+
+    // Then: the reserved slot is not handed to the backfill pipeline
+    assertThat(inFlightDocumentLimiter.skipPoll()).isTrue();
+
+    // When: an interactive document arrives
+    queueService.enqueue(document(4), pipeline("interactive", 10));
+
+    // Then: it takes the reserved slot ahead of the queued backfill document
+    assertThat(inFlightDocumentLimiter.skipPoll()).isFalse();
+    assertThat(admitNext()).isEqualTo(4);
+    assertThat(inFlightDocumentLimiter.skipPoll()).isTrue();
+  }
+
+  @Test
+  void shouldUnlockDocumentWhenQueueIsFull() {
+    // Given
+    var pipeline = pipeline("backfill", 0);
+    queueService.enqueue(document(1), pipeline);
+    queueService.enqueue(document(2), pipeline);
+    queueService.enqueue(document(3), pipeline);
+
+    // When
+    var result = queueService.enqueue(document(4), pipeline);
+
+    // Then
+    assertThat(result).isEqualTo(DocumentQueueService.EnqueueResult.QUEUE_FULL);
+    assertThat(lockRegistry.isLocked(4)).isFalse();
+  }
+
+  @Test
+  void shouldSkipLockedDocuments() {
+    // Given
+    lockRegistry.tryLock(1);
+
+    // When
+    var result = queueService.enqueue(document(1), pipeline("backfill", 0));
+
+    // Then
+    assertThat(result).isEqualTo(DocumentQueueService.EnqueueResult.LOCKED);
+    assertThat(queueService.remainingCapacity()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldSkipDeadLetteredDocumentsUntilModified() {
+    // Given
+    var pipeline = pipeline("backfill", 0);
+    var failed = document(1).toBuilder().modified(OffsetDateTime.parse("2024-05-01T10:00:00Z")).build();
+    var error = new IllegalStateException("Encrypted PDF");
+    deadLetterStore.recordFailure(failed, "backfill", DeadLetterStore.Stage.OCR, error);
+    deadLetterStore.recordFailure(failed, "backfill", DeadLetterStore.Stage.OCR, error);
+
+    // When
+    var result = queueService.enqueue(failed, pipeline);
+    var otherPipelineResult = queueService.enqueue(failed, pipeline("interactive", 0));
+    // modified since the last failure, so it is only rejected by the lock of the previous enqueue
+    var modifiedResult = queueService.enqueue(
+      failed.toBuilder().modified(OffsetDateTime.parse("2024-05-02T10:00:00Z")).build(), pipeline);
+
+    // Then
+    assertThat(result).isEqualTo(DocumentQueueService.EnqueueResult.DEAD_LETTERED);
+    assertThat(otherPipelineResult).isEqualTo(DocumentQueueService.EnqueueResult.ENQUEUED);
+    assertThat(modifiedResult).isEqualTo(DocumentQueueService.EnqueueResult.LOCKED);
+    assertThat(deadLetterStore.deadLetters())
+      .singleElement()
+      .satisfies(deadLetter -> {
+        assertThat(deadLetter.failures()).isEqualTo(2);
+        assertThat(deadLetter.reason()).isEqualTo("IllegalStateException: Encrypted PDF");
+      });
+  }
+
+  /**
+   * Takes the next document like the intake poller does
+   */
+  private int admitNext() {
+    var message = channel.receive(0);
+    assertThat(message).isNotNull();
+    var id = ((Document) message.getPayload()).getId();
+    inFlightDocumentLimiter.admit(id, message.getHeaders().get("pipeline", PipelineConfiguration.PipelineDefinition.class).getPriority());
+    return id;
+  }
+
+  private int receiveId() {
+    var message = channel.receive(0);
+    assertThat(message).isNotNull();
+    return ((Document) message.getPayload()).getId();
+  }
+
+  private static Document document(int id) {
+    return Document.builder().id(id).build();
+  }
+
+  private static PipelineConfiguration.PipelineDefinition pipeline(String name, int priority) {
+    return PipelineConfiguration.PipelineDefinition.builder()
+      .name(name)
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .priority(priority)
+      .build();
+  }
+}
@@ -0,0 +1,58 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DocumentShardServiceTest {
+
+  private static final List<String> REPLICAS = List.of("ai-flow-0", "ai-flow-1");
+
+  @Test
+  void shouldOwnEveryDocumentWithoutSharding() {
+    // Given
+    var service = new DocumentShardService(pipelineConfig(null, List.of(), PipelineConfiguration.LockBackend.MEMORY));
+
+    // When & Then
+    assertThat(IntStream.range(0, 100).allMatch(service::owns)).isTrue();
+  }
+
+  @Test
+  void shouldSplitDocumentsBetweenReplicas() {
+    // Given
+    var first = new DocumentShardService(pipelineConfig("ai-flow-0", REPLICAS, PipelineConfiguration.LockBackend.FILE));
+    var second = new DocumentShardService(pipelineConfig("ai-flow-1", REPLICAS, PipelineConfiguration.LockBackend.FILE));
+
+    // When & Then
+    assertThat(IntStream.range(0, 100).allMatch(id -> first.owns(id) != second.owns(id))).isTrue();
+  }
+
+  @Test
+  void shouldRejectShardingWithoutSharedLeases() {
+    var pipelineConfig = pipelineConfig("ai-flow-0", REPLICAS, PipelineConfiguration.LockBackend.MEMORY);
+
+    assertThrows(IllegalStateException.class, () -> new DocumentShardService(pipelineConfig));
+  }
+
+  private static PipelineConfiguration pipelineConfig(String replica, List<String> replicas, PipelineConfiguration.LockBackend backend) {
+    return PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .locks(PipelineConfiguration.LockConfiguration.builder()
+        .backend(backend)
+        .directory("/shared/paperless-locks")
+        .build())
+      .sharding(PipelineConfiguration.ShardingConfiguration.builder()
+        .replica(replica)
+        .replicas(replicas)
+        .build())
+      .build();
+  }
+}
@@ -0,0 +1,81 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.services.DocumentService;
+import consulting.erhardt.paperless_ai_flow.services.DocumentWebhookService.WebhookResult;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DocumentWebhookServiceTest {
+
+  private final DocumentService documentService = mock(DocumentService.class);
+  private final DocumentQueueService documentQueueService = mock(DocumentQueueService.class);
+
+  @Test
+  void shouldEnqueueIntoWebhookOnlyPipelineWithPollingDisabled() {
+    // Given
+    var webhookOnly = PipelineConfiguration.PipelineDefinition.builder()
+      .name("webhook_only")
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .polling(PipelineConfiguration.PollingConfiguration.builder()
+        .enabled(false)
+        .build())
+      .build();
+    var service = new DocumentWebhookService(pipelineConfig(webhookOnly), documentService, documentQueueService);
+    var document = Document.builder()
+      .id(42)
+      .tags(List.of(Tag.builder().id(1).name("INPUT").build()))
+      .build();
+    when(documentService.getById(42)).thenReturn(Mono.just(document));
+    when(documentQueueService.enqueue(document, webhookOnly)).thenReturn(DocumentQueueService.EnqueueResult.ENQUEUED);
+
+    // When & Then
+    StepVerifier.create(service.handleDocument(42))
+      .expectNext(WebhookResult.ENQUEUED)
+      .verifyComplete();
+    verify(documentQueueService).enqueue(document, webhookOnly);
+  }
+
+  @Test
+  void shouldNotEnqueueDocumentsWithoutRequiredTags() {
+    // Given
+    var pipeline = PipelineConfiguration.PipelineDefinition.builder()
+      .name("invoices")
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT", "INVOICE"))
+        .build())
+      .build();
+    var service = new DocumentWebhookService(pipelineConfig(pipeline), documentService, documentQueueService);
+    var document = Document.builder()
+      .id(7)
+      .tags(List.of(Tag.builder().id(1).name("INPUT").build()))
+      .build();
+    when(documentService.getById(7)).thenReturn(Mono.just(document));
+
+    // When & Then
+    StepVerifier.create(service.handleDocument(7))
+      .expectNext(WebhookResult.NO_MATCHING_PIPELINE)
+      .verifyComplete();
+    verify(documentQueueService, never()).enqueue(any(), any());
+  }
+
+  private static PipelineConfiguration pipelineConfig(PipelineConfiguration.PipelineDefinition pipeline) {
+    return PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .pipelines(List.of(pipeline))
+      .build();
+  }
+}
@@ -0,0 +1,144 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ExtractionCheckpointStore covering keys, persistence and removal after saving.
+ */
+class ExtractionCheckpointStoreTest {
+
+  @TempDir
+  Path storageDirectory;
+
+  private static final OffsetDateTime MODIFIED = OffsetDateTime.of(2024, 1, 31, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+  @Test
+  @DisplayName("Should return the checkpointed OCR text and extraction result after a restart")
+  void get_afterRestart_returnsCheckpoint() {
+    // Arrange
+    var pipeline = pipeline("invoices", true);
+    var document = document(1);
+    var extracted = document.toBuilder()
+      .content("Total 42.00 EUR")
+      .title("Invoice")
+      .createdDate(LocalDate.of(2024, 1, 31))
+      .tags(List.of(Tag.builder().id(5).name("INVOICE").build()))
+      .build();
+    var checkpoint = new ExtractionCheckpointStore.Checkpoint("Total 42.00 EUR", extracted);
+
+    var store = createStore(true);
+    var key = store.checkpointKey(pipeline, document);
+    store.put(key, checkpoint).block();
+    store.close();
+
+    // Act & Assert
+    StepVerifier.create(createStore(true).get(key))
+      .expectNext(checkpoint)
+      .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Should use the same key before and after OCR and a new key when the document or the settings change")
+  void checkpointKey_changesWithDocumentVersionAndSettings() {
+    // Arrange
+    var store = createStore(true);
+    var document = document(1);
+
+    // Act
+    var key = store.checkpointKey(pipeline("invoices", true), document);
+
+    // Assert
+    assertThat(store.checkpointKey(pipeline("invoices", true), document.toBuilder().content("Total 42.00 EUR").build()))
+      .isEqualTo(key);
+    assertThat(store.checkpointKey(pipeline("invoices", true), document.toBuilder().modified(MODIFIED.plusMinutes(1)).build()))
+      .isNotEqualTo(key);
+    assertThat(store.checkpointKey(pipeline("invoices", false), document)).isNotEqualTo(key);
+    assertThat(store.checkpointKey(pipeline("letters", true), document)).isNotEqualTo(key);
+  }
+
+  @Test
+  @DisplayName("Should drop all checkpoints of a saved document only")
+  void remove_dropsCheckpointsOfDocument() {
+    // Arrange
+    var store = createStore(true);
+    var first = new ExtractionCheckpointStore.Checkpoint("first", document(1));
+    var other = new ExtractionCheckpointStore.Checkpoint("other", document(12));
+    var firstKey = store.checkpointKey(pipeline("invoices", true), first.extracted());
+    var otherKey = store.checkpointKey(pipeline("invoices", true), other.extracted());
+    store.put(firstKey, first).block();
+    store.put(otherKey, other).block();
+
+    // Act
+    store.remove(1).block();
+
+    // Assert
+    StepVerifier.create(store.get(firstKey)).verifyComplete();
+    StepVerifier.create(store.get(otherKey)).expectNext(other).verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Should neither store nor return checkpoints when disabled")
+  void disabled_isNoOp() {
+    // Arrange
+    var store = createStore(false);
+    var document = document(1);
+    var key = store.checkpointKey(pipeline("invoices", true), document);
+
+    // Act
+    store.put(key, new ExtractionCheckpointStore.Checkpoint("text", document)).block();
+
+    // Assert
+    StepVerifier.create(store.get(key)).verifyComplete();
+    assertThat(storageDirectory.resolve("extraction-checkpoints")).doesNotExist();
+  }
+
+  private ExtractionCheckpointStore createStore(boolean enabled) {
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .storage(PipelineConfiguration.StorageConfiguration.builder()
+        .directory(storageDirectory.toString())
+        .checkpoints(PipelineConfiguration.CheckpointConfiguration.builder()
+          .enabled(enabled)
+          .build())
+        .build())
+      .build();
+
+    return new ExtractionCheckpointStore(pipelineConfig, objectMapper);
+  }
+
+  private static Document document(int id) {
+    return Document.builder().id(id).modified(MODIFIED).build();
+  }
+
+  private PipelineConfiguration.PipelineDefinition pipeline(String name, boolean extractTags) {
+    return PipelineConfiguration.PipelineDefinition.builder()
+      .name(name)
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .extraction(PipelineConfiguration.ExtractionConfiguration.builder()
+        .tags(extractTags)
+        .build())
+      .build();
+  }
+}
@@ -3,6 +3,12 @@ package consulting.erhardt.paperless_ai_flow.services;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class IdLockRegistryServiceTest {
@@ -135,4 +141,92 @@ class IdLockRegistryServiceTest {
             idLockRegistryService.unlock(documentId);
         }
     }
+
+    @Test
+    void shouldExpireUnrenewedLeaseAndLetNextOwnerTakeOver() {
+        // Given
+        var clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+        var registry = new IdLockRegistryService<Integer>(Duration.ofMinutes(10), clock);
+        var firstToken = registry.tryAcquire(1).orElseThrow();
+
+        // When
+        clock.advance(Duration.ofMinutes(10));
+        var secondToken = registry.tryAcquire(1);
+
+        // Then
+        assertThat(secondToken).isPresent().get().isNotEqualTo(firstToken);
+        assertThat(registry.renew(1, firstToken)).isFalse();
+        assertThat(registry.release(1, firstToken)).isFalse();
+        assertThat(registry.isLocked(1)).isTrue();
+        assertThat(registry.stats().expired()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepRenewedLeaseAlive() {
+        // Given
+        var clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+        var registry = new IdLockRegistryService<Integer>(Duration.ofMinutes(10), clock);
+        var token = registry.tryAcquire(1).orElseThrow();
+
+        // When
+        clock.advance(Duration.ofMinutes(8));
+        var renewed = registry.renew(1, token);
+        clock.advance(Duration.ofMinutes(8));
+
+        // Then
+        assertThat(renewed).isTrue();
+        assertThat(registry.isLocked(1)).isTrue();
+        assertThat(registry.tryLock(1)).isFalse();
+        assertThat(registry.reapExpired()).isEmpty();
+    }
+
+    @Test
+    void shouldReapExpiredLeasesAndTrackHoldTimes() {
+        // Given
+        var clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+        var registry = new IdLockRegistryService<Integer>(Duration.ofMinutes(10), clock);
+        var token = registry.tryAcquire(1).orElseThrow();
+        registry.tryAcquire(2);
+
+        clock.advance(Duration.ofMinutes(4));
+        registry.release(1, token);
+
+        // When
+        clock.advance(Duration.ofMinutes(10));
+        var reaped = registry.reapExpired();
+
+        // Then
+        assertThat(reaped).containsExactly(2);
+        assertThat(registry.isLocked(2)).isFalse();
+        assertThat(registry.stats()).isEqualTo(new IdLockRegistryService.LockStats(
+            0, 2, 1, 1, Duration.ofMinutes(4), Duration.ofMinutes(4)));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 }
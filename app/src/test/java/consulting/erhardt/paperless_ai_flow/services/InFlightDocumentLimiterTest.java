@@ -0,0 +1,77 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InFlightDocumentLimiterTest {
+
+  @Test
+  void shouldSkipPollsOnceLimitIsReached() {
+    // Given
+    var limiter = new InFlightDocumentLimiter(2);
+
+    // When
+    limiter.admit(1);
+    limiter.admit(2);
+
+    // Then
+    assertThat(limiter.skipPoll()).isTrue();
+  }
+
+  @Test
+  void shouldResumePollingAfterRelease() {
+    // Given
+    var limiter = new InFlightDocumentLimiter(1);
+    limiter.admit(1);
+
+    // When
+    limiter.release(1);
+
+    // Then
+    assertThat(limiter.skipPoll()).isFalse();
+    assertThat(limiter.inFlightCount()).isZero();
+  }
+
+  @Test
+  void shouldIgnoreReleaseOfUnknownDocument() {
+    // Given
+    var limiter = new InFlightDocumentLimiter(1);
+    limiter.admit(1);
+
+    // When
+    limiter.release(2);
+
+    // Then
+    assertThat(limiter.inFlightCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldKeepReservedSlotsForHighestPriority() {
+    // Given
+    var limiter = new InFlightDocumentLimiter(2, 1, 10);
+    limiter.queued(0);
+    limiter.admit(1, 0);
+    limiter.queued(0);
+
+    // When & Then
+    assertThat(limiter.skipPoll()).isTrue();
+
+    // When
+    limiter.queued(10);
+
+    // Then
+    assertThat(limiter.skipPoll()).isFalse();
+  }
+
+  @Test
+  void shouldRejectReservingAllSlots() {
+    assertThrows(IllegalArgumentException.class, () -> new InFlightDocumentLimiter(2, 2, 10));
+  }
+
+  @Test
+  void shouldRejectLimitBelowOne() {
+    assertThrows(IllegalArgumentException.class, () -> new InFlightDocumentLimiter(0));
+  }
+}
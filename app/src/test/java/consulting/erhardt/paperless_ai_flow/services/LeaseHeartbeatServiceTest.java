@@ -0,0 +1,86 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class LeaseHeartbeatServiceTest {
+
+  private static final Duration TTL = Duration.ofMillis(300);
+
+  private IdLockRegistryService<Integer> lockRegistry;
+  private LeaseHeartbeatService heartbeatService;
+
+  @BeforeEach
+  void setUp() {
+    lockRegistry = new IdLockRegistryService<>(TTL, Clock.systemUTC());
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .locks(PipelineConfiguration.LockConfiguration.builder()
+        .ttl(TTL)
+        .build())
+      .build();
+    heartbeatService = new LeaseHeartbeatService(pipelineConfig, lockRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    heartbeatService.stopAll();
+  }
+
+  @Test
+  void shouldKeepLeaseAliveWhileWaitingUntilStopped() throws InterruptedException {
+    // Given
+    var token = lockRegistry.tryAcquire(1).orElseThrow();
+
+    // When
+    heartbeatService.start(1, token);
+    Thread.sleep(TTL.multipliedBy(3).toMillis());
+
+    // Then
+    assertThat(lockRegistry.isLocked(1)).isTrue();
+
+    // When
+    heartbeatService.stop(1, token);
+
+    // Then
+    await().atMost(Duration.ofSeconds(2)).until(() -> !lockRegistry.isLocked(1));
+    assertThat(heartbeatService.activeCount()).isZero();
+  }
+
+  @Test
+  void shouldStopRenewingLostLeases() {
+    // Given
+    var token = lockRegistry.tryAcquire(1).orElseThrow();
+    heartbeatService.start(1, token);
+
+    // When
+    lockRegistry.release(1, token);
+
+    // Then
+    await().atMost(Duration.ofSeconds(2)).until(() -> heartbeatService.activeCount() == 0);
+  }
+
+  @Test
+  void shouldKeepHeartbeatOfNewOwnerWhenStoppingOldToken() {
+    // Given
+    heartbeatService.start(1, "old");
+    heartbeatService.start(1, "new");
+
+    // When
+    heartbeatService.stop(1, "old");
+
+    // Then
+    assertThat(heartbeatService.activeCount()).isEqualTo(1);
+  }
+}
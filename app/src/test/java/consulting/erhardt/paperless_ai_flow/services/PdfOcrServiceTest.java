@@ -0,0 +1,314 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.ai.PromptRegistry;
+import consulting.erhardt.paperless_ai_flow.AbstractServiceTest;
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import consulting.erhardt.paperless_ai_flow.utils.ConcurrencyLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PdfOcrService using the bundled five page PDF and a mocked OCR client.
+ */
+class PdfOcrServiceTest extends AbstractServiceTest {
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  @TempDir
+  Path storageDirectory;
+
+  private PdfOcrService pdfOcrService;
+
+  @BeforeEach
+  void setUp() {
+    pdfOcrService = createService(false);
+
+    var pdfBytes = createPdf("First page", "Second page", "Third page", "Fourth page", "Fifth page");
+    lenient().when(documentService.downloadById(any())).thenReturn(Mono.just(pdfBytes));
+  }
+
+  @Test
+  @DisplayName("Should keep page order when pages are OCRed concurrently")
+  void processDocument_concurrentPages_keepsPageOrder() {
+    // Arrange
+    var pipeline = pipeline(3);
+    var document = Document.builder().id(1).build();
+    stubSlowOcr(true);
+
+    // Act & Assert
+    StepVerifier.create(pdfOcrService.processDocument(document, pipeline))
+      .assertNext(result -> {
+        var headers = result.lines()
+          .filter(line -> line.startsWith("# Page"))
+          .toList();
+
+        assertThat(headers).containsExactly("# Page 1", "# Page 2", "# Page 3", "# Page 4", "# Page 5");
+      })
+      .verifyComplete();
+
+    assertThat(maxRunning.get()).isBetween(2, 3);
+  }
+
+  @Test
+  @DisplayName("Should OCR pages one by one when page concurrency is 1")
+  void processDocument_pageConcurrencyOne_processesSequentially() {
+    // Arrange
+    var pipeline = pipeline(1);
+    var document = Document.builder().id(2).build();
+    stubSlowOcr();
+
+    // Act & Assert
+    StepVerifier.create(pdfOcrService.processDocument(document, pipeline))
+      .assertNext(result -> assertThat(result).startsWith("# Page 1"))
+      .verifyComplete();
+
+    assertThat(maxRunning.get()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should stop rendering further pages once a page fails")
+  void processDocument_failingPage_stopsStream() {
+    // Arrange
+    var pipeline = pipeline(1);
+    var document = Document.builder().id(3).build();
+    var calls = new AtomicInteger();
+
+    when(ocrClient.extractText(any(), any())).thenAnswer(invocation -> calls.incrementAndGet() == 2
+      ? Mono.error(new IllegalStateException("OCR failed"))
+      : Mono.just("page text"));
+
+    // Act & Assert
+    StepVerifier.create(pdfOcrService.processDocument(document, pipeline))
+      .expectError(IllegalStateException.class)
+      .verify();
+
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Should use the embedded text layer and skip the OCR model in auto mode")
+  void processDocument_autoWithTextLayer_skipsOcrModel() {
+    // Arrange
+    var pipeline = pipeline(2, PipelineConfiguration.OcrStrategy.AUTO, 5);
+    var document = Document.builder().id(4).build();
+
+    // Act & Assert
+    StepVerifier.create(pdfOcrService.processDocument(document, pipeline))
+      .assertNext(result -> assertThat(result)
+        .startsWith("# Page 1")
+        .contains("First page", "Fifth page"))
+      .verifyComplete();
+
+    verifyNoInteractions(ocrClient);
+  }
+
+  @Test
+  @DisplayName("Should fall back to the OCR model for pages with an insufficient text layer in auto mode")
+  void processDocument_autoWithShortTextLayer_fallsBackToOcrModel() {
+    // Arrange
+    var pipeline = pipeline(2, PipelineConfiguration.OcrStrategy.AUTO, 100);
+    var document = Document.builder().id(5).build();
+    when(ocrClient.extractText(any(), any())).thenReturn(Mono.just("vision text"));
+
+    // Act & Assert
+    StepVerifier.create(pdfOcrService.processDocument(document, pipeline))
+      .assertNext(result -> assertThat(result).contains("vision text").doesNotContain("First page"))
+      .verifyComplete();
+
+    verify(ocrClient, times(5)).extractText(any(), any());
+  }
+
+  @Test
+  @DisplayName("Should serve a re-run of an unchanged document from the OCR cache")
+  void processDocument_cachedResult_skipsOcrModel() {
+    // Arrange
+    var service = createService(true);
+    var pipeline = pipeline(2);
+    var document = Document.builder().id(6).build();
+    when(ocrClient.extractText(any(), any())).thenReturn(Mono.just("page text"));
+
+    var first = service.processDocument(document, pipeline).block();
+
+    // Act & Assert
+    StepVerifier.create(service.processDocument(document, pipeline))
+      .assertNext(result -> assertThat(result).isEqualTo(first))
+      .verifyComplete();
+
+    verify(ocrClient, times(5)).extractText(any(), any());
+  }
+
+  @Test
+  @DisplayName("Should only OCR the missing pages when retrying a partially failed document")
+  void processDocument_retryAfterFailedPage_resumesFromFailedPage() {
+    // Arrange
+    var service = createService(true);
+    var pipeline = pipeline(1);
+    var document = Document.builder().id(7).build();
+    var calls = new AtomicInteger();
+
+    when(ocrClient.extractText(any(), any())).thenAnswer(invocation -> calls.incrementAndGet() == 3
+      ? Mono.error(new IllegalStateException("OCR failed"))
+      : Mono.just("text " + calls.get()));
+
+    StepVerifier.create(service.processDocument(document, pipeline))
+      .expectError(IllegalStateException.class)
+      .verify();
+
+    // Act & Assert
+    StepVerifier.create(service.processDocument(document, pipeline))
+      .assertNext(result -> assertThat(result)
+        .contains("# Page 1\n\ntext 1", "# Page 2\n\ntext 2", "# Page 3\n\ntext 4", "# Page 5\n\ntext 6"))
+      .verifyComplete();
+
+    assertThat(calls.get()).isEqualTo(6);
+  }
+
+  @Test
+  @DisplayName("Should accept readable text layers and reject short or garbled ones")
+  void isUsableTextLayer_checksLengthAndGlyphRatio() {
+    var config = PipelineConfiguration.TextLayerConfiguration.builder()
+      .minCharacters(10)
+      .minGlyphRatio(0.9)
+      .build();
+
+    assertThat(PdfOcrService.isUsableTextLayer("Invoice 2024-01-31, total: 42.00 EUR", config)).isTrue();
+    assertThat(PdfOcrService.isUsableTextLayer("Invoice", config)).isFalse();
+    assertThat(PdfOcrService.isUsableTextLayer("\uFFFD\uFFFD\uE000\uE001 Invoice total", config)).isFalse();
+    assertThat(PdfOcrService.isUsableTextLayer("   ", config)).isFalse();
+  }
+
+  private PdfOcrService createService(boolean cacheEnabled) {
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .storage(PipelineConfiguration.StorageConfiguration.builder()
+        .directory(storageDirectory.toString())
+        .ocrCache(PipelineConfiguration.OcrCacheConfiguration.builder()
+          .enabled(cacheEnabled)
+          .build())
+        .build())
+      .build();
+
+    return new PdfOcrService(documentService, ocrClient, new OcrResultCache(pipelineConfig, new PromptRegistry()),
+      new ConcurrencyLimiter("ocr-pages", 8), new Semaphore(4), Schedulers.boundedElastic());
+  }
+
+  private void stubSlowOcr() {
+    stubSlowOcr(false);
+  }
+
+  private void stubSlowOcr(boolean awaitSecondPage) {
+    // later calls finish first, so the result order is only correct if it is restored explicitly
+    var calls = new AtomicInteger();
+    // rendering may take longer than the OCR stub, so the first page waits for the second one to overlap with it
+    var secondPage = Sinks.<Void>empty();
+    when(ocrClient.extractText(any(), any())).thenAnswer(invocation -> Mono.defer(() -> {
+        var call = calls.getAndIncrement();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        if (call == 1) {
+          secondPage.tryEmitEmpty();
+        }
+
+        var overlap = awaitSecondPage && call == 0
+          ? secondPage.asMono().timeout(Duration.ofSeconds(5), Mono.empty())
+          : Mono.<Void>empty();
+        return overlap
+          .then(Mono.delay(Duration.ofMillis(200L - 40L * call)))
+          .thenReturn("page text")
+          .doOnTerminate(running::decrementAndGet);
+      })
+    );
+  }
+
+  private PipelineConfiguration.PipelineDefinition pipeline(int pageConcurrency) {
+    return pipeline(pageConcurrency, PipelineConfiguration.OcrStrategy.VISION, 50);
+  }
+
+  private PipelineConfiguration.PipelineDefinition pipeline(
+    int pageConcurrency,
+    PipelineConfiguration.OcrStrategy strategy,
+    int minCharacters
+  ) {
+    return PipelineConfiguration.PipelineDefinition.builder()
+      .name("test")
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .ocr(PipelineConfiguration.OcrConfiguration.builder()
+        .pageConcurrency(pageConcurrency)
+        .strategy(strategy)
+        .textLayer(PipelineConfiguration.TextLayerConfiguration.builder()
+          .minCharacters(minCharacters)
+          .build())
+        .build())
+      .build();
+  }
+
+  /**
+   * Builds a minimal PDF with one Helvetica text line per page
+   */
+  static byte[] createPdf(String... pageTexts) {
+    var objects = new ArrayList<String>();
+    var pageCount = pageTexts.length;
+    var fontId = 3 + 2 * pageCount;
+
+    var kids = new StringBuilder();
+    for (var i = 0; i < pageCount; i++) {
+      kids.append(3 + 2 * i).append(" 0 R ");
+    }
+
+    objects.add("<< /Type /Catalog /Pages 2 0 R >>");
+    objects.add("<< /Type /Pages /Kids [" + kids.toString().trim() + "] /Count " + pageCount + " >>");
+    for (var i = 0; i < pageCount; i++) {
+      var stream = "BT /F1 24 Tf 72 720 Td (" + pageTexts[i] + ") Tj ET";
+      objects.add("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] /Contents " + (4 + 2 * i)
+        + " 0 R /Resources << /Font << /F1 " + fontId + " 0 R >> >> >>");
+      objects.add("<< /Length " + stream.length() + " >>\nstream\n" + stream + "\nendstream");
+    }
+    objects.add("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>");
+
+    var out = new ByteArrayOutputStream();
+    var offsets = new ArrayList<Integer>();
+    write(out, "%PDF-1.4\n");
+    for (var i = 0; i < objects.size(); i++) {
+      offsets.add(out.size());
+      write(out, (i + 1) + " 0 obj\n" + objects.get(i) + "\nendobj\n");
+    }
+
+    var xrefOffset = out.size();
+    write(out, "xref\n0 " + (objects.size() + 1) + "\n0000000000 65535 f \n");
+    for (var offset : offsets) {
+      write(out, String.format("%010d 00000 n \n", offset));
+    }
+    write(out, "trailer\n<< /Size " + (objects.size() + 1) + " /Root 1 0 R >>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+
+    return out.toByteArray();
+  }
+
+  private static void write(ByteArrayOutputStream out, String text) {
+    out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+  }
+}
@@ -0,0 +1,120 @@
+package consulting.erhardt.paperless_ai_flow.services;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PollingWatermarkServiceTest {
+
+  private static final OffsetDateTime T1 = OffsetDateTime.parse("2024-05-01T10:00:00Z");
+  private static final OffsetDateTime T2 = OffsetDateTime.parse("2024-05-01T11:00:00Z");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void shouldPersistWatermarkAcrossRestarts() {
+    // Given
+    var file = directory.resolve("watermarks.properties");
+    var service = new PollingWatermarkService(file, Clock.systemUTC());
+
+    // When
+    service.advance("invoices", T2);
+    service.advance("invoices", T1);
+
+    // Then
+    var restarted = new PollingWatermarkService(file, Clock.systemUTC());
+    assertThat(restarted.getWatermark("invoices")).contains(T2);
+    assertThat(restarted.getWatermark("receipts")).isEmpty();
+  }
+
+  @Test
+  void shouldRequireFullSweepOnStartAndAfterInterval() {
+    // Given
+    var clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+    var service = new PollingWatermarkService(directory.resolve("watermarks.properties"), clock);
+    var pipeline = pipeline(Duration.ofMinutes(10));
+
+    // When / Then
+    assertThat(service.isFullSweepDue(pipeline)).isTrue();
+
+    service.markFullSweep(pipeline.getName());
+    clock.advance(Duration.ofMinutes(9));
+    assertThat(service.isFullSweepDue(pipeline)).isFalse();
+
+    clock.advance(Duration.ofMinutes(1));
+    assertThat(service.isFullSweepDue(pipeline)).isTrue();
+  }
+
+  @Test
+  void trackerShouldKeepTiedTimestampsWhenListingWasCutShort() {
+    // Given
+    var tracker = new PollingWatermarkService.Tracker();
+
+    // When
+    tracker.record(document(1, T1));
+    tracker.record(document(2, T2));
+    tracker.record(document(3, T2));
+    tracker.record(document(4, null));
+
+    // Then
+    assertThat(tracker.safeWatermark(true)).contains(T2);
+    assertThat(tracker.safeWatermark(false)).contains(T1);
+  }
+
+  private static Document document(int id, OffsetDateTime modified) {
+    return Document.builder().id(id).modified(modified).build();
+  }
+
+  private static PipelineConfiguration.PipelineDefinition pipeline(Duration fullSweepInterval) {
+    return PipelineConfiguration.PipelineDefinition.builder()
+      .name("invoices")
+      .selector(PipelineConfiguration.SelectorConfiguration.builder()
+        .requiredTags(List.of("INPUT"))
+        .build())
+      .polling(PipelineConfiguration.PollingConfiguration.builder()
+        .fullSweepInterval(fullSweepInterval)
+        .build())
+      .build();
+  }
+
+  private static final class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import consulting.erhardt.paperless_ai_flow.services.IdLockRegistryService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for FileLeaseBackend covering compare-and-set semantics and leases shared between registries.
+ */
+class FileLeaseBackendTest {
+
+  private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Should only create, replace and remove leases matching the expected state")
+  void compareAndSet_respectsCurrentLease() {
+    // Arrange
+    var backend = new FileLeaseBackend<>(directory, Integer::valueOf);
+    var first = new Lease("first", NOW, NOW.plusSeconds(60));
+    var second = new Lease("second", NOW, null);
+
+    // Act & Assert
+    assertThat(backend.create(1, first)).isTrue();
+    assertThat(backend.create(1, second)).isFalse();
+    assertThat(backend.get(1)).contains(first);
+
+    assertThat(backend.replace(1, second, first)).isFalse();
+    assertThat(backend.replace(1, first, second)).isTrue();
+    assertThat(backend.get(1)).contains(second);
+
+    assertThat(backend.remove(1, first)).isFalse();
+    assertThat(backend.remove(1, second)).isTrue();
+    assertThat(backend.get(1)).isEmpty();
+    assertThat(backend.replace(1, second, first)).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should list leased ids and ignore foreign files")
+  void ids_listsLeaseFiles() throws Exception {
+    // Arrange
+    var backend = new FileLeaseBackend<>(directory, Integer::valueOf);
+    backend.create(1, new Lease("a", NOW, null));
+    backend.create(22, new Lease("b", NOW, null));
+    Files.writeString(directory.resolve("notes.lease"), "foreign");
+
+    // Act & Assert
+    assertThat(backend.ids()).containsExactlyInAnyOrder(1, 22);
+  }
+
+  @Test
+  @DisplayName("Should grant a document to exactly one of several replicas sharing the lease directory")
+  void registries_sharingDirectory_grantLeaseOnce() throws Exception {
+    // Arrange
+    var replicas = IntStream.range(0, 4)
+      .mapToObj(i -> new IdLockRegistryService<>(new FileLeaseBackend<>(directory, Integer::valueOf),
+        Duration.ofMinutes(10), Clock.systemUTC()))
+      .toList();
+
+    try (var executor = Executors.newFixedThreadPool(replicas.size())) {
+      var attempts = replicas.stream()
+        .<Callable<Boolean>>map(replica -> () -> replica.tryLock(7))
+        .toList();
+
+      // Act
+      var granted = executor.invokeAll(attempts).stream()
+        .filter(future -> future.resultNow())
+        .count();
+
+      // Assert
+      assertThat(granted).isEqualTo(1);
+      assertThat(replicas).allSatisfy(replica -> assertThat(replica.isLocked(7)).isTrue());
+    }
+  }
+
+  @Test
+  @DisplayName("Should let another replica take over an expired lease and keep the stale owner from releasing it")
+  void registries_expiredLease_takenOverByOtherReplica() {
+    // Arrange
+    var staleClock = Clock.fixed(NOW, ZoneOffset.UTC);
+    var laterClock = Clock.fixed(NOW.plus(Duration.ofMinutes(11)), ZoneOffset.UTC);
+    var first = new IdLockRegistryService<>(new FileLeaseBackend<>(directory, Integer::valueOf), Duration.ofMinutes(10), staleClock);
+    var second = new IdLockRegistryService<>(new FileLeaseBackend<>(directory, Integer::valueOf), Duration.ofMinutes(10), laterClock);
+    var staleToken = first.tryAcquire(7).orElseThrow();
+
+    // Act
+    var takenOver = second.tryAcquire(7);
+
+    // Assert
+    assertThat(takenOver).isPresent();
+    assertThat(first.release(7, staleToken)).isFalse();
+    assertThat(second.isLocked(7)).isTrue();
+  }
+}
@@ -0,0 +1,112 @@
+package consulting.erhardt.paperless_ai_flow.storage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for SegmentedLogStore covering persistence, recovery, eviction and compaction.
+ */
+class SegmentedLogStoreTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Should return the latest value of a key after reopening the store")
+  void reopen_keepsLatestValues() {
+    // Arrange
+    try (var store = new SegmentedLogStore(directory, 1024, 0)) {
+      store.putString("a", "first");
+      store.putString("b", "other");
+      store.putString("a", "second");
+      store.remove("b");
+    }
+
+    // Act
+    try (var store = new SegmentedLogStore(directory, 1024, 0)) {
+      // Assert
+      assertThat(store.getString("a")).contains("second");
+      assertThat(store.getString("b")).isEmpty();
+      assertThat(store.keys()).containsExactly("a");
+    }
+  }
+
+  @Test
+  @DisplayName("Should evict the oldest segments once the size limit is exceeded")
+  void put_beyondMaxSize_evictsOldestSegments() {
+    // Arrange
+    var value = "x".repeat(100);
+
+    try (var store = new SegmentedLogStore(directory, 256, 600)) {
+      // Act
+      for (var i = 0; i < 20; i++) {
+        store.putString("key-" + i, value);
+      }
+
+      // Assert
+      assertThat(store.sizeInBytes()).isLessThanOrEqualTo(600);
+      assertThat(store.getString("key-0")).isEmpty();
+      assertThat(store.getString("key-19")).contains(value);
+    }
+  }
+
+  @Test
+  @DisplayName("Should drop a torn record at the end of a segment during recovery")
+  void reopen_tornRecord_isTruncated() throws IOException {
+    // Arrange
+    try (var store = new SegmentedLogStore(directory, 1024, 0)) {
+      store.putString("complete", "value");
+    }
+
+    try (var files = Files.list(directory)) {
+      var segment = files.findFirst().orElseThrow();
+      Files.write(segment, new byte[]{0, 0, 0, 8, 0, 0, 0, 5, 'b', 'r'}, StandardOpenOption.APPEND);
+    }
+
+    // Act
+    try (var store = new SegmentedLogStore(directory, 1024, 0)) {
+      store.putString("next", "value");
+
+      // Assert
+      assertThat(store.keys()).containsExactlyInAnyOrder("complete", "next");
+    }
+
+    try (var store = new SegmentedLogStore(directory, 1024, 0)) {
+      assertThat(store.getString("next")).contains("value");
+    }
+  }
+
+  @Test
+  @DisplayName("Should compact overwritten and deleted records of an unbounded store")
+  void put_overwritingKeys_compactsSealedSegments() {
+    // Arrange
+    var value = "x".repeat(100);
+
+    try (var store = new SegmentedLogStore(directory, 256, 0)) {
+      // Act
+      for (var i = 0; i < 50; i++) {
+        store.putString("key-" + (i % 3), value + i);
+      }
+      store.remove("key-2");
+
+      // Assert
+      assertThat(store.sizeInBytes()).isLessThan(2_000);
+      assertThat(store.getString("key-0")).contains(value + 48);
+      assertThat(store.getString("key-1")).contains(value + 49);
+      assertThat(store.getString("key-2")).isEmpty();
+    }
+
+    try (var store = new SegmentedLogStore(directory, 256, 0)) {
+      assertThat(store.keys()).containsExactlyInAnyOrder("key-0", "key-1");
+      assertThat(store.getString("key-1")).contains(value + 49);
+    }
+  }
+}
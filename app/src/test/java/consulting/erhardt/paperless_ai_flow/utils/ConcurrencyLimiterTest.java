@@ -0,0 +1,84 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for ConcurrencyLimiter verifying permit accounting.
+ */
+class ConcurrencyLimiterTest {
+
+  @Test
+  @DisplayName("Should never run more sources than permits concurrently")
+  void limit_manySources_respectsPermits() {
+    // Arrange
+    var limiter = new ConcurrencyLimiter("test", 2);
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+
+    var source = Mono.defer(() -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      return Mono.delay(Duration.ofMillis(20))
+        .doOnTerminate(running::decrementAndGet);
+    });
+
+    // Act & Assert
+    StepVerifier.create(Flux.range(0, 10).flatMap(i -> limiter.limit(source)))
+      .expectNextCount(10)
+      .verifyComplete();
+
+    assertThat(maxRunning.get()).isEqualTo(2);
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Should release the permit when the source fails")
+  void limit_failingSource_releasesPermit() {
+    // Arrange
+    var limiter = new ConcurrencyLimiter("test", 1);
+
+    // Act & Assert
+    StepVerifier.create(limiter.limit(Mono.error(new IllegalStateException("boom"))))
+      .expectError(IllegalStateException.class)
+      .verify();
+
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should drop waiting subscribers that cancel before a permit is granted")
+  void limit_cancelWhileWaiting_doesNotLeakPermit() {
+    // Arrange
+    var limiter = new ConcurrencyLimiter("test", 1);
+    var blocker = Sinks.<String>one();
+
+    var holder = limiter.limit(blocker.asMono()).subscribe();
+    var waiter = limiter.limit(Mono.just("never")).subscribe();
+    assertThat(limiter.waitingCount()).isEqualTo(1);
+
+    // Act
+    waiter.dispose();
+    blocker.tryEmitValue("done");
+
+    // Assert
+    assertThat(holder.isDisposed()).isTrue();
+    assertThat(limiter.waitingCount()).isZero();
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should reject limiters without permits")
+  void constructor_zeroPermits_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter("test", 0));
+  }
+}
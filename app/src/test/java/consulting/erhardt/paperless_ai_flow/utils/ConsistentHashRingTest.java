@@ -0,0 +1,71 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for ConsistentHashRing verifying ownership, distribution and rebalancing.
+ */
+class ConsistentHashRingTest {
+
+  private static final int KEYS = 10_000;
+
+  @Test
+  @DisplayName("Should assign every key to the same member on every ring with the same members")
+  void ownerOf_isDeterministic() {
+    // Given
+    var ring = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+    var sameRing = new ConsistentHashRing(List.of("c", "a", "b"), 64);
+
+    // When / Then
+    IntStream.range(0, KEYS).mapToObj(String::valueOf)
+      .forEach(key -> assertThat(ring.ownerOf(key)).isEqualTo(sameRing.ownerOf(key)));
+  }
+
+  @Test
+  @DisplayName("Should spread keys roughly evenly over the members")
+  void ownerOf_distributesKeys() {
+    // Given
+    var ring = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+    var counts = new HashMap<String, Integer>();
+
+    // When
+    IntStream.range(0, KEYS).mapToObj(String::valueOf)
+      .forEach(key -> counts.merge(ring.ownerOf(key), 1, Integer::sum));
+
+    // Then
+    assertThat(counts).containsOnlyKeys("a", "b", "c");
+    assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 5, KEYS / 2));
+  }
+
+  @Test
+  @DisplayName("Should only move keys to a joining member")
+  void ownerOf_rebalancesMinimally() {
+    // Given
+    var before = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+    var after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 64);
+
+    // When
+    var moved = IntStream.range(0, KEYS).mapToObj(String::valueOf)
+      .filter(key -> !before.ownerOf(key).equals(after.ownerOf(key)))
+      .toList();
+
+    // Then
+    assertThat(moved).allSatisfy(key -> assertThat(after.ownerOf(key)).isEqualTo("d"));
+    assertThat(moved.size()).isBetween(KEYS / 8, KEYS / 2);
+  }
+
+  @Test
+  @DisplayName("Should reject a ring without members")
+  void constructor_rejectsEmptyRing() {
+    assertThatThrownBy(() -> new ConsistentHashRing(List.of(), 64))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
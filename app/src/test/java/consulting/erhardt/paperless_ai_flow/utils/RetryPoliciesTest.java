@@ -0,0 +1,83 @@
+package consulting.erhardt.paperless_ai_flow.utils;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RetryPolicies verifying error classification and stage retries.
+ */
+class RetryPoliciesTest {
+
+  private static final PipelineConfiguration.RetryConfiguration RETRY_CONFIG = PipelineConfiguration.RetryConfiguration.builder()
+    .maxAttempts(3)
+    .initialBackoff(Duration.ofMillis(1))
+    .maxBackoff(Duration.ofMillis(5))
+    .build();
+
+  @Test
+  @DisplayName("Should classify server errors, rate limits and transient AI errors as transient")
+  void isTransient_classifiesErrors() {
+    assertThat(RetryPolicies.isTransient(responseException(HttpStatus.BAD_GATEWAY))).isTrue();
+    assertThat(RetryPolicies.isTransient(responseException(HttpStatus.TOO_MANY_REQUESTS))).isTrue();
+    assertThat(RetryPolicies.isTransient(new TransientAiException("overloaded"))).isTrue();
+    assertThat(RetryPolicies.isTransient(new IllegalStateException("wrapped", responseException(HttpStatus.SERVICE_UNAVAILABLE)))).isTrue();
+
+    assertThat(RetryPolicies.isTransient(responseException(HttpStatus.NOT_FOUND))).isFalse();
+    assertThat(RetryPolicies.isTransient(new NonTransientAiException("invalid request"))).isFalse();
+    assertThat(RetryPolicies.isTransient(new IOException("PDF is encrypted"))).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should retry transient errors up to the maximum attempts and rethrow the last error")
+  void transientErrors_retriesUpToMaxAttempts() {
+    // Arrange
+    var attempts = new AtomicInteger();
+    var source = Mono.defer(() -> {
+      attempts.incrementAndGet();
+      return Mono.error(responseException(HttpStatus.BAD_GATEWAY));
+    });
+
+    // Act & Assert
+    StepVerifier.create(source.retryWhen(RetryPolicies.transientErrors(RETRY_CONFIG, "saving")))
+      .expectError(WebClientResponseException.class)
+      .verify();
+
+    assertThat(attempts.get()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Should not retry permanent errors")
+  void transientErrors_permanentError_failsImmediately() {
+    // Arrange
+    var attempts = new AtomicInteger();
+    var source = Mono.defer(() -> {
+      attempts.incrementAndGet();
+      return Mono.error(new IOException("PDF is encrypted"));
+    });
+
+    // Act & Assert
+    StepVerifier.create(source.retryWhen(RetryPolicies.transientErrors(RETRY_CONFIG, "ocr")))
+      .expectError(IOException.class)
+      .verify();
+
+    assertThat(attempts.get()).isEqualTo(1);
+  }
+
+  private static WebClientResponseException responseException(HttpStatus status) {
+    return WebClientResponseException.create(status.value(), status.getReasonPhrase(), HttpHeaders.EMPTY, new byte[0], null);
+  }
+}
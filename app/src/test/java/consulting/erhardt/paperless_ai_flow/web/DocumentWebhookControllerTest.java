@@ -0,0 +1,131 @@
+package consulting.erhardt.paperless_ai_flow.web;
+
+import consulting.erhardt.paperless_ai_flow.configs.PipelineConfiguration;
+import consulting.erhardt.paperless_ai_flow.services.DocumentWebhookService;
+import consulting.erhardt.paperless_ai_flow.services.DocumentWebhookService.WebhookResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DocumentWebhookController bound to a mocked webhook service.
+ */
+class DocumentWebhookControllerTest {
+
+  private DocumentWebhookService documentWebhookService;
+  private WebTestClient client;
+
+  @BeforeEach
+  void setUp() {
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .webhook(PipelineConfiguration.WebhookConfiguration.builder()
+        .enabled(true)
+        .secret("s3cret")
+        .build())
+      .build();
+
+    documentWebhookService = mock(DocumentWebhookService.class);
+    client = WebTestClient.bindToController(new DocumentWebhookController(pipelineConfig, documentWebhookService))
+      .build();
+  }
+
+  @Test
+  @DisplayName("Should enqueue the document referenced by the workflow doc_url placeholder")
+  void documentEvent_docUrl_enqueuesDocument() {
+    // Arrange
+    when(documentWebhookService.handleDocument(42)).thenReturn(Mono.just(WebhookResult.ENQUEUED));
+
+    // Act & Assert
+    post("s3cret", "{\"doc_url\": \"http://paperless:8000/documents/42/details\"}")
+      .expectStatus().isAccepted()
+      .expectBody().jsonPath("$.result").isEqualTo("ENQUEUED");
+
+    verify(documentWebhookService).handleDocument(42);
+  }
+
+  @Test
+  @DisplayName("Should reject requests with a wrong secret")
+  void documentEvent_wrongSecret_returnsUnauthorized() {
+    // Act & Assert
+    post("wrong", "{\"document_id\": 42}")
+      .expectStatus().isUnauthorized();
+
+    verifyNoInteractions(documentWebhookService);
+  }
+
+  @Test
+  @DisplayName("Should reject requests without a document reference")
+  void documentEvent_noDocumentReference_returnsBadRequest() {
+    // Act & Assert
+    post("s3cret", "{\"doc_url\": \"http://paperless:8000/dashboard\"}")
+      .expectStatus().isBadRequest();
+
+    verify(documentWebhookService, never()).handleDocument(any());
+  }
+
+  @Test
+  @DisplayName("Should signal back pressure when the intake queue is full")
+  void documentEvent_queueFull_returnsServiceUnavailable() {
+    // Arrange
+    when(documentWebhookService.handleDocument(7)).thenReturn(Mono.just(WebhookResult.QUEUE_FULL));
+
+    // Act & Assert
+    post("s3cret", "{\"document_id\": 7}")
+      .expectStatus().isEqualTo(503);
+  }
+
+  @Test
+  @DisplayName("Should refuse to start without a webhook secret")
+  void constructor_noSecret_throws() {
+    // Arrange
+    var pipelineConfig = PipelineConfiguration.builder()
+      .api(PipelineConfiguration.ApiConfiguration.builder()
+        .baseUrl("http://localhost")
+        .token("token")
+        .build())
+      .webhook(PipelineConfiguration.WebhookConfiguration.builder()
+        .enabled(true)
+        .secret(" ")
+        .build())
+      .build();
+
+    // Act & Assert
+    assertThatThrownBy(() -> new DocumentWebhookController(pipelineConfig, documentWebhookService))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("paperless.webhook.secret");
+  }
+
+  @Test
+  @DisplayName("Should reject requests without a secret")
+  void documentEvent_missingSecret_returnsUnauthorized() {
+    // Act & Assert
+    client.post()
+      .uri("/webhook/documents")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("{\"document_id\": 42}")
+      .exchange()
+      .expectStatus().isUnauthorized();
+
+    verifyNoInteractions(documentWebhookService);
+  }
+
+  private WebTestClient.ResponseSpec post(String secret, String body) {
+    return client.post()
+      .uri("/webhook/documents")
+      .header(DocumentWebhookController.SECRET_HEADER, secret)
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue(body)
+      .exchange();
+  }
+}
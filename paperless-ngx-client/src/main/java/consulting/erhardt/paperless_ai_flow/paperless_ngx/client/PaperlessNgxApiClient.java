@@ -18,6 +18,9 @@ public interface PaperlessNgxApiClient {
   @GetExchange("/documents/")
   Mono<PagedResponse<DocumentResponse>> getDocumentsByPage(@RequestParam("page") int page, @RequestParam("tags__id__all") String tagIdsList, @RequestParam("ordering") String ordering);
 
+  @GetExchange("/documents/")
+  Mono<PagedResponse<DocumentResponse>> getDocumentsByPage(@RequestParam("page") int page, @RequestParam("tags__id__all") String tagIdsList, @RequestParam("ordering") String ordering, @RequestParam(value = "modified__gt", required = false) String modifiedAfter, @RequestParam(value = "fields", required = false) String fields, @RequestParam(value = "page_size", required = false) Integer pageSize);
+
   @GetExchange("/documents/{id}/")
   Mono<DocumentResponse> getDocument(@PathVariable("id") Integer id);
 
@@ -3,9 +3,11 @@ package consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import lombok.experimental.SuperBuilder;
+import lombok.extern.jackson.Jacksonized;
 
 @SuperBuilder
 @Value
+@Jacksonized
 @EqualsAndHashCode(callSuper = true)
 public class Correspondent extends BaseEntity {
   String slug;
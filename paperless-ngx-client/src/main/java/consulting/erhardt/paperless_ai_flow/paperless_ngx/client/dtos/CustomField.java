@@ -3,11 +3,13 @@ package consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import lombok.experimental.SuperBuilder;
+import lombok.extern.jackson.Jacksonized;
 
 import java.util.Map;
 
 @SuperBuilder(toBuilder = true)
 @Value
+@Jacksonized
 @EqualsAndHashCode(callSuper = true)
 public class CustomField extends BaseEntity {
   String name;
@@ -3,17 +3,22 @@ package consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import lombok.experimental.SuperBuilder;
+import lombok.extern.jackson.Jacksonized;
 
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @SuperBuilder(toBuilder = true)
 @Value
+@Jacksonized
 @EqualsAndHashCode(callSuper = true)
 public class Document extends BaseEntity {
   String title;
   LocalDate createdDate;
   String content;
+  OffsetDateTime added;
+  OffsetDateTime modified;
   Correspondent correspondent;
   List<Tag> tags;
   List<CustomField> customFields;
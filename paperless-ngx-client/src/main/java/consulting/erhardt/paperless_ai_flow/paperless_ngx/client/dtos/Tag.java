@@ -3,10 +3,12 @@ package consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import lombok.experimental.SuperBuilder;
+import lombok.extern.jackson.Jacksonized;
 
 
 @SuperBuilder
 @Value
+@Jacksonized
 @EqualsAndHashCode(callSuper = true)
 public class Tag extends BaseEntity {
   String slug;
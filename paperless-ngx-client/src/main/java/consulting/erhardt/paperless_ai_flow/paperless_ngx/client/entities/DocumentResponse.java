@@ -9,6 +9,7 @@ import lombok.Value;
 import lombok.extern.jackson.Jacksonized;
 
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Jacksonized
@@ -30,6 +31,12 @@ public class DocumentResponse {
   @JsonProperty("content")
   String content;
 
+  @JsonProperty("added")
+  OffsetDateTime added;
+
+  @JsonProperty("modified")
+  OffsetDateTime modified;
+
   @JsonProperty("correspondent")
   Integer correspondentId;
 
@@ -22,11 +22,27 @@ public interface DocumentMapper {
   @Mapping(target = "title", source = "response.title")
   @Mapping(target = "createdDate", source = "response.createdDate")
   @Mapping(target = "content", source = "response.content")
+  @Mapping(target = "added", source = "response.added")
+  @Mapping(target = "modified", source = "response.modified")
   @Mapping(target = "correspondent", source = "correspondent")
   @Mapping(target = "customFields", source = "customFields")
   @Mapping(target = "tags", source = "tags")
   Document toDto(@NonNull DocumentResponse response, Correspondent correspondent, @NonNull List<CustomField> customFields, @NonNull List<Tag> tags);
 
+  /**
+   * Maps a projected listing entry to a document reference, relations are left unresolved and only carry their ids
+   */
+  @Mapping(target = "id", source = "id")
+  @Mapping(target = "title", source = "title")
+  @Mapping(target = "added", source = "added")
+  @Mapping(target = "modified", source = "modified")
+  @Mapping(target = "createdDate", ignore = true)
+  @Mapping(target = "content", ignore = true)
+  @Mapping(target = "correspondent", source = "correspondentId", qualifiedByName = "mapCorrespondentReference")
+  @Mapping(target = "customFields", source = "customFields", qualifiedByName = "mapCustomFieldReferences")
+  @Mapping(target = "tags", source = "tagIds", qualifiedByName = "mapTagReferences")
+  Document toReference(@NonNull DocumentResponse response);
+
   @Mapping(target = "title", source = "document.title")
   @Mapping(target = "created", source = "document.createdDate")
   @Mapping(target = "content", source = "document.content")
@@ -40,6 +56,44 @@ public interface DocumentMapper {
     return toPatchRequest(document, false);
   }
 
+  @Named("mapCorrespondentReference")
+  default Correspondent mapCorrespondentReference(Integer correspondentId) {
+    if (correspondentId == null) {
+      return null;
+    }
+
+    return Correspondent.builder()
+      .id(correspondentId)
+      .build();
+  }
+
+  @Named("mapCustomFieldReferences")
+  default List<CustomField> mapCustomFieldReferences(List<DocumentResponse.CustomField> customFields) {
+    if (customFields == null) {
+      return null;
+    }
+
+    return customFields.stream()
+      .<CustomField>map(cf -> CustomField.builder()
+        .id(cf.getId())
+        .value(cf.getValue())
+        .build())
+      .toList();
+  }
+
+  @Named("mapTagReferences")
+  default List<Tag> mapTagReferences(List<Integer> tagIds) {
+    if (tagIds == null) {
+      return null;
+    }
+
+    return tagIds.stream()
+      .<Tag>map(id -> Tag.builder()
+        .id(id)
+        .build())
+      .toList();
+  }
+
   @Named("mapCorrespondent")
   default Integer mapCorrespondent(Correspondent correspondent) {
     if (correspondent == null) {
@@ -10,16 +10,18 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.function.Tuple2;
-import reactor.util.function.Tuples;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class DocumentService implements PaperlessApiService<Document> {
+  private static final String REFERENCE_FIELDS = "id,title,added,modified,correspondent,tags,custom_fields";
+
   private final PaperlessNgxApiClient webClient;
   private final DocumentMapper documentMapper;
   private final CorrespondentService correspondentService;
@@ -37,44 +39,50 @@ public class DocumentService implements PaperlessApiService<Document> {
       .collectList();
   }
 
-  /*public Mono<List<Document>> getAllByTags(@NonNull List<Integer> tagIds) {
-    var tagsIdsList = tagIds.stream()
-      .map(String::valueOf)
-      .collect(Collectors.joining(","));
+  /**
+   * Lists references to the documents carrying all given tags, newest first. A reference only holds the id, title,
+   * added and modified timestamps and the raw ids of its correspondent, tags and custom fields, nothing is resolved;
+   * use {@link #getById(Integer)} to hydrate a reference.
+   *
+   * @param pageSize number of references per page, best matched to the number of references the caller needs
+   */
+  public Flux<Document> getReferencesByTags(@NonNull List<Integer> tagIds, int pageSize) {
+    return fetchAllPages(tagIds, page -> fetchPageByTags(page, tagIds, "-added", null, REFERENCE_FIELDS, pageSize))
+      .map(documentMapper::toReference);
+  }
 
-    return Flux
-      .range(1, Integer.MAX_VALUE)
-      .concatMap(page -> webClient.getDocumentsByPage(page, tagsIdsList, "-added"))
-      .takeUntil(p -> p.getNext() == null)
-      .flatMapIterable(PagedResponse::getResults)
-      .flatMap(this::toDto)
-      .collectList();
-  }*/
+  /**
+   * Like {@link #getReferencesByTags(List, int)}, but only lists documents modified after the given instant, oldest
+   * modification first. Tagging a document modifies it, so this also returns documents that got the tags after the
+   * instant.
+   *
+   * @param modifiedAfter exclusive lower bound, {@code null} to list all documents
+   */
+  public Flux<Document> getReferencesByTagsModifiedAfter(@NonNull List<Integer> tagIds, OffsetDateTime modifiedAfter, int pageSize) {
+    return fetchAllPages(tagIds, page -> fetchPageByTags(page, tagIds, "modified", toParam(modifiedAfter), REFERENCE_FIELDS, pageSize))
+      .map(documentMapper::toReference);
+  }
 
-  public Flux<Document> getAllByTags(@NonNull List<Integer> tagIds) {
+  /**
+   * Pages through a listing strictly on demand: the next page is only requested once every entry of the current
+   * page was consumed, so a subscriber that cancels early (e.g. via take) never triggers further page requests.
+   */
+  private Flux<DocumentResponse> fetchAllPages(@NonNull List<Integer> tagIds, IntFunction<Mono<PagedResponse<DocumentResponse>>> pageFetcher) {
     if (tagIds.isEmpty()) {
       return Flux.empty();
     }
 
-    // Start with page 1, then expand to next pages until getNext() == null
-    return Mono.defer(() -> fetchPageByTags(1, tagIds))
-      .map(firstPage -> Tuples.of(1, firstPage))
-      .expand(tuple -> {
-        var pageIndex = tuple.getT1();
-        var response  = tuple.getT2();
-
-        // Stop expanding when there's no "next" page
-        if (response.getNext() == null) {
-          return Mono.empty();
-        }
-
-        // Otherwise fetch next page (pageIndex + 1)
-        var nextPage = pageIndex + 1;
-        return fetchPageByTags(nextPage, tagIds).map(nextResp -> Tuples.of(nextPage, nextResp));
-      })
-      .map(Tuple2::getT2)
-      .concatMapIterable(PagedResponse::getResults)
-      .concatMap(this::toDto);
+    return fetchPagesFrom(1, pageFetcher);
+  }
+
+  private Flux<DocumentResponse> fetchPagesFrom(int page, IntFunction<Mono<PagedResponse<DocumentResponse>>> pageFetcher) {
+    // the next page is only subscribed once the last entry of this one is requested; a concatMap over page numbers
+    // would already fetch it when the previous page arrives, if the entries are consumed on another thread
+    return pageFetcher.apply(page)
+      .flatMapMany(response -> Flux.fromIterable(response.getResults())
+        .concatWith(response.getNext() == null
+          ? Flux.empty()
+          : Flux.defer(() -> fetchPagesFrom(page + 1, pageFetcher))));
   }
 
   @Override
@@ -94,12 +102,23 @@ public class DocumentService implements PaperlessApiService<Document> {
     return webClient.downloadDocument(id);
   }
 
-  private Mono<PagedResponse<DocumentResponse>> fetchPageByTags(int page, @NonNull List<Integer> tagIds) {
+  private Mono<PagedResponse<DocumentResponse>> fetchPageByTags(
+    int page,
+    @NonNull List<Integer> tagIds,
+    @NonNull String ordering,
+    String modifiedAfter,
+    String fields,
+    Integer pageSize
+  ) {
     var tagsIdsList = tagIds.stream()
       .map(String::valueOf)
       .collect(Collectors.joining(","));
 
-    return webClient.getDocumentsByPage(page, tagsIdsList, "-added");
+    return webClient.getDocumentsByPage(page, tagsIdsList, ordering, modifiedAfter, fields, pageSize);
+  }
+
+  private static String toParam(OffsetDateTime dateTime) {
+    return (dateTime != null) ? dateTime.toInstant().toString() : null;
   }
 
   private Mono<Document> toDto(DocumentResponse resp) {
@@ -5,8 +5,10 @@ import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Correspond
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.CustomField;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Document;
 import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.dtos.Tag;
+import consulting.erhardt.paperless_ai_flow.paperless_ngx.client.entities.DocumentResponse;
 import lombok.NonNull;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -188,6 +190,31 @@ class DocumentMapperTest extends AbstractDocumentPatchRequestTest {
     }
   }
 
+  @Test
+  @DisplayName("Test DocumentMapper.toReference() keeps the raw relation ids without resolving them")
+  void toReference_keepsRawRelationIds() {
+    // --- Arrange a projected listing entry ---
+    var response = DocumentResponse.builder()
+      .id(123)
+      .title("Listed Document")
+      .content("not part of a reference")
+      .correspondentId(11)
+      .tagIds(List.of(1, 2))
+      .customFields(List.of(DocumentResponse.CustomField.builder().id(3).value("42").build()))
+      .build();
+
+    // --- Act ---
+    var reference = documentMapper.toReference(response);
+
+    // --- Assert ---
+    assertEquals(123, reference.getId());
+    assertEquals("Listed Document", reference.getTitle());
+    assertNull(reference.getContent());
+    assertEquals(Correspondent.builder().id(11).build(), reference.getCorrespondent());
+    assertEquals(List.of(Tag.builder().id(1).build(), Tag.builder().id(2).build()), reference.getTags());
+    assertEquals(List.of(CustomField.builder().id(3).value("42").build()), reference.getCustomFields());
+  }
+
   private static LinkedHashSet<String> getExpectedKeysForDocument(Set<F> fields) {
     var expectedKeys = new LinkedHashSet<String>();
 
@@ -24,6 +24,7 @@ import reactor.test.StepVerifier;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +32,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -345,6 +347,132 @@ class DocumentServiceWireMockTest {
       .verifyComplete();
   }
 
+  @Test
+  void getReferencesByTagsModifiedAfter_shouldRequestDeltaOrderedByModification() {
+    // Given
+    var modifiedAfter = OffsetDateTime.parse("2024-05-01T10:15:30.123456+02:00");
+    var reference = Document.builder()
+      .id(7)
+      .title("Changed Document")
+      .build();
+
+    var response = """
+      {
+        "count": 1,
+        "next": null,
+        "previous": null,
+        "results": [
+          {
+            "id": 7,
+            "title": "Changed Document",
+            "modified": "2024-05-01T10:20:00.000000+02:00",
+            "tags": [],
+            "custom_fields": []
+          }
+        ]
+      }
+      """;
+
+    when(documentMapper.toReference(any(DocumentResponse.class))).thenReturn(reference);
+
+    wireMockExtension.stubFor(get(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("1"))
+      .withQueryParam("tags__id__all", equalTo("1,2"))
+      .withQueryParam("ordering", equalTo("modified"))
+      .withQueryParam("modified__gt", equalTo("2024-05-01T08:15:30.123456Z"))
+      .withQueryParam("page_size", equalTo("10"))
+      .willReturn(aResponse()
+        .withStatus(200)
+        .withHeader("Content-Type", "application/json")
+        .withBody(response)));
+
+    // When & Then
+    StepVerifier.create(documentService.getReferencesByTagsModifiedAfter(List.of(1, 2), modifiedAfter, 10))
+      .expectNext(reference)
+      .verifyComplete();
+  }
+
+  @Test
+  void getReferencesByTags_shouldRequestProjectionWithoutResolvingRelations() {
+    // Given
+    var reference = Document.builder()
+      .id(8)
+      .title("Listed Document")
+      .build();
+
+    var response = """
+      {
+        "count": 1,
+        "next": null,
+        "previous": null,
+        "results": [
+          {
+            "id": 8,
+            "title": "Listed Document",
+            "modified": "2024-05-01T10:20:00.000000+02:00"
+          }
+        ]
+      }
+      """;
+
+    when(documentMapper.toReference(any(DocumentResponse.class))).thenReturn(reference);
+
+    wireMockExtension.stubFor(get(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("1"))
+      .withQueryParam("tags__id__all", equalTo("3"))
+      .withQueryParam("ordering", equalTo("-added"))
+      .withQueryParam("fields", equalTo("id,title,added,modified,correspondent,tags,custom_fields"))
+      .withQueryParam("page_size", equalTo("25"))
+      .willReturn(aResponse()
+        .withStatus(200)
+        .withHeader("Content-Type", "application/json")
+        .withBody(response)));
+
+    // When & Then
+    StepVerifier.create(documentService.getReferencesByTags(List.of(3), 25))
+      .expectNext(reference)
+      .verifyComplete();
+
+    verifyNoInteractions(correspondentService, customFieldsService, tagService);
+  }
+
+  @Test
+  void getReferencesByTags_shouldNotFetchNextPageBeforeCurrentPageIsConsumed() {
+    // Given
+    when(documentMapper.toReference(any(DocumentResponse.class)))
+      .thenAnswer(invocation -> Document.builder()
+        .id(invocation.getArgument(0, DocumentResponse.class).getId())
+        .build());
+
+    stubReferencePage(1, "[{\"id\": 1}, {\"id\": 2}]", "\"http://localhost:8089/api/documents/?page=2\"");
+    stubReferencePage(2, "[{\"id\": 3}, {\"id\": 4}]", "null");
+
+    // When & Then
+    StepVerifier.create(documentService.getReferencesByTags(List.of(3), 2).take(2))
+      .expectNextCount(2)
+      .verifyComplete();
+
+    wireMockExtension.verify(0, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("2")));
+
+    StepVerifier.create(documentService.getReferencesByTags(List.of(3), 2).take(3))
+      .expectNextCount(3)
+      .verifyComplete();
+
+    wireMockExtension.verify(1, getRequestedFor(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo("2")));
+  }
+
+  private void stubReferencePage(int page, String results, String next) {
+    wireMockExtension.stubFor(get(urlPathEqualTo("/api/documents/"))
+      .withQueryParam("page", equalTo(String.valueOf(page)))
+      .withQueryParam("page_size", equalTo("2"))
+      .willReturn(aResponse()
+        .withStatus(200)
+        .withHeader("Content-Type", "application/json")
+        .withBody("{\"count\": 4, \"next\": " + next + ", \"previous\": null, \"results\": " + results + "}")));
+  }
+
   private String loadSchema() throws IOException {
     try (var inputStream = getClass().getResourceAsStream(PATCHED_DOCUMENT_SCHEMA_PATH)) {
       assertThat(inputStream).isNotNull();